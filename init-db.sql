@@ -31,12 +31,18 @@ CREATE TABLE IF NOT EXISTS auth.users (
     email_verification_expires_at TIMESTAMP,
     password_reset_token VARCHAR(500),
     password_reset_expires_at TIMESTAMP,
+    token_epoch INTEGER NOT NULL DEFAULT 0,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 
     CONSTRAINT chk_auth_provider CHECK (auth_provider IN ('LOCAL', 'GOOGLE'))
 );
 
+-- Existing databases: columns added after the initial version
+ALTER TABLE auth.users ADD COLUMN IF NOT EXISTS token_epoch INTEGER NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN auth.users.token_epoch IS 'Incremented to revoke every access/refresh token of the user at once (JWT claim tep)';
+
 -- ==============================================
 -- SECTION 3: REFRESH TOKENS TABLE
 -- ==============================================
@@ -48,9 +54,16 @@ CREATE TABLE IF NOT EXISTS auth.refresh_tokens (
     expires_at TIMESTAMP NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     revoked BOOLEAN DEFAULT FALSE,
-    revoked_at TIMESTAMP
+    revoked_at TIMESTAMP,
+    token_epoch INTEGER NOT NULL DEFAULT 0
 );
 
+-- Existing databases: columns added after the initial version
+ALTER TABLE auth.refresh_tokens ADD COLUMN IF NOT EXISTS token_epoch INTEGER NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN auth.refresh_tokens.token IS 'sha256:<base64url> hash of the v1 token secret; plain UUID for legacy tokens';
+COMMENT ON COLUMN auth.refresh_tokens.token_epoch IS 'users.token_epoch when the token was issued; older epochs are rejected on refresh';
+
 -- ==============================================
 -- SECTION 4: APPS TABLE
 -- ==============================================
@@ -59,11 +72,17 @@ CREATE TABLE IF NOT EXISTS auth.apps (
     id BIGSERIAL PRIMARY KEY,
     name VARCHAR(100) UNIQUE NOT NULL,
     description TEXT,
+    max_sessions_per_user INTEGER CHECK (max_sessions_per_user >= 1),
     is_active BOOLEAN DEFAULT TRUE,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Existing databases: columns added after the initial version
+ALTER TABLE auth.apps ADD COLUMN IF NOT EXISTS max_sessions_per_user INTEGER CHECK (max_sessions_per_user >= 1);
+
+COMMENT ON COLUMN auth.apps.max_sessions_per_user IS 'Maximum concurrent sessions per user for tenants of this app (NULL = server default app.sessions.max-per-user)';
+
 -- ==============================================
 -- SECTION 5: ORGANIZATIONS TABLE (NUEVA)
 -- ==============================================
@@ -91,6 +110,7 @@ CREATE TABLE IF NOT EXISTS auth.tenants (
     name VARCHAR(255) NOT NULL,
     description TEXT,
     account_limit INTEGER NOT NULL DEFAULT 1,
+    max_sessions_per_user INTEGER CHECK (max_sessions_per_user >= 1),
     is_active BOOLEAN DEFAULT TRUE,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -99,7 +119,11 @@ CREATE TABLE IF NOT EXISTS auth.tenants (
 );
 
 COMMENT ON TABLE auth.tenants IS 'Service instances for organizations (e.g., RiTrack for Arendel)';
+-- Existing databases: columns added after the initial version
+ALTER TABLE auth.tenants ADD COLUMN IF NOT EXISTS max_sessions_per_user INTEGER CHECK (max_sessions_per_user >= 1);
+
 COMMENT ON COLUMN auth.tenants.account_limit IS 'Maximum number of user accounts allowed for this tenant (minimum 1, includes TENANT_ADMIN)';
+COMMENT ON COLUMN auth.tenants.max_sessions_per_user IS 'Maximum concurrent sessions per user of this tenant (NULL = the app limit). A user in several tenants gets the largest limit';
 
 -- ==============================================
 -- SECTION 6A: TENANT RIDERS MANAGEMENT CONFIG
@@ -343,27 +367,158 @@ COMMENT ON COLUMN auth.stripe_payment_history.status IS 'Invoice status: draft,
 -- SECTION 7.5: USER SESSIONS TABLE
 -- ==============================================
 
+-- Dictionary of User-Agent strings: sessions store the id instead of repeating the text in every row
+-- (see UserAgentDictionary). Rows are never updated; once no session references them they are deleted
+-- by the cleanup job after it drops expired partitions.
+CREATE TABLE IF NOT EXISTS auth.user_agents (
+    id SERIAL PRIMARY KEY,
+    user_agent VARCHAR(500) NOT NULL UNIQUE,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE auth.user_agents IS 'Distinct User-Agent strings referenced by user_sessions.user_agent_id';
+
+-- Parses an IP address, NULL if the text is not one (X-Forwarded-For is set by the client)
+CREATE OR REPLACE FUNCTION auth.try_inet(value TEXT)
+RETURNS INET AS $$
+BEGIN
+    RETURN value::inet;
+EXCEPTION WHEN invalid_text_representation THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+-- Device type name -> code stored in user_sessions.device_type (same codes as the Java enum DeviceType)
+CREATE OR REPLACE FUNCTION auth.device_type_code(name TEXT)
+RETURNS SMALLINT AS $$
+    SELECT (CASE name WHEN 'web' THEN 1 WHEN 'mobile' THEN 2 WHEN 'desktop' THEN 3 ELSE 0 END)::smallint;
+$$ LANGUAGE sql IMMUTABLE;
+
+-- Existing databases: user_sessions used to be a plain table. It is renamed here and its rows are
+-- copied into the partitioned table at the end of this section (one-off, run in a maintenance window)
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+               WHERE n.nspname = 'auth' AND c.relname = 'user_sessions' AND c.relkind = 'r') THEN
+        ALTER TABLE auth.user_sessions RENAME TO user_sessions_unpartitioned;
+        ALTER TABLE auth.user_sessions_unpartitioned RENAME CONSTRAINT user_sessions_pkey TO user_sessions_unpartitioned_pkey;
+        DROP INDEX IF EXISTS auth.idx_user_sessions_user_id, auth.idx_user_sessions_refresh_token_id,
+            auth.idx_user_sessions_last_activity, auth.idx_user_sessions_is_revoked, auth.idx_user_sessions_jti,
+            auth.idx_user_sessions_user_open, auth.idx_user_sessions_revoked_created,
+            auth.idx_user_sessions_open_created;
+    END IF;
+END $$;
+
+-- Partitioned by month on created_at: retention drops whole partitions instead of deleting rows
+-- (see SessionPartitionService). The primary key must include the partition key.
+-- Fixed-width columns first, widest to narrowest, so rows carry no alignment padding.
 CREATE TABLE IF NOT EXISTS auth.user_sessions (
-    id BIGSERIAL PRIMARY KEY,
+    id BIGSERIAL,
     user_id BIGINT NOT NULL REFERENCES auth.users(id) ON DELETE CASCADE,
     refresh_token_id BIGINT NOT NULL REFERENCES auth.refresh_tokens(id) ON DELETE CASCADE,
-    ip_address VARCHAR(45),
-    user_agent VARCHAR(500),
-    device_type VARCHAR(20),
-    access_token_jti VARCHAR(100),
     last_activity_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    user_agent_id INTEGER REFERENCES auth.user_agents(id),
+    device_type SMALLINT NOT NULL DEFAULT 0,
     is_revoked BOOLEAN DEFAULT FALSE NOT NULL,
-    CONSTRAINT chk_device_type CHECK (device_type IN ('web', 'mobile', 'desktop', 'unknown'))
-);
+    ip_address INET,
+    access_token_jti VARCHAR(100),
+    PRIMARY KEY (id, created_at),
+    CONSTRAINT chk_device_type CHECK (device_type BETWEEN 0 AND 3)
+) PARTITION BY RANGE (created_at);
+
+-- Existing databases: user_sessions already partitioned with the text columns ip_address VARCHAR(45),
+-- user_agent VARCHAR(500) and device_type VARCHAR(20). The user agents go to the dictionary; the type
+-- changes rewrite every partition, which also drops the old user_agent values (one-off, maintenance window).
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = 'auth' AND table_name = 'user_sessions' AND column_name = 'user_agent') THEN
+        INSERT INTO auth.user_agents (user_agent)
+        SELECT DISTINCT user_agent FROM auth.user_sessions WHERE user_agent IS NOT NULL
+        ON CONFLICT (user_agent) DO NOTHING;
+
+        ALTER TABLE auth.user_sessions ADD COLUMN user_agent_id INTEGER REFERENCES auth.user_agents(id);
+        UPDATE auth.user_sessions s SET user_agent_id = ua.id
+        FROM auth.user_agents ua WHERE ua.user_agent = s.user_agent;
+        ALTER TABLE auth.user_sessions DROP COLUMN user_agent;
+
+        ALTER TABLE auth.user_sessions DROP CONSTRAINT IF EXISTS chk_device_type;
+        ALTER TABLE auth.user_sessions
+            ALTER COLUMN ip_address TYPE INET USING auth.try_inet(ip_address),
+            ALTER COLUMN device_type TYPE SMALLINT USING auth.device_type_code(device_type),
+            ALTER COLUMN device_type SET DEFAULT 0,
+            ALTER COLUMN device_type SET NOT NULL,
+            ADD CONSTRAINT chk_device_type CHECK (device_type BETWEEN 0 AND 3);
+    END IF;
+END $$;
+
+-- Creates the missing monthly partitions (auth.user_sessions_YYYY_MM) from the month of from_month
+-- up to months_ahead months after the current one. Returns the number of partitions created.
+CREATE OR REPLACE FUNCTION auth.create_user_sessions_partitions(from_month DATE, months_ahead INTEGER)
+RETURNS INTEGER AS $$
+DECLARE
+    month_start DATE := date_trunc('month', from_month)::date;
+    last_month DATE := (date_trunc('month', CURRENT_DATE) + make_interval(months => months_ahead))::date;
+    partition_name TEXT;
+    created INTEGER := 0;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        partition_name := 'user_sessions_' || to_char(month_start, 'YYYY_MM');
+        IF to_regclass('auth.' || partition_name) IS NULL THEN
+            EXECUTE format('CREATE TABLE auth.%I PARTITION OF auth.user_sessions FOR VALUES FROM (%L) TO (%L)',
+                           partition_name, month_start, (month_start + INTERVAL '1 month')::date);
+            created := created + 1;
+        END IF;
+        month_start := (month_start + INTERVAL '1 month')::date;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT auth.create_user_sessions_partitions(CURRENT_DATE, 3);
+
+-- Safety net for rows outside the monthly partitions (should stay empty: partitions are created ahead)
+CREATE TABLE IF NOT EXISTS auth.user_sessions_default PARTITION OF auth.user_sessions DEFAULT;
 
-COMMENT ON TABLE auth.user_sessions IS 'Active user sessions for concurrent login control (max 2 per user)';
-COMMENT ON COLUMN auth.user_sessions.ip_address IS 'IP address of the client';
-COMMENT ON COLUMN auth.user_sessions.user_agent IS 'User agent string (browser, OS info)';
-COMMENT ON COLUMN auth.user_sessions.device_type IS 'Detected device type: web, mobile, desktop, unknown';
+-- Existing databases: copy the rows of the former plain table (see the DO block above)
+DO $$
+DECLARE
+    oldest DATE;
+BEGIN
+    IF to_regclass('auth.user_sessions_unpartitioned') IS NOT NULL THEN
+        SELECT MIN(COALESCE(created_at, last_activity_at))::date INTO oldest FROM auth.user_sessions_unpartitioned;
+        IF oldest IS NOT NULL THEN
+            PERFORM auth.create_user_sessions_partitions(oldest, 3);
+        END IF;
+
+        INSERT INTO auth.user_agents (user_agent)
+        SELECT DISTINCT user_agent FROM auth.user_sessions_unpartitioned WHERE user_agent IS NOT NULL
+        ON CONFLICT (user_agent) DO NOTHING;
+
+        INSERT INTO auth.user_sessions (id, user_id, refresh_token_id, ip_address, user_agent_id, device_type,
+                                        access_token_jti, last_activity_at, created_at, is_revoked)
+        SELECT s.id, s.user_id, s.refresh_token_id, auth.try_inet(s.ip_address), ua.id,
+               auth.device_type_code(s.device_type), s.access_token_jti, s.last_activity_at,
+               COALESCE(s.created_at, s.last_activity_at), s.is_revoked
+        FROM auth.user_sessions_unpartitioned s
+        LEFT JOIN auth.user_agents ua ON ua.user_agent = s.user_agent;
+
+        PERFORM setval(pg_get_serial_sequence('auth.user_sessions', 'id'),
+                       GREATEST((SELECT MAX(id) FROM auth.user_sessions_unpartitioned), 1));
+
+        DROP TABLE auth.user_sessions_unpartitioned;
+    END IF;
+END $$;
+
+COMMENT ON TABLE auth.user_sessions IS 'Active user sessions for concurrent login control (max per user: tenants/apps.max_sessions_per_user, default 2)';
+COMMENT ON COLUMN auth.user_sessions.ip_address IS 'IP address of the client (NULL if it sent an invalid one). Subnet queries: ip_address <<= ''10.0.0.0/8''';
+COMMENT ON COLUMN auth.user_sessions.user_agent_id IS 'User agent of the client (auth.user_agents)';
+COMMENT ON COLUMN auth.user_sessions.device_type IS 'Detected device type: 0 unknown, 1 web, 2 mobile, 3 desktop';
 COMMENT ON COLUMN auth.user_sessions.access_token_jti IS 'JWT ID (jti claim) of the current access token. Allows immediate revocation on logout.';
 COMMENT ON COLUMN auth.user_sessions.last_activity_at IS 'Last time this session made a request (for idle detection)';
 COMMENT ON COLUMN auth.user_sessions.is_revoked IS 'True if session was manually revoked by user';
+COMMENT ON COLUMN auth.user_sessions.created_at IS 'Partition key (monthly range partitions user_sessions_YYYY_MM)';
 
 -- ==============================================
 -- SECTION 7.6: LIMIT EXCEEDED NOTIFICATIONS TABLE
@@ -389,6 +544,68 @@ COMMENT ON COLUMN auth.limit_exceeded_notifications.current_count IS 'Number of
 COMMENT ON COLUMN auth.limit_exceeded_notifications.allowed_limit IS 'Maximum riders allowed by subscription';
 COMMENT ON COLUMN auth.limit_exceeded_notifications.excess_count IS 'Number of riders exceeding the limit';
 
+-- ==============================================
+-- SECTION 7.7: JWT SIGNING KEYS TABLE
+-- ==============================================
+
+CREATE TABLE IF NOT EXISTS auth.jwt_signing_keys (
+    id BIGSERIAL PRIMARY KEY,
+    kid VARCHAR(64) UNIQUE NOT NULL,
+    algorithm VARCHAR(10) NOT NULL,
+    key_material TEXT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    activate_after TIMESTAMP,
+    activated_at TIMESTAMP,
+    verify_until TIMESTAMP,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_jwt_signing_key_status CHECK (status IN ('ACTIVE', 'VERIFY_ONLY', 'RETIRED')),
+    CONSTRAINT chk_jwt_signing_key_algorithm CHECK (algorithm IN ('HS256', 'ES256'))
+);
+
+COMMENT ON TABLE auth.jwt_signing_keys IS 'Access token signing key ring for zero-downtime rotation. Key material is encrypted with jwt.key-rotation.encryption-key, which never lives in the database.';
+COMMENT ON COLUMN auth.jwt_signing_keys.kid IS 'Key ID sent in the JWT header (kid) and in /.well-known/jwks.json';
+COMMENT ON COLUMN auth.jwt_signing_keys.key_material IS 'Compact JWE (dir + A256GCM) of the JWK including the private/secret part; the signing kid is bound in the JWE header';
+COMMENT ON COLUMN auth.jwt_signing_keys.status IS 'ACTIVE signs new tokens, VERIFY_ONLY only verifies (pending or superseded), RETIRED is unused';
+COMMENT ON COLUMN auth.jwt_signing_keys.activate_after IS 'Earliest time a pending key may become ACTIVE (all instances have loaded it by then)';
+COMMENT ON COLUMN auth.jwt_signing_keys.verify_until IS 'Superseded keys keep verifying until the last token they signed has expired';
+
+-- ==============================================
+-- SECTION 7.8: REVOCATION LOG (REVOKED ACCESS TOKENS, TOKEN EPOCH CHANGES)
+-- ==============================================
+
+-- Shared, ordered log of revocations: every revoked JTI and every token_epoch raise takes the next value
+-- of auth.revocation_seq in the transaction that revokes. Every instance reads the log after its last
+-- settled seq (TokenRevocationService.sync), so a revocation made on one instance reaches all of them.
+CREATE SEQUENCE IF NOT EXISTS auth.revocation_seq;
+
+-- Access tokens revoked before they expire: JTIs of revoked sessions and JTIs superseded by a refresh
+-- (user_sessions only keeps the current JTI of each session). Rows are only needed until expires_at;
+-- TokenRevocationService loads them at startup and on every sync, SessionCleanupService deletes the expired ones.
+CREATE TABLE IF NOT EXISTS auth.revoked_access_tokens (
+    jti VARCHAR(100) PRIMARY KEY,
+    expires_at TIMESTAMP NOT NULL,
+    seq BIGINT NOT NULL DEFAULT nextval('auth.revocation_seq'),
+    revoked_at TIMESTAMP NOT NULL DEFAULT clock_timestamp()
+);
+
+COMMENT ON TABLE auth.revoked_access_tokens IS 'Revoked access token JTIs, kept until the token would have expired';
+COMMENT ON COLUMN auth.revoked_access_tokens.expires_at IS 'Upper bound of the token expiry (revocation time + access token TTL)';
+COMMENT ON COLUMN auth.revoked_access_tokens.seq IS 'Position in the revocation log (auth.revocation_seq)';
+
+-- token_epoch raises (deactivation, password reset, revoke all sessions). users.token_epoch holds the
+-- current value; these rows tell the other instances about the raise. A raise only matters until the
+-- access tokens issued before it have expired (expires_at).
+CREATE TABLE IF NOT EXISTS auth.token_epoch_changes (
+    seq BIGINT PRIMARY KEY DEFAULT nextval('auth.revocation_seq'),
+    user_id BIGINT NOT NULL,
+    token_epoch INTEGER NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT clock_timestamp(),
+    expires_at TIMESTAMP NOT NULL
+);
+
+COMMENT ON TABLE auth.token_epoch_changes IS 'token_epoch raises in the revocation log, kept for one access token TTL';
+COMMENT ON COLUMN auth.token_epoch_changes.user_id IS 'No foreign key: the row must outlive a deleted user until it expires';
+
 -- ==============================================
 -- SECTION 8: INDEXES FOR PERFORMANCE
 -- ==============================================
@@ -418,7 +635,13 @@ CREATE INDEX IF NOT EXISTS idx_user_sessions_user_id ON auth.user_sessions(user_
 CREATE INDEX IF NOT EXISTS idx_user_sessions_refresh_token_id ON auth.user_sessions(refresh_token_id);
 CREATE INDEX IF NOT EXISTS idx_user_sessions_last_activity ON auth.user_sessions(last_activity_at);
 CREATE INDEX IF NOT EXISTS idx_user_sessions_is_revoked ON auth.user_sessions(is_revoked);
-CREATE INDEX IF NOT EXISTS idx_user_sessions_jti ON auth.user_sessions(access_token_jti);
+CREATE INDEX IF NOT EXISTS idx_user_sessions_user_open ON auth.user_sessions(user_id, created_at DESC) WHERE is_revoked = false;
+CREATE INDEX IF NOT EXISTS idx_user_sessions_revoked_created ON auth.user_sessions(created_at) WHERE is_revoked = true;
+CREATE INDEX IF NOT EXISTS idx_user_sessions_open_created ON auth.user_sessions(created_at DESC, id DESC) WHERE is_revoked = false;
+CREATE INDEX IF NOT EXISTS idx_user_sessions_ip_address ON auth.user_sessions USING gist (ip_address inet_ops);
+-- Nothing looks sessions up by access_token_jti (revocations go through revoked_access_tokens):
+-- the index only slowed down every refresh, which rewrites that column
+DROP INDEX IF EXISTS auth.idx_user_sessions_jti;
 CREATE INDEX IF NOT EXISTS idx_stripe_subscriptions_tenant_id ON auth.stripe_subscriptions(tenant_id);
 CREATE INDEX IF NOT EXISTS idx_stripe_subscriptions_organization_id ON auth.stripe_subscriptions(organization_id);
 CREATE INDEX IF NOT EXISTS idx_stripe_subscriptions_customer_id ON auth.stripe_subscriptions(stripe_customer_id);
@@ -427,6 +650,10 @@ CREATE INDEX IF NOT EXISTS idx_stripe_subscriptions_status ON auth.stripe_subscr
 CREATE INDEX IF NOT EXISTS idx_stripe_payment_history_subscription_id ON auth.stripe_payment_history(subscription_id);
 CREATE INDEX IF NOT EXISTS idx_stripe_payment_history_invoice_id ON auth.stripe_payment_history(stripe_invoice_id);
 CREATE INDEX IF NOT EXISTS idx_stripe_payment_history_status ON auth.stripe_payment_history(status);
+CREATE INDEX IF NOT EXISTS idx_jwt_signing_keys_status ON auth.jwt_signing_keys(status);
+CREATE INDEX IF NOT EXISTS idx_revoked_access_tokens_expires_at ON auth.revoked_access_tokens(expires_at);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_revoked_access_tokens_seq ON auth.revoked_access_tokens(seq);
+CREATE INDEX IF NOT EXISTS idx_token_epoch_changes_expires_at ON auth.token_epoch_changes(expires_at);
 
 -- Limit Exceeded Notifications indexes
 CREATE INDEX IF NOT EXISTS idx_limit_exceeded_notifications_tenant_id ON auth.limit_exceeded_notifications(tenant_id);
@@ -46,10 +46,14 @@ public class SecurityConfig {
                         // Endpoints that REQUIRE authentication (must be before /api/auth/**)
                         .requestMatchers("/api/auth/join-with-access-code").authenticated()
                         .requestMatchers("/api/auth/accept-invitation").authenticated()
+                        .requestMatchers("/api/auth/tenant-names").authenticated()
 
                         // Public endpoints - authentication
                         .requestMatchers("/api/auth/**").permitAll()
 
+                        // JWKS - public keys for local token verification in other services
+                        .requestMatchers("/.well-known/jwks.json").permitAll()
+
                         // Actuator endpoints - only SUPER_ADMIN
                         .requestMatchers("/actuator/health").permitAll()
                         .requestMatchers("/actuator/**").hasAuthority("SUPER_ADMIN")
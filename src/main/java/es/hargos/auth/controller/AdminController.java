@@ -2,22 +2,30 @@ package es.hargos.auth.controller;
 
 import es.hargos.auth.client.RiTrackClient;
 import es.hargos.auth.dto.request.*;
+import es.hargos.auth.dto.response.AdminSessionPageResponse;
 import es.hargos.auth.dto.response.AdminSessionResponse;
 import es.hargos.auth.dto.response.MessageResponse;
 import es.hargos.auth.dto.response.OrganizationResponse;
 import es.hargos.auth.dto.response.TenantResponse;
 import es.hargos.auth.dto.response.UserResponse;
+import es.hargos.auth.service.AdminSessionQueryService;
 import es.hargos.auth.service.OrganizationService;
+import es.hargos.auth.service.SessionExportService;
 import es.hargos.auth.service.SessionService;
 import es.hargos.auth.service.TenantService;
 import es.hargos.auth.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -27,10 +35,14 @@ import java.util.Map;
 @PreAuthorize("@authz.isSuperAdmin()")
 public class AdminController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final UserService userService;
     private final OrganizationService organizationService;
     private final TenantService tenantService;
     private final SessionService sessionService;
+    private final AdminSessionQueryService adminSessionQueryService;
+    private final SessionExportService sessionExportService;
     private final RiTrackClient riTrackClient;
 
     // ==================== USER MANAGEMENT ====================
@@ -335,7 +347,7 @@ public class AdminController {
      */
     @GetMapping("/sessions")
     public ResponseEntity<List<AdminSessionResponse>> getAllActiveSessions() {
-        List<AdminSessionResponse> sessions = sessionService.getAllActiveSessions();
+        List<AdminSessionResponse> sessions = adminSessionQueryService.getAllActiveSessions();
         return ResponseEntity.ok(sessions);
     }
 
@@ -344,10 +356,48 @@ public class AdminController {
      */
     @GetMapping("/sessions/all")
     public ResponseEntity<List<AdminSessionResponse>> getAllSessions() {
-        List<AdminSessionResponse> sessions = sessionService.getAllSessions();
+        List<AdminSessionResponse> sessions = adminSessionQueryService.getAllSessions();
         return ResponseEntity.ok(sessions);
     }
 
+    /**
+     * Listado paginado de sesiones no revocadas, de la mas reciente a la mas antigua.
+     * Siguiente pagina: cursor = nextCursor de la respuesta. Como mucho 200 sesiones por pagina.
+     * subnet filtra por IP en notacion CIDR (p. ej. 10.0.0.0/8).
+     */
+    @GetMapping("/sessions/page")
+    public ResponseEntity<AdminSessionPageResponse> getSessionsPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) Long appId,
+            @RequestParam(required = false) Long tenantId,
+            @RequestParam(required = false) String deviceType,
+            @RequestParam(required = false) String subnet,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime activeSince) {
+        AdminSessionQueryService.Filter filter =
+                new AdminSessionQueryService.Filter(appId, tenantId, deviceType, subnet, activeSince);
+        return ResponseEntity.ok(adminSessionQueryService.getSessionsPage(filter, cursor, limit));
+    }
+
+    /**
+     * Exporta las sesiones (historial de logins, incluidas las revocadas) en NDJSON, por orden de login.
+     * Filtros opcionales: rango de created_at [from, to) y usuario. La respuesta se escribe en streaming.
+     */
+    @GetMapping(path = "/sessions/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportSessions(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Long userId) {
+        SessionExportService.Filter filter = new SessionExportService.Filter(from, to, userId);
+        sessionExportService.validate(filter);
+
+        StreamingResponseBody body = out -> sessionExportService.export(filter, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"sessions.ndjson\"")
+                .body(body);
+    }
+
     /**
      * Obtiene estadisticas de sesiones.
      */
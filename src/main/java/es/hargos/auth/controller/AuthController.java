@@ -1,6 +1,7 @@
 package es.hargos.auth.controller;
 
 import es.hargos.auth.dto.request.AcceptInvitationRequest;
+import es.hargos.auth.dto.request.BatchValidateTokenRequest;
 import es.hargos.auth.dto.request.ForgotPasswordRequest;
 import es.hargos.auth.dto.request.GoogleLoginRequest;
 import es.hargos.auth.dto.request.LoginRequest;
@@ -10,25 +11,40 @@ import es.hargos.auth.dto.request.RegisterWithAccessCodeRequest;
 import es.hargos.auth.dto.request.ResetPasswordRequest;
 import es.hargos.auth.dto.response.LoginResponse;
 import es.hargos.auth.dto.response.MessageResponse;
+import es.hargos.auth.dto.response.TenantNameResponse;
 import es.hargos.auth.dto.response.TokenValidationResponse;
 import es.hargos.auth.dto.response.UserResponse;
+import es.hargos.auth.security.ServiceKeys;
 import es.hargos.auth.service.AuthService;
 import es.hargos.auth.service.GoogleAuthService;
+import es.hargos.auth.service.TenantDirectoryService;
+import es.hargos.auth.util.VerifiedToken;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/auth")
 @RequiredArgsConstructor
 public class AuthController {
 
+    private static final int MAX_TENANT_NAME_IDS = 500;
+
     private final AuthService authService;
     private final GoogleAuthService googleAuthService;
+    private final TenantDirectoryService tenantDirectoryService;
+
+    @Value("${app.validate-batch.service-key:}")
+    private String validateBatchServiceKey;
 
     /**
      * Registro simple sin tenant (para clientes que luego comprarán productos)
@@ -95,6 +111,21 @@ public class AuthController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Nombres de tenant y app por id, para clientes que reciben tokens con el claim de tenants compacto.
+     * Cambian muy poco, así que la respuesta es cacheable.
+     */
+    @GetMapping("/tenant-names")
+    public ResponseEntity<List<TenantNameResponse>> getTenantNames(@RequestParam List<Long> ids) {
+        if (ids.size() > MAX_TENANT_NAME_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<TenantNameResponse> names = List.copyOf(tenantDirectoryService.getNames(ids).values());
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePrivate())
+                .body(names);
+    }
+
     @PostMapping("/login")
     public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest request, HttpServletRequest httpRequest) {
         LoginResponse response = authService.login(request, httpRequest);
@@ -144,19 +175,33 @@ public class AuthController {
 
     @GetMapping("/validate")
     public ResponseEntity<TokenValidationResponse> validateToken(
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(name = VerifiedToken.REQUEST_ATTRIBUTE, required = false) VerifiedToken verifiedToken) {
 
-        String token = authHeader.replace("Bearer ", "");
-        TokenValidationResponse response = authService.validateToken(token);
+        TokenValidationResponse response = resolveToken(authHeader, verifiedToken);
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Valida varios tokens en una sola petición (pensado para gateways).
+     * Devuelve un resultado por token, en el mismo orden.
+     * Solo servicio a servicio: cabecera X-Service-Key (app.validate-batch.service-key). Sin clave
+     * configurada el endpoint está deshabilitado; si no, sería un oráculo de tokens sin límite de peticiones.
+     */
+    @PostMapping("/validate/batch")
+    public ResponseEntity<List<TokenValidationResponse>> validateTokens(
+            @RequestHeader(name = ServiceKeys.HEADER, required = false) String key,
+            @Valid @RequestBody BatchValidateTokenRequest request) {
+        ServiceKeys.check(validateBatchServiceKey, key);
+        return ResponseEntity.ok(authService.validateTokens(request.getTokens()));
+    }
+
     @GetMapping("/me")
     public ResponseEntity<TokenValidationResponse> getCurrentUser(
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(name = VerifiedToken.REQUEST_ATTRIBUTE, required = false) VerifiedToken verifiedToken) {
 
-        String token = authHeader.replace("Bearer ", "");
-        TokenValidationResponse response = authService.validateToken(token);
+        TokenValidationResponse response = resolveToken(authHeader, verifiedToken);
 
         if (!response.getValid()) {
             return ResponseEntity.status(401).body(response);
@@ -165,6 +210,18 @@ public class AuthController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Reutiliza el token que JwtAuthenticationFilter ya verificó en este request;
+     * solo se vuelve a parsear si el filtro no lo dejó (header sin prefijo Bearer, token inválido)
+     */
+    private TokenValidationResponse resolveToken(String authHeader, VerifiedToken verifiedToken) {
+        if (verifiedToken != null) {
+            return authService.validateToken(verifiedToken);
+        }
+        String token = authHeader.replace("Bearer ", "");
+        return authService.validateToken(token);
+    }
+
     @PostMapping("/forgot-password")
     public ResponseEntity<MessageResponse> forgotPassword(
             @Valid @RequestBody ForgotPasswordRequest request,
@@ -0,0 +1,38 @@
+package es.hargos.auth.controller;
+
+import es.hargos.auth.util.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Publica las claves públicas de firma de access tokens (JWKS, RFC 7517).
+ * Con jwt.signing-algorithm=ES256 RiTrack y el resto de servicios pueden verificar los tokens
+ * localmente en lugar de llamar a /api/auth/validate en cada request.
+ *
+ * El max-age (jwt.jwks.max-age-ms) también retrasa la activación de cada clave rotada
+ * (SigningKeyRotationService): una clave solo firma cuando ningún JWKS cacheado puede ser anterior a ella.
+ */
+@RestController
+public class JwksController {
+
+    private final JwtUtil jwtUtil;
+    private final Duration maxAge;
+
+    public JwksController(JwtUtil jwtUtil, @Value("${jwt.jwks.max-age-ms:300000}") long maxAgeMs) {
+        this.jwtUtil = jwtUtil;
+        this.maxAge = Duration.ofMillis(maxAgeMs);
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAge).cachePublic())
+                .body(jwtUtil.getPublicJwkSet().toJSONObject(true));
+    }
+}
@@ -0,0 +1,56 @@
+package es.hargos.auth.controller;
+
+import es.hargos.auth.dto.response.RevocationFeedResponse;
+import es.hargos.auth.security.ServiceKeys;
+import es.hargos.auth.service.RevocationFeedService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Feed de revocaciones para servicios downstream (RiTrack, gateways) que mantienen
+ * una denylist local en lugar de llamar a /api/auth/validate en cada request.
+ *
+ * Autenticación servicio a servicio con la cabecera X-Service-Key (app.revocation-feed.service-key).
+ * Sin clave configurada el feed está deshabilitado.
+ */
+@RestController
+@RequestMapping("/api/auth/revocations")
+@RequiredArgsConstructor
+public class RevocationFeedController {
+
+    private static final int MAX_POLL_EVENTS = 1000;
+
+    private final RevocationFeedService revocationFeedService;
+
+    @Value("${app.revocation-feed.service-key:}")
+    private String serviceKey;
+
+    /**
+     * Polling: eventos posteriores al cursor. Sin cursor devuelve el snapshot (el registro entero, paginado).
+     */
+    @GetMapping
+    public ResponseEntity<RevocationFeedResponse> poll(
+            @RequestHeader(name = ServiceKeys.HEADER, required = false) String key,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "500") int limit) {
+        ServiceKeys.check(serviceKey, key);
+        return ResponseEntity.ok(revocationFeedService.poll(cursor, Math.min(Math.max(limit, 1), MAX_POLL_EVENTS)));
+    }
+
+    /**
+     * Server-Sent Events. Al reconectar (a esta u otra instancia), el cliente SSE envía Last-Event-ID y el feed
+     * se reanuda desde ahí.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestHeader(name = ServiceKeys.HEADER, required = false) String key,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(required = false) String cursor) {
+        ServiceKeys.check(serviceKey, key);
+        return revocationFeedService.subscribe(lastEventId != null ? lastEventId : cursor);
+    }
+}
@@ -13,6 +13,7 @@ import es.hargos.auth.exception.ForbiddenException;
 import es.hargos.auth.exception.ResourceNotFoundException;
 import es.hargos.auth.repository.UserRepository;
 import es.hargos.auth.repository.UserTenantRoleRepository;
+import es.hargos.auth.security.AuthorizationService;
 import es.hargos.auth.service.TenantService;
 import es.hargos.auth.service.UserService;
 import jakarta.validation.Valid;
@@ -25,6 +26,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -39,6 +41,7 @@ public class TenantAdminController {
     private final UserTenantRoleRepository userTenantRoleRepository;
     private final InvitationService invitationService;
     private final AccessCodeService accessCodeService;
+    private final AuthorizationService authz;
 
     // ==================== USER MANAGEMENT ====================
 
@@ -48,10 +51,8 @@ public class TenantAdminController {
             @Valid @RequestBody CreateUserRequest request,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-
         // Validate that the tenant admin can only create users for tenants they manage
-        validateTenantAdminAccess(currentUser, request.getTenantRoles().stream()
+        validateTenantAdminAccess(request.getTenantRoles().stream()
                 .map(CreateUserRequest.TenantRoleAssignment::getTenantId)
                 .collect(Collectors.toList()));
 
@@ -73,11 +74,10 @@ public class TenantAdminController {
             @PathVariable Long id,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
         UserResponse user = userService.getUserById(id);
 
         // Validate that the user belongs to a tenant managed by this admin
-        validateUserAccessByTenantAdmin(currentUser, id);
+        validateUserAccessByTenantAdmin(id);
 
         return ResponseEntity.ok(user);
     }
@@ -89,10 +89,8 @@ public class TenantAdminController {
             @Valid @RequestBody AssignTenantRequest request,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-
         // Validate that the tenant admin manages this tenant
-        validateTenantAdminAccess(currentUser, List.of(request.getTenantId()));
+        validateTenantAdminAccess(List.of(request.getTenantId()));
 
         UserResponse response = userService.assignTenant(id, request);
         return ResponseEntity.ok(response);
@@ -105,8 +103,7 @@ public class TenantAdminController {
             @PathVariable Long id,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateUserAccessByTenantAdmin(currentUser, id);
+        validateUserAccessByTenantAdmin(id);
 
         // Obtener el usuario a eliminar
         UserEntity targetUser = userRepository.findById(id)
@@ -115,13 +112,9 @@ public class TenantAdminController {
         // Obtener los tenants del usuario a eliminar
         List<UserTenantRoleEntity> targetUserTenants = userTenantRoleRepository.findByUser(targetUser);
 
-        // Verificar si es SUPER_ADMIN
-        List<UserTenantRoleEntity> superAdminRoles = userTenantRoleRepository
-                .findByUserAndRole(currentUser, "SUPER_ADMIN");
-
         int tenantsRemoved = 0;
 
-        if (!superAdminRoles.isEmpty()) {
+        if (authz.isSuperAdmin()) {
             // SUPER_ADMIN: eliminar de TODOS los tenants
             for (UserTenantRoleEntity targetUserTenant : targetUserTenants) {
                 Long tenantId = targetUserTenant.getTenant().getId();
@@ -130,12 +123,7 @@ public class TenantAdminController {
             }
         } else {
             // TENANT_ADMIN: eliminar solo de los tenants que gestiona
-            List<UserTenantRoleEntity> adminTenants = userTenantRoleRepository
-                    .findByUserAndRole(currentUser, "TENANT_ADMIN");
-
-            List<Long> managedTenantIds = adminTenants.stream()
-                    .map(utr -> utr.getTenant().getId())
-                    .collect(Collectors.toList());
+            Set<Long> managedTenantIds = authz.getManagedTenantIds();
 
             for (UserTenantRoleEntity targetUserTenant : targetUserTenants) {
                 Long tenantId = targetUserTenant.getTenant().getId();
@@ -159,22 +147,15 @@ public class TenantAdminController {
     @GetMapping("/tenants")
     @Transactional(readOnly = true)
     public ResponseEntity<List<TenantResponse>> getMyManagedTenants(Authentication authentication) {
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-
         // Si es SUPER_ADMIN, devolver todos los tenants
-        List<UserTenantRoleEntity> superAdminRoles = userTenantRoleRepository
-                .findByUserAndRole(currentUser, "SUPER_ADMIN");
-        if (!superAdminRoles.isEmpty()) {
+        if (authz.isSuperAdmin()) {
             List<TenantResponse> allTenants = tenantService.getAllTenants();
             return ResponseEntity.ok(allTenants);
         }
 
         // Si es TENANT_ADMIN, devolver solo los tenants asignados
-        List<UserTenantRoleEntity> adminTenants = userTenantRoleRepository
-                .findByUserAndRole(currentUser, "TENANT_ADMIN");
-
-        List<TenantResponse> tenants = adminTenants.stream()
-                .map(utr -> tenantService.getTenantById(utr.getTenant().getId()))
+        List<TenantResponse> tenants = authz.getManagedTenantIds().stream()
+                .map(tenantService::getTenantById)
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(tenants);
@@ -186,8 +167,7 @@ public class TenantAdminController {
             @PathVariable Long id,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(id));
+        validateTenantAdminAccess(List.of(id));
 
         TenantResponse tenant = tenantService.getTenantById(id);
         return ResponseEntity.ok(tenant);
@@ -199,8 +179,7 @@ public class TenantAdminController {
             @PathVariable Long id,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(id));
+        validateTenantAdminAccess(List.of(id));
 
         List<UserResponse> users = userService.getUsersByTenant(id);
         return ResponseEntity.ok(users);
@@ -213,45 +192,22 @@ public class TenantAdminController {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
     }
 
-    @Transactional(readOnly = true)
-    private void validateTenantAdminAccess(UserEntity adminUser, List<Long> tenantIds) {
-        // Si es SUPER_ADMIN, tiene acceso a todos los tenants
-        List<UserTenantRoleEntity> superAdminRoles = userTenantRoleRepository
-                .findByUserAndRole(adminUser, "SUPER_ADMIN");
-        if (!superAdminRoles.isEmpty()) {
-            return; // SUPER_ADMIN tiene acceso total
-        }
-
-        // Si no es SUPER_ADMIN, verificar que sea TENANT_ADMIN para los tenants solicitados
-        List<UserTenantRoleEntity> adminTenants = userTenantRoleRepository
-                .findByUserAndRole(adminUser, "TENANT_ADMIN");
-
-        List<Long> managedTenantIds = adminTenants.stream()
-                .map(utr -> utr.getTenant().getId())
-                .collect(Collectors.toList());
-
-        for (Long tenantId : tenantIds) {
-            if (!managedTenantIds.contains(tenantId)) {
-                throw new ForbiddenException("No tienes permiso para gestionar este tenant");
-            }
+    private void validateTenantAdminAccess(List<Long> tenantIds) {
+        // SUPER_ADMIN tiene acceso a todos los tenants; TENANT_ADMIN solo a los suyos
+        // (índice tenantId -> rol de los claims del JWT, sin consultas a la base de datos)
+        if (!authz.canManageTenants(tenantIds)) {
+            throw new ForbiddenException("No tienes permiso para gestionar este tenant");
         }
     }
 
-    private void validateUserAccessByTenantAdmin(UserEntity adminUser, Long userId) {
+    private void validateUserAccessByTenantAdmin(Long userId) {
         // Si es SUPER_ADMIN, tiene acceso a todos los usuarios
-        List<UserTenantRoleEntity> superAdminRoles = userTenantRoleRepository
-                .findByUserAndRole(adminUser, "SUPER_ADMIN");
-        if (!superAdminRoles.isEmpty()) {
+        if (authz.isSuperAdmin()) {
             return; // SUPER_ADMIN tiene acceso total
         }
 
         // Si no es SUPER_ADMIN, verificar que sea TENANT_ADMIN para al menos un tenant del usuario
-        List<UserTenantRoleEntity> adminTenants = userTenantRoleRepository
-                .findByUserAndRole(adminUser, "TENANT_ADMIN");
-
-        List<Long> managedTenantIds = adminTenants.stream()
-                .map(utr -> utr.getTenant().getId())
-                .collect(Collectors.toList());
+        Set<Long> managedTenantIds = authz.getManagedTenantIds();
 
         UserEntity targetUser = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
@@ -277,10 +233,9 @@ public class TenantAdminController {
             @Valid @RequestBody CreateInvitationRequest request,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(request.getTenantId()));
+        validateTenantAdminAccess(List.of(request.getTenantId()));
 
-        InvitationResponse response = invitationService.createInvitation(request, currentUser.getId());
+        InvitationResponse response = invitationService.createInvitation(request, authz.getCurrentUserId());
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
@@ -293,8 +248,7 @@ public class TenantAdminController {
             @PathVariable Long tenantId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(tenantId));
+        validateTenantAdminAccess(List.of(tenantId));
 
         List<InvitationResponse> invitations = invitationService.getInvitationsByTenant(tenantId);
         return ResponseEntity.ok(invitations);
@@ -309,8 +263,7 @@ public class TenantAdminController {
             @PathVariable Long tenantId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(tenantId));
+        validateTenantAdminAccess(List.of(tenantId));
 
         List<InvitationResponse> invitations = invitationService.getPendingInvitationsByTenant(tenantId);
         return ResponseEntity.ok(invitations);
@@ -325,11 +278,9 @@ public class TenantAdminController {
             @PathVariable Long invitationId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-
         // Validar que el admin gestiona el tenant de la invitación
         Long invitationTenantId = invitationService.getTenantIdByInvitationId(invitationId);
-        validateTenantAdminAccess(currentUser, List.of(invitationTenantId));
+        validateTenantAdminAccess(List.of(invitationTenantId));
 
         invitationService.deleteInvitation(invitationId);
         return ResponseEntity.ok(new MessageResponse("Invitación eliminada exitosamente"));
@@ -346,10 +297,9 @@ public class TenantAdminController {
             @Valid @RequestBody CreateAccessCodeRequest request,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(request.getTenantId()));
+        validateTenantAdminAccess(List.of(request.getTenantId()));
 
-        AccessCodeResponse response = accessCodeService.createAccessCode(request, currentUser.getId());
+        AccessCodeResponse response = accessCodeService.createAccessCode(request, authz.getCurrentUserId());
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
@@ -362,8 +312,7 @@ public class TenantAdminController {
             @PathVariable Long tenantId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(tenantId));
+        validateTenantAdminAccess(List.of(tenantId));
 
         List<AccessCodeResponse> accessCodes = accessCodeService.getAccessCodesByTenant(tenantId);
         return ResponseEntity.ok(accessCodes);
@@ -378,8 +327,7 @@ public class TenantAdminController {
             @PathVariable Long tenantId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-        validateTenantAdminAccess(currentUser, List.of(tenantId));
+        validateTenantAdminAccess(List.of(tenantId));
 
         List<AccessCodeResponse> accessCodes = accessCodeService.getActiveAccessCodesByTenant(tenantId);
         return ResponseEntity.ok(accessCodes);
@@ -394,11 +342,9 @@ public class TenantAdminController {
             @PathVariable Long accessCodeId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-
         // Validar que el admin gestiona el tenant del código
         Long accessCodeTenantId = accessCodeService.getTenantIdByAccessCodeId(accessCodeId);
-        validateTenantAdminAccess(currentUser, List.of(accessCodeTenantId));
+        validateTenantAdminAccess(List.of(accessCodeTenantId));
 
         accessCodeService.deactivateAccessCode(accessCodeId);
         return ResponseEntity.ok(new MessageResponse("Código de acceso desactivado exitosamente"));
@@ -413,11 +359,9 @@ public class TenantAdminController {
             @PathVariable Long accessCodeId,
             Authentication authentication) {
 
-        UserEntity currentUser = getUserFromAuthentication(authentication);
-
         // Validar que el admin gestiona el tenant del código
         Long accessCodeTenantId = accessCodeService.getTenantIdByAccessCodeId(accessCodeId);
-        validateTenantAdminAccess(currentUser, List.of(accessCodeTenantId));
+        validateTenantAdminAccess(List.of(accessCodeTenantId));
 
         accessCodeService.deleteAccessCode(accessCodeId);
         return ResponseEntity.ok(new MessageResponse("Código de acceso eliminado exitosamente"));
@@ -0,0 +1,14 @@
+package es.hargos.auth.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchValidateTokenRequest {
+
+    @NotEmpty(message = "Lista de tokens obligatoria")
+    private List<@NotBlank(message = "Token obligatorio") String> tokens;
+}
@@ -15,4 +15,7 @@ public class UpdateTenantRequest {
 
     @Min(value = 1, message = "El límite de cuentas debe ser al menos 1")
     private Integer accountLimit;
+
+    @Min(value = 1, message = "El límite de sesiones por usuario debe ser al menos 1")
+    private Integer maxSessionsPerUser;
 }
@@ -0,0 +1,19 @@
+package es.hargos.auth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página del listado de sesiones del panel de administración.
+ * nextCursor se envía como cursor para pedir la siguiente página; null si no hay más.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdminSessionPageResponse {
+    private List<AdminSessionResponse> sessions;
+    private String nextCursor;
+}
@@ -22,6 +22,12 @@ public class AdminSessionResponse {
     private LocalDateTime createdAt;
     private Boolean isActive;
 
+    // Clasificacion del User-Agent (UserAgentClassifier)
+    private String deviceClass;
+    private String osFamily;
+    private String browserFamily;
+    private Boolean isBot;
+
     // Informacion del usuario
     private Long userId;
     private String userEmail;
@@ -0,0 +1,19 @@
+package es.hargos.auth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevocationEventResponse {
+    private Long sequence;      // seq en el registro de revocaciones: el cursor tras este evento
+    private String type;        // JTI o USER_EPOCH
+    private String jti;         // Solo en JTI
+    private Long userId;        // Solo en USER_EPOCH
+    private Integer tokenEpoch; // Solo en USER_EPOCH: son válidos los tokens con tep >= tokenEpoch
+    private LocalDateTime occurredAt;
+}
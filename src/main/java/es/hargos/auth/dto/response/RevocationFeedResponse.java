@@ -0,0 +1,16 @@
+package es.hargos.auth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevocationFeedResponse {
+    private String cursor;      // Cursor para la siguiente petición
+    private Boolean snapshot;   // true: events abre el estado completo, el consumidor sustituye su denylist y sigue con cursor
+    private List<RevocationEventResponse> events;
+}
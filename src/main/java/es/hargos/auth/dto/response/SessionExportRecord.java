@@ -0,0 +1,26 @@
+package es.hargos.auth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Una línea de la exportación NDJSON de sesiones (auditoría).
+ * Cada sesión es un login: createdAt es el momento del login. Incluye las sesiones revocadas.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionExportRecord {
+    private Long id;
+    private Long userId;
+    private String userEmail;
+    private String ipAddress;
+    private String userAgent;
+    private String deviceType;
+    private LocalDateTime createdAt;
+    private LocalDateTime lastActivityAt;
+    private Boolean isRevoked;
+}
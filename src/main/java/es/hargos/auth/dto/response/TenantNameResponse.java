@@ -0,0 +1,15 @@
+package es.hargos.auth.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TenantNameResponse {
+    private Long tenantId;
+    private String tenantName;
+    private Long appId;
+    private String appName;
+}
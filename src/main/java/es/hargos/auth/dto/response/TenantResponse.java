@@ -19,6 +19,7 @@ public class TenantResponse {
     private String name;
     private String description;
     private Integer accountLimit;
+    private Integer maxSessionsPerUser;
     private Long currentAccountCount;
     private Boolean isActive;
     private LocalDateTime createdAt;
@@ -26,6 +26,9 @@ public class AppEntity {
     @Column(columnDefinition = "TEXT")
     private String description;
 
+    @Column(name = "max_sessions_per_user")
+    private Integer maxSessionsPerUser; // null = app.sessions.max-per-user
+
     @Column(name = "is_active")
     private Boolean isActive = true;
 
@@ -0,0 +1,53 @@
+package es.hargos.auth.entity;
+
+/**
+ * Tipo de dispositivo de una sesión. En user_sessions.device_type se guarda el código (smallint,
+ * ver DeviceTypeConverter); en la API y en las estadísticas se usa el nombre.
+ * Los códigos no pueden cambiar: son los mismos que usa auth.device_type_code en init-db.sql.
+ */
+public enum DeviceType {
+    UNKNOWN(0, "unknown"),
+    WEB(1, "web"),
+    MOBILE(2, "mobile"),
+    DESKTOP(3, "desktop");
+
+    private final short code;
+    private final String value;
+
+    DeviceType(int code, String value) {
+        this.code = (short) code;
+        this.value = value;
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Tipo de un código guardado; UNKNOWN si no se reconoce
+     */
+    public static DeviceType fromCode(int code) {
+        for (DeviceType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Tipo de un nombre (web, mobile, ...); null si no se reconoce
+     */
+    public static DeviceType fromValue(String value) {
+        for (DeviceType type : values()) {
+            if (type.value.equals(value)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
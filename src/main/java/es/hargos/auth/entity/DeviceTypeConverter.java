@@ -0,0 +1,22 @@
+package es.hargos.auth.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * user_sessions.device_type: nombre del tipo (web, mobile, ...) en la entidad, código smallint en la tabla
+ */
+@Converter
+public class DeviceTypeConverter implements AttributeConverter<String, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(String value) {
+        DeviceType type = DeviceType.fromValue(value);
+        return (type != null ? type : DeviceType.UNKNOWN).getCode();
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short code) {
+        return DeviceType.fromCode(code != null ? code : DeviceType.UNKNOWN.getCode()).getValue();
+    }
+}
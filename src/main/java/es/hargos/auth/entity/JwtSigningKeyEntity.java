@@ -0,0 +1,56 @@
+package es.hargos.auth.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Clave del anillo de firma de access tokens.
+ *
+ * Ciclo de vida: VERIFY_ONLY (publicada, pendiente de activar) → ACTIVE → VERIFY_ONLY (hasta verify_until) → RETIRED
+ */
+@Entity
+@Table(name = "jwt_signing_keys", schema = "auth")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JwtSigningKeyEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(unique = true, nullable = false, length = 64)
+    private String kid;
+
+    @Column(nullable = false, length = 10)
+    private String algorithm; // HS256, ES256
+
+    @Column(name = "key_material", nullable = false, columnDefinition = "TEXT")
+    @lombok.ToString.Exclude
+    private String keyMaterial; // JWK con la parte privada/secreta, cifrado (ver SigningKeyEncryptor)
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private SigningKeyStatus status;
+
+    @Column(name = "activate_after")
+    private LocalDateTime activateAfter; // A partir de cuándo puede pasar a ACTIVE
+
+    @Column(name = "activated_at")
+    private LocalDateTime activatedAt;
+
+    @Column(name = "verify_until")
+    private LocalDateTime verifyUntil; // Tras dejar de ser ACTIVE: expiración del último token firmado
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -25,7 +25,7 @@ public class RefreshTokenEntity {
     private UserEntity user;
 
     @Column(unique = true, nullable = false, length = 500)
-    private String token;
+    private String token; // "sha256:..." (hash del secreto, tokens v1) o UUID en claro (tokens legacy)
 
     @Column(name = "expires_at", nullable = false)
     private LocalDateTime expiresAt;
@@ -39,6 +39,9 @@ public class RefreshTokenEntity {
     @Column(name = "revoked_at")
     private LocalDateTime revokedAt;
 
+    @Column(name = "token_epoch", nullable = false)
+    private Integer tokenEpoch = 0; // token_epoch del usuario al emitirlo
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
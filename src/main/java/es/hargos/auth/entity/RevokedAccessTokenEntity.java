@@ -0,0 +1,34 @@
+package es.hargos.auth.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Access token revocado antes de expirar (sesión revocada o JTI sustituido por un refresh).
+ * Se guarda hasta expires_at: las instancias leen estas filas por seq (registro de revocaciones
+ * compartido, ver TokenRevocationService.sync) y las recargan al arrancar.
+ */
+@Entity
+@Table(name = "revoked_access_tokens", schema = "auth")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedAccessTokenEntity {
+
+    @Id
+    @Column(length = 100)
+    private String jti;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt; // Cota superior de la expiración del token: después ya no hace falta
+
+    @Column(insertable = false, updatable = false)
+    private Long seq; // auth.revocation_seq, lo asigna la base de datos
+
+    @Column(name = "revoked_at", insertable = false, updatable = false)
+    private LocalDateTime revokedAt;
+}
@@ -0,0 +1,7 @@
+package es.hargos.auth.entity;
+
+public enum SigningKeyStatus {
+    ACTIVE,         // Firma los access tokens nuevos (una sola clave)
+    VERIFY_ONLY,    // Publicada pero aún no activa, o sustituida: solo verifica tokens ya emitidos
+    RETIRED         // Ya no hay tokens vigentes firmados con ella: no verifica nada
+}
@@ -38,6 +38,9 @@ public class TenantEntity {
     @Column(name = "account_limit", nullable = false)
     private Integer accountLimit = 1; // Minimum 1 (includes the TENANT_ADMIN)
 
+    @Column(name = "max_sessions_per_user")
+    private Integer maxSessionsPerUser; // null = usa el límite de la app
+
     @Column(name = "is_active")
     private Boolean isActive = true;
 
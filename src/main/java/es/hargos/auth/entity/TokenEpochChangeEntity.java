@@ -0,0 +1,37 @@
+package es.hargos.auth.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Incremento de token_epoch de un usuario en el registro de revocaciones compartido.
+ * users.token_epoch guarda el valor vigente; esta fila avisa a las demás instancias y solo hace falta
+ * hasta que expiran los access tokens emitidos antes del incremento (expires_at).
+ */
+@Entity
+@Table(name = "token_epoch_changes", schema = "auth")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenEpochChangeEntity {
+
+    @Id
+    @Column(insertable = false, updatable = false)
+    private Long seq; // auth.revocation_seq, lo asigna la base de datos
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId; // Sin FK: la fila sobrevive al borrado del usuario hasta que expira
+
+    @Column(name = "token_epoch", nullable = false)
+    private Integer tokenEpoch;
+
+    @Column(name = "changed_at", insertable = false, updatable = false)
+    private LocalDateTime changedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -63,6 +63,9 @@ public class UserEntity {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    @Column(name = "token_epoch", nullable = false)
+    private Integer tokenEpoch = 0; // Se incrementa para invalidar de golpe todos los tokens del usuario
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     @lombok.ToString.Exclude
     @lombok.EqualsAndHashCode.Exclude
@@ -4,9 +4,15 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.LocalDateTime;
 
+/**
+ * Sesión de usuario. La tabla está particionada por mes sobre created_at (ver init-db.sql y
+ * SessionPartitionService): la clave primaria real es (id, created_at), pero id es único por sí
+ * solo (secuencia), así que JPA sigue identificando la sesión solo por id.
+ */
 @Entity
 @Table(name = "user_sessions", schema = "auth")
 @Data
@@ -30,14 +36,17 @@ public class UserSessionEntity {
     @lombok.EqualsAndHashCode.Exclude
     private RefreshTokenEntity refreshToken;
 
-    @Column(name = "ip_address", length = 45)
+    // Columna inet: una IP que no es válida (X-Forwarded-For lo controla el cliente) se guarda como null
+    @Column(name = "ip_address", columnDefinition = "inet")
+    @ColumnTransformer(read = "host(ip_address)", write = "auth.try_inet(?)")
     private String ipAddress;
 
-    @Column(name = "user_agent", length = 500)
-    private String userAgent;
+    @Column(name = "user_agent_id")
+    private Integer userAgentId; // auth.user_agents (ver UserAgentDictionary)
 
-    @Column(name = "device_type", length = 20)
-    private String deviceType; // web, mobile, desktop, unknown
+    @Column(name = "device_type", nullable = false)
+    @Convert(converter = DeviceTypeConverter.class)
+    private String deviceType; // web, mobile, desktop, unknown (smallint en la tabla, ver DeviceType)
 
     @Column(name = "access_token_jti", length = 100)
     private String accessTokenJti; // JWT ID para vincular y revocar access tokens
@@ -45,8 +54,8 @@ public class UserSessionEntity {
     @Column(name = "last_activity_at", nullable = false)
     private LocalDateTime lastActivityAt;
 
-    @Column(name = "created_at", updatable = false)
-    private LocalDateTime createdAt;
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt; // Clave de partición: no puede cambiar
 
     @Column(name = "is_revoked", nullable = false)
     private Boolean isRevoked = false;
@@ -67,6 +76,14 @@ public class UserSessionEntity {
      * - Hay actividad reciente (últimos 30 minutos)
      */
     public boolean isActive() {
+        return isActive(lastActivityAt);
+    }
+
+    /**
+     * Igual que {@link #isActive()} con una última actividad más reciente que la guardada
+     * (ver SessionActivityBuffer)
+     */
+    public boolean isActive(LocalDateTime lastActivityAt) {
         if (isRevoked) {
             return false;
         }
@@ -86,29 +103,4 @@ public class UserSessionEntity {
     public void updateActivity() {
         this.lastActivityAt = LocalDateTime.now();
     }
-
-    /**
-     * Detecta el tipo de dispositivo basado en el User-Agent
-     */
-    public static String detectDeviceType(String userAgent) {
-        if (userAgent == null || userAgent.isEmpty()) {
-            return "unknown";
-        }
-
-        String ua = userAgent.toLowerCase();
-
-        // Detectar mobile
-        if (ua.contains("mobile") || ua.contains("android") || ua.contains("iphone") ||
-            ua.contains("ipad") || ua.contains("ipod") || ua.contains("windows phone")) {
-            return "mobile";
-        }
-
-        // Detectar desktop apps (Electron, etc.)
-        if (ua.contains("electron") || ua.contains("nwjs")) {
-            return "desktop";
-        }
-
-        // Por defecto es web (navegador)
-        return "web";
-    }
 }
@@ -1,14 +1,16 @@
 package es.hargos.auth.filter;
 
-import com.nimbusds.jwt.JWTClaimsSet;
-import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.entity.Role;
+import es.hargos.auth.security.JwtAuthenticationToken;
+import es.hargos.auth.service.TokenRevocationService;
 import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.TenantGrant;
+import es.hargos.auth.util.VerifiedToken;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -18,15 +20,28 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    // Una authority inmutable por rol, compartida entre requests
+    private static final Map<Role, GrantedAuthority> ROLE_AUTHORITIES = new EnumMap<>(Role.class);
+
+    static {
+        for (Role role : Role.values()) {
+            ROLE_AUTHORITIES.put(role, new SimpleGrantedAuthority(role.name()));
+        }
+    }
+
     private final JwtUtil jwtUtil;
-    private final UserSessionRepository userSessionRepository;
+    private final TokenRevocationService tokenRevocationService;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -45,55 +60,54 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // Extraer el token
             final String jwt = authHeader.substring(7);
 
-            // Validar el token (firma y expiración)
-            if (!jwtUtil.validateToken(jwt)) {
+            // Parsear y validar el token una sola vez (firma y expiración)
+            Optional<VerifiedToken> verified = jwtUtil.verify(jwt);
+            if (verified.isEmpty()) {
                 filterChain.doFilter(request, response);
                 return;
             }
 
-            // Extraer JTI y verificar que no esté revocado
-            String jti = jwtUtil.getJtiFromToken(jwt);
-            if (jti != null) {
-                // Verificar si existe una sesión activa con este JTI
-                boolean isRevoked = userSessionRepository.findActiveSessionByJti(jti).isEmpty();
-                if (isRevoked) {
-                    // El token fue revocado (logout)
-                    logger.warn("Access token with JTI " + jti + " has been revoked");
-                    filterChain.doFilter(request, response);
-                    return;
-                }
+            VerifiedToken token = verified.get();
+            request.setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, token);
+
+            // Verificar que el token no esté revocado por JTI ni por token epoch (en memoria, sin consultar la base de datos)
+            String jti = token.getJti();
+            if (tokenRevocationService.isRevoked(token)) {
+                // El token fue revocado (logout, revocación de sesión, refresh o revocación masiva del usuario)
+                logger.warn("Access token with JTI " + jti + " has been revoked");
+                filterChain.doFilter(request, response);
+                return;
             }
 
-            // Extraer claims
-            JWTClaimsSet claims = jwtUtil.getClaimsFromToken(jwt);
-            String email = claims.getSubject();
+            String email = token.getSubject();
 
             // Si el usuario ya está autenticado, no hacer nada
             if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 
-                // Extraer roles de los tenants
-                List<GrantedAuthority> authorities = new ArrayList<>();
+                // Extraer roles de los tenants: authorities (rol en cualquier tenant, sin repetir) e índice tenantId -> rol
+                EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+                Map<Long, Role> tenantRoles = new HashMap<>();
 
                 try {
-                    List<Map<String, Object>> tenants = (List<Map<String, Object>>) claims.getClaim("tenants");
-
-                    if (tenants != null) {
-                        for (Map<String, Object> tenant : tenants) {
-                            String role = (String) tenant.get("role");
-                            if (role != null) {
-                                authorities.add(new SimpleGrantedAuthority(role));
-                            }
-                        }
+                    for (TenantGrant grant : token.getTenants()) {
+                        roles.add(grant.role());
+                        tenantRoles.put(grant.tenantId(), grant.role());
                     }
                 } catch (Exception e) {
                     // Si hay error parseando tenants, continuar sin roles
                     logger.warn("Error parsing tenant roles from JWT: " + e.getMessage());
                 }
 
+                List<GrantedAuthority> authorities = new ArrayList<>(roles.size());
+                for (Role role : roles) {
+                    authorities.add(ROLE_AUTHORITIES.get(role));
+                }
+
                 // Crear el objeto de autenticación
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                JwtAuthenticationToken authToken = new JwtAuthenticationToken(
                         email,
-                        null,
+                        token.getUserId(),
+                        tenantRoles,
                         authorities
                 );
 
@@ -0,0 +1,26 @@
+package es.hargos.auth.repository;
+
+import es.hargos.auth.entity.JwtSigningKeyEntity;
+import es.hargos.auth.entity.SigningKeyStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface JwtSigningKeyRepository extends JpaRepository<JwtSigningKeyEntity, Long> {
+
+    List<JwtSigningKeyEntity> findByStatusIn(Collection<SigningKeyStatus> statuses);
+
+    /**
+     * Igual que findByStatusIn pero bloqueando las filas: serializa la rotación entre instancias
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT k FROM JwtSigningKeyEntity k WHERE k.status IN :statuses ORDER BY k.id")
+    List<JwtSigningKeyEntity> findByStatusInForUpdate(@Param("statuses") Collection<SigningKeyStatus> statuses);
+}
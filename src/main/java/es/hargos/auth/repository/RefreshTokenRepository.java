@@ -3,6 +3,9 @@ package es.hargos.auth.repository;
 import es.hargos.auth.entity.RefreshTokenEntity;
 import es.hargos.auth.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -15,4 +18,12 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshTokenEntity
     List<RefreshTokenEntity> findByUser(UserEntity user);
     void deleteByUser(UserEntity user);
     void deleteByExpiresAtBefore(LocalDateTime dateTime);
+
+    /**
+     * Revoca en una sola sentencia todos los refresh tokens no revocados del usuario
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE RefreshTokenEntity rt SET rt.revoked = true, rt.revokedAt = :now " +
+           "WHERE rt.user = :user AND (rt.revoked = false OR rt.revoked IS NULL)")
+    int revokeAllByUser(@Param("user") UserEntity user, @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,57 @@
+package es.hargos.auth.repository;
+
+import es.hargos.auth.entity.RevokedAccessTokenEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedAccessTokenRepository extends JpaRepository<RevokedAccessTokenEntity, String> {
+
+    /**
+     * Registra un JTI revocado en la transacción en curso. Si ya estaba, se conserva la fila existente.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO auth.revoked_access_tokens (jti, expires_at) VALUES (:jti, :expiresAt) " +
+           "ON CONFLICT (jti) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("jti") String jti, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Registro de revocaciones compartido: JTIs revocados e incrementos de token_epoch (auth.token_epoch_changes)
+     * posteriores a afterSeq y aún vigentes, en orden de seq y como mucho limit.
+     *
+     * Devuelve [seq, jti, userId, tokenEpoch, occurredAt, settled]. settled indica que la fila tiene más de
+     * settleSeconds (reloj de la base de datos): una transacción que obtuvo un seq menor y aún no ha hecho
+     * commit ya no puede aparecer por detrás, ver TokenRevocationService.sync.
+     */
+    @Query(value = "SELECT seq, jti, user_id, token_epoch, occurred_at, " +
+           "       occurred_at < CAST(clock_timestamp() AS TIMESTAMP) - make_interval(secs => :settleSeconds) AS settled " +
+           "FROM ( " +
+           "    SELECT seq, jti, CAST(NULL AS BIGINT) AS user_id, CAST(NULL AS INTEGER) AS token_epoch, " +
+           "           revoked_at AS occurred_at " +
+           "    FROM auth.revoked_access_tokens WHERE seq > :afterSeq AND expires_at > :now " +
+           "    UNION ALL " +
+           "    SELECT seq, NULL, user_id, token_epoch, changed_at " +
+           "    FROM auth.token_epoch_changes WHERE seq > :afterSeq AND expires_at > :now " +
+           ") revocation_log " +
+           "ORDER BY seq LIMIT :limit", nativeQuery = true)
+    List<Object[]> findRevocationLogAfter(@Param("afterSeq") long afterSeq,
+                                          @Param("now") LocalDateTime now,
+                                          @Param("settleSeconds") double settleSeconds,
+                                          @Param("limit") int limit);
+
+    /**
+     * Elimina los JTIs cuyo access token ya ha expirado
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedAccessTokenEntity r WHERE r.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -4,8 +4,11 @@ import es.hargos.auth.entity.AppEntity;
 import es.hargos.auth.entity.OrganizationEntity;
 import es.hargos.auth.entity.TenantEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +21,7 @@ public interface TenantRepository extends JpaRepository<TenantEntity, Long> {
     Optional<TenantEntity> findByAppAndOrganizationAndName(AppEntity app, OrganizationEntity organization, String name);
     boolean existsByAppAndName(AppEntity app, String name);
     boolean existsByAppAndOrganizationAndName(AppEntity app, OrganizationEntity organization, String name);
+
+    @Query("SELECT t FROM TenantEntity t JOIN FETCH t.app WHERE t.id IN :ids")
+    List<TenantEntity> findAllWithAppByIdIn(@Param("ids") Collection<Long> ids);
 }
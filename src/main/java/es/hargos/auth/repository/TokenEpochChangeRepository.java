@@ -0,0 +1,32 @@
+package es.hargos.auth.repository;
+
+import es.hargos.auth.entity.TokenEpochChangeEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface TokenEpochChangeRepository extends JpaRepository<TokenEpochChangeEntity, Long> {
+
+    /**
+     * Registra un incremento de token_epoch en la transacción en curso (seq y changed_at los pone la base de datos)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO auth.token_epoch_changes (user_id, token_epoch, expires_at) " +
+           "VALUES (:userId, :tokenEpoch, :expiresAt)", nativeQuery = true)
+    int insert(@Param("userId") Long userId, @Param("tokenEpoch") int tokenEpoch, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Elimina los incrementos anteriores a cualquier access token aún vigente
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TokenEpochChangeEntity c WHERE c.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
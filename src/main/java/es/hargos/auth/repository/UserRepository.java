@@ -2,8 +2,11 @@ package es.hargos.auth.repository;
 
 import es.hargos.auth.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +15,17 @@ public interface UserRepository extends JpaRepository<UserEntity, Long> {
     boolean existsByEmail(String email);
     Optional<UserEntity> findByPasswordResetToken(String passwordResetToken);
     Optional<UserEntity> findByGoogleId(String googleId);
+
+    /**
+     * Pares [userId, tokenEpoch] de los usuarios a los que alguna vez se les invalidaron todos los tokens
+     */
+    @Query("SELECT u.id, u.tokenEpoch FROM UserEntity u WHERE u.tokenEpoch > 0")
+    List<Object[]> findRaisedTokenEpochs();
+
+    /**
+     * Bloquea la fila del usuario hasta el final de la transacción (SELECT ... FOR UPDATE).
+     * Serializa la apertura de sesiones de un mismo usuario, ver SessionService.createSession
+     */
+    @Query(value = "SELECT id FROM auth.users WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Long lockById(@Param("id") Long id);
 }
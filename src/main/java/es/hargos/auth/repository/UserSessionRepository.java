@@ -4,11 +4,13 @@ import es.hargos.auth.entity.RefreshTokenEntity;
 import es.hargos.auth.entity.UserEntity;
 import es.hargos.auth.entity.UserSessionEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,14 +28,29 @@ public interface UserSessionRepository extends JpaRepository<UserSessionEntity,
     Optional<UserSessionEntity> findByRefreshToken(RefreshTokenEntity refreshToken);
 
     /**
-     * Cuenta las sesiones activas de un usuario
-     * (no revocadas + con actividad reciente)
+     * Camino rápido del refresh (tokens v1): sesión, refresh token y usuario en una sola consulta
+     * por clave primaria. No devuelve nada si la sesión no pertenece a ese refresh token.
+     * createdAfter (ahora menos el TTL del refresh token) limita la búsqueda a las particiones que aún
+     * pueden tener sesiones con un refresh token vigente: el refresh token se crea antes que su sesión.
      */
-    @Query("SELECT COUNT(s) FROM UserSessionEntity s " +
-           "WHERE s.user = :user " +
-           "AND s.isRevoked = false " +
-           "AND s.lastActivityAt > :since")
-    long countActiveSessionsByUser(@Param("user") UserEntity user, @Param("since") LocalDateTime since);
+    @Query("SELECT s FROM UserSessionEntity s " +
+           "JOIN FETCH s.refreshToken rt " +
+           "JOIN FETCH rt.user " +
+           "WHERE s.id = :sessionId AND rt.id = :refreshTokenId AND s.createdAt > :createdAfter")
+    Optional<UserSessionEntity> findForRefresh(@Param("sessionId") Long sessionId,
+                                               @Param("refreshTokenId") Long refreshTokenId,
+                                               @Param("createdAfter") LocalDateTime createdAfter);
+
+    /**
+     * Sustituye el JTI del access token vigente de la sesión (refresh). Sin tocar last_activity_at,
+     * que va por SessionActivityBuffer. createdAt limita el UPDATE a la partición de la sesión.
+     */
+    @Modifying
+    @Query(value = "UPDATE auth.user_sessions SET access_token_jti = :jti " +
+           "WHERE id = :sessionId AND created_at = :createdAt", nativeQuery = true)
+    int updateAccessTokenJti(@Param("sessionId") Long sessionId,
+                             @Param("createdAt") LocalDateTime createdAt,
+                             @Param("jti") String jti);
 
     /**
      * Encuentra todas las sesiones activas de un usuario
@@ -46,44 +63,93 @@ public interface UserSessionRepository extends JpaRepository<UserSessionEntity,
     List<UserSessionEntity> findActiveSessionsByUser(@Param("user") UserEntity user, @Param("since") LocalDateTime since);
 
     /**
-     * Encuentra la sesión más antigua (por createdAt) de un usuario que no esté revocada
-     */
-    Optional<UserSessionEntity> findFirstByUserAndIsRevokedOrderByCreatedAtAsc(UserEntity user, Boolean isRevoked);
-
-    /**
-     * Encuentra una sesión por el JTI del access token
-     * Se usa para verificar si un access token ha sido revocado
+     * Igual que findActiveSessionsByUser, incluyendo también las sesiones indicadas
+     * (actividad reciente aún pendiente de escribir, ver SessionActivityBuffer)
      */
     @Query("SELECT s FROM UserSessionEntity s " +
-           "WHERE s.accessTokenJti = :jti " +
-           "AND s.isRevoked = false")
-    Optional<UserSessionEntity> findActiveSessionByJti(@Param("jti") String jti);
+           "WHERE s.user = :user " +
+           "AND s.isRevoked = false " +
+           "AND (s.lastActivityAt > :since OR s.id IN :recentIds)")
+    List<UserSessionEntity> findActiveSessionsByUserIncluding(@Param("user") UserEntity user,
+                                                              @Param("since") LocalDateTime since,
+                                                              @Param("recentIds") Collection<Long> recentIds);
 
     /**
-     * Encuentra todas las sesiones activas de todos los usuarios (para admin)
-     * Sesiones no revocadas con actividad reciente
+     * Aplica el límite de sesiones simultáneas del usuario en una sola sentencia.
+     *
+     * El límite es el mayor de los tenants del usuario (tenants.max_sessions_per_user, si no
+     * apps.max_sessions_per_user, si no defaultLimit). Cuentan las sesiones activas: no revocadas,
+     * con el refresh token vigente y con actividad desde activeSince o incluidas en activeIds (actividad
+     * aún pendiente de escribir, ver SessionActivityBuffer; nunca vacía: lleva al menos la sesión nueva).
+     * Se conservan las más recientes hasta el límite; el resto se revoca junto con su refresh token.
+     * Las sesiones inactivas no cuentan ni se revocan. createdAfter (ahora menos la vida de un refresh
+     * token) no cambia el resultado, pero limita la consulta a las particiones recientes de user_sessions.
+     *
+     * Devuelve las sesiones revocadas, ver {@link #revokeOpenSessionsExcept}.
      */
-    @Query("SELECT s FROM UserSessionEntity s " +
-           "JOIN FETCH s.user u " +
-           "WHERE s.isRevoked = false " +
-           "AND s.lastActivityAt > :since " +
-           "ORDER BY s.lastActivityAt DESC")
-    List<UserSessionEntity> findAllActiveSessions(@Param("since") LocalDateTime since);
+    @Query(value = "WITH session_limit AS ( " +
+           "    SELECT COALESCE(MAX(COALESCE(t.max_sessions_per_user, a.max_sessions_per_user, :defaultLimit)), " +
+           "                    :defaultLimit) AS max_sessions " +
+           "    FROM auth.user_tenant_roles utr " +
+           "    JOIN auth.tenants t ON t.id = utr.tenant_id " +
+           "    JOIN auth.apps a ON a.id = t.app_id " +
+           "    WHERE utr.user_id = :userId " +
+           "), open_sessions AS ( " +
+           "    SELECT s.id, row_number() OVER (ORDER BY s.created_at DESC, s.id DESC) AS position " +
+           "    FROM auth.user_sessions s " +
+           "    JOIN auth.refresh_tokens rt ON rt.id = s.refresh_token_id " +
+           "    WHERE s.user_id = :userId AND s.is_revoked = false AND s.created_at > :createdAfter " +
+           "    AND (s.last_activity_at > :activeSince OR s.id IN (:activeIds)) " +
+           "    AND rt.revoked IS NOT TRUE AND rt.expires_at > :now " +
+           "), revoked_sessions AS ( " +
+           "    UPDATE auth.user_sessions s SET is_revoked = true " +
+           "    FROM open_sessions o, session_limit l " +
+           "    WHERE s.id = o.id AND o.position > l.max_sessions " +
+           "    RETURNING s.id, s.access_token_jti, s.device_type, s.last_activity_at, s.refresh_token_id " +
+           "), revoked_tokens AS ( " +
+           "    UPDATE auth.refresh_tokens rt SET revoked = true, revoked_at = :now " +
+           "    FROM revoked_sessions r " +
+           "    WHERE rt.id = r.refresh_token_id " +
+           ") " +
+           "SELECT id, access_token_jti, device_type, last_activity_at, refresh_token_id FROM revoked_sessions",
+           nativeQuery = true)
+    List<Object[]> revokeSessionsOverLimit(@Param("userId") Long userId,
+                                           @Param("defaultLimit") int defaultLimit,
+                                           @Param("now") LocalDateTime now,
+                                           @Param("createdAfter") LocalDateTime createdAfter,
+                                           @Param("activeSince") LocalDateTime activeSince,
+                                           @Param("activeIds") Collection<Long> activeIds);
 
     /**
-     * Encuentra todas las sesiones no revocadas (para admin)
+     * Revoca de una vez las sesiones abiertas del usuario y sus refresh tokens, salvo la sesión
+     * del refresh token keepRefreshTokenId (0 = ninguna).
+     *
+     * Devuelve [sessionId, accessTokenJti, deviceType, lastActivityAt, refreshTokenId] de cada sesión revocada
+     * (deviceType es el código smallint, ver DeviceType).
      */
-    @Query("SELECT s FROM UserSessionEntity s " +
-           "JOIN FETCH s.user u " +
-           "WHERE s.isRevoked = false " +
-           "ORDER BY s.lastActivityAt DESC")
-    List<UserSessionEntity> findAllNonRevokedSessions();
+    @Query(value = "WITH revoked_sessions AS ( " +
+           "    UPDATE auth.user_sessions SET is_revoked = true " +
+           "    WHERE user_id = :userId AND is_revoked = false AND refresh_token_id <> :keepRefreshTokenId " +
+           "    RETURNING id, access_token_jti, device_type, last_activity_at, refresh_token_id " +
+           "), revoked_tokens AS ( " +
+           "    UPDATE auth.refresh_tokens rt SET revoked = true, revoked_at = :now " +
+           "    FROM revoked_sessions r " +
+           "    WHERE rt.id = r.refresh_token_id AND rt.revoked IS NOT TRUE " +
+           ") " +
+           "SELECT id, access_token_jti, device_type, last_activity_at, refresh_token_id FROM revoked_sessions",
+           nativeQuery = true)
+    List<Object[]> revokeOpenSessionsExcept(@Param("userId") Long userId,
+                                            @Param("keepRefreshTokenId") Long keepRefreshTokenId,
+                                            @Param("now") LocalDateTime now);
 
     /**
-     * Cuenta todas las sesiones activas del sistema
+     * JTIs de sesiones revocadas cuyo access token aún podría estar vigente
+     * Se usa para reconstruir el índice de revocación en memoria al arrancar, junto con
+     * RevokedAccessTokenRepository (que además tiene los JTIs sustituidos por un refresh)
      */
-    @Query("SELECT COUNT(s) FROM UserSessionEntity s " +
-           "WHERE s.isRevoked = false " +
+    @Query("SELECT s.accessTokenJti FROM UserSessionEntity s " +
+           "WHERE s.isRevoked = true " +
+           "AND s.accessTokenJti IS NOT NULL " +
            "AND s.lastActivityAt > :since")
-    long countAllActiveSessions(@Param("since") LocalDateTime since);
+    List<String> findRevokedJtisWithActivitySince(@Param("since") LocalDateTime since);
 }
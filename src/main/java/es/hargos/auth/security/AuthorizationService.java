@@ -1,5 +1,6 @@
 package es.hargos.auth.security;
 
+import es.hargos.auth.entity.Role;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
@@ -8,7 +9,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * Service for authorization checks.
@@ -16,6 +17,9 @@ import java.util.stream.Collectors;
  *
  * OPTIMIZADO: Lee roles directamente del JWT (ya están en SecurityContext)
  * Evita N+1 queries a la base de datos en cada request
+ *
+ * Las comprobaciones por tenant usan el índice tenantId → rol de {@link JwtAuthenticationToken}.
+ * Como el resto de claims, refleja los roles del usuario cuando se emitió el access token.
  */
 @Service("authz")
 @RequiredArgsConstructor
@@ -59,7 +63,33 @@ public class AuthorizationService {
 
         // Para TENANT_ADMIN, verificar si tiene acceso a ese tenant específico
         // Los tenantIds están en el JWT como parte de los roles
-        return isTenantAdmin() && hasTenantId(tenantId);
+        return hasTenantId(tenantId);
+    }
+
+    /**
+     * Check if current user can manage all the given tenants (SUPER_ADMIN, o TENANT_ADMIN de cada uno)
+     */
+    public boolean canManageTenants(Collection<Long> tenantIds) {
+        if (isSuperAdmin()) {
+            return true;
+        }
+        return tenantIds.stream().allMatch(this::hasTenantId);
+    }
+
+    /**
+     * Tenants en los que el usuario actual es TENANT_ADMIN (vacío si no hay autenticación JWT)
+     */
+    public Set<Long> getManagedTenantIds() {
+        JwtAuthenticationToken token = currentToken();
+        return token != null ? token.getTenantIdsWithRole(Role.TENANT_ADMIN) : Set.of();
+    }
+
+    /**
+     * Id del usuario autenticado (claim userId del JWT)
+     */
+    public Long getCurrentUserId() {
+        JwtAuthenticationToken token = currentToken();
+        return token != null ? token.getUserId() : null;
     }
 
     // ==================== MÉTODOS AUXILIARES ====================
@@ -79,17 +109,17 @@ public class AuthorizationService {
     }
 
     /**
-     * Verifica si el usuario tiene acceso a un tenant específico
-     * Esto requeriría parsear los claims del JWT (tenants array)
-     * Por ahora, devuelve true si es TENANT_ADMIN (validación completa requiere JWT)
-     *
-     * TODO: Implementar parsing de JWT claims para validación más estricta
+     * Verifica si el usuario es TENANT_ADMIN de un tenant específico
+     * Búsqueda O(1) en el índice tenantId → rol construido por JwtAuthenticationFilter
      */
     private boolean hasTenantId(Long tenantId) {
-        // Por ahora, permitir si es TENANT_ADMIN
-        // Una implementación más robusta requeriría acceso a los claims del JWT
-        // que contienen el array de tenants con sus IDs
-        return isTenantAdmin();
+        JwtAuthenticationToken token = currentToken();
+        return token != null && token.getRoleInTenant(tenantId) == Role.TENANT_ADMIN;
+    }
+
+    private JwtAuthenticationToken currentToken() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth instanceof JwtAuthenticationToken token && auth.isAuthenticated() ? token : null;
     }
 
     /**
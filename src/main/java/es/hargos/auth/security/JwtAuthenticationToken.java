@@ -0,0 +1,51 @@
+package es.hargos.auth.security;
+
+import es.hargos.auth.entity.Role;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Autenticación construida por JwtAuthenticationFilter a partir de un access token verificado.
+ *
+ * Además de las authorities (roles sin tenant) lleva un índice tenantId → rol sacado del claim
+ * de tenants, para que las comprobaciones por tenant de AuthorizationService sean búsquedas O(1)
+ * sin consultar la base de datos. Vive solo durante el request.
+ */
+public class JwtAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+    private final Long userId;
+    private final Map<Long, Role> tenantRoles;
+
+    public JwtAuthenticationToken(String email, Long userId, Map<Long, Role> tenantRoles,
+                                  Collection<? extends GrantedAuthority> authorities) {
+        super(email, null, authorities);
+        this.userId = userId;
+        this.tenantRoles = Map.copyOf(tenantRoles);
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Rol del usuario en el tenant, o null si no pertenece a él
+     */
+    public Role getRoleInTenant(Long tenantId) {
+        return tenantId != null ? tenantRoles.get(tenantId) : null;
+    }
+
+    /**
+     * Tenants en los que el usuario tiene exactamente este rol
+     */
+    public Set<Long> getTenantIdsWithRole(Role role) {
+        return tenantRoles.entrySet().stream()
+                .filter(entry -> entry.getValue() == role)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
@@ -0,0 +1,32 @@
+package es.hargos.auth.security;
+
+import es.hargos.auth.exception.ForbiddenException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Autenticación servicio a servicio con la cabecera X-Service-Key, para los endpoints que solo
+ * llaman otros servicios (feed de revocaciones, validación de tokens en lote).
+ */
+public final class ServiceKeys {
+
+    public static final String HEADER = "X-Service-Key";
+
+    private ServiceKeys() {
+    }
+
+    /**
+     * Comprueba la clave recibida contra la configurada, en tiempo constante.
+     * Sin clave configurada el endpoint está deshabilitado.
+     *
+     * @throws ForbiddenException si la clave falta o no coincide
+     */
+    public static void check(String configuredKey, String receivedKey) {
+        if (configuredKey == null || configuredKey.isBlank() || receivedKey == null
+                || !MessageDigest.isEqual(configuredKey.getBytes(StandardCharsets.UTF_8),
+                        receivedKey.getBytes(StandardCharsets.UTF_8))) {
+            throw new ForbiddenException("Service key inválida");
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.response.AdminSessionPageResponse;
+import es.hargos.auth.dto.response.AdminSessionResponse;
+import es.hargos.auth.entity.DeviceType;
+import es.hargos.auth.util.UserAgentClassifier;
+import es.hargos.auth.util.UserAgentInfo;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Listado de sesiones para el panel de administración (SUPER_ADMIN).
+ *
+ * Una única consulta de proyección devuelve sesión, usuario y primer tenant del usuario (el de
+ * menor id), sin cargar entidades ni relaciones perezosas por fila. Paginación por clave
+ * (created_at, id) descendente: cada página continúa donde acabó la anterior recorriendo el
+ * índice idx_user_sessions_open_created, sin OFFSET.
+ *
+ * Filtros opcionales: app, tenant (la sesión se incluye si el usuario tiene algún tenant que
+ * cumpla el filtro, y ese es el tenant que se muestra), tipo de dispositivo, subred (CIDR, usa el
+ * índice GiST idx_user_sessions_ip_address) y actividad desde.
+ */
+@Service
+public class AdminSessionQueryService {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final Pattern IPV4 = Pattern.compile("(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})");
+    private static final Pattern PREFIX = Pattern.compile("\\d{1,3}");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SessionActivityBuffer sessionActivityBuffer;
+    private final UserAgentClassifier userAgentClassifier;
+
+    public AdminSessionQueryService(JdbcTemplate jdbcTemplate,
+                                    SessionActivityBuffer sessionActivityBuffer,
+                                    UserAgentClassifier userAgentClassifier) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sessionActivityBuffer = sessionActivityBuffer;
+        this.userAgentClassifier = userAgentClassifier;
+    }
+
+    /**
+     * Filtros del listado; null = sin filtrar
+     */
+    public record Filter(Long appId, Long tenantId, String deviceType, String subnet, LocalDateTime activeSince) {
+
+        public static final Filter NONE = new Filter(null, null, null, null, null);
+
+        boolean byTenant() {
+            return appId != null || tenantId != null;
+        }
+    }
+
+    /**
+     * Posición en el listado: última sesión devuelta
+     */
+    record Cursor(LocalDateTime createdAt, long id) {}
+
+    /**
+     * Fila de la proyección: la respuesta más la validez del refresh token para calcular isActive
+     */
+    private record SessionRow(AdminSessionResponse response, boolean refreshTokenValid) {}
+
+    /**
+     * Página de sesiones no revocadas, de la más reciente a la más antigua
+     *
+     * @param cursor nextCursor de la página anterior (null = primera página)
+     * @param limit Tamaño de página, acotado a [1, MAX_PAGE_SIZE]
+     */
+    public AdminSessionPageResponse getSessionsPage(Filter filter, String cursor, int limit) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        List<AdminSessionResponse> sessions = query(filter, parseCursor(cursor), pageSize + 1);
+
+        String nextCursor = null;
+        if (sessions.size() > pageSize) {
+            sessions = new ArrayList<>(sessions.subList(0, pageSize));
+            AdminSessionResponse last = sessions.get(pageSize - 1);
+            nextCursor = toCursor(new Cursor(last.getCreatedAt(), last.getId()));
+        }
+        return new AdminSessionPageResponse(sessions, nextCursor);
+    }
+
+    /**
+     * Todas las sesiones no revocadas con actividad en los últimos 30 minutos (sin paginar)
+     */
+    public List<AdminSessionResponse> getAllActiveSessions() {
+        LocalDateTime since = LocalDateTime.now().minusMinutes(SessionStatsService.ACTIVE_WINDOW_MINUTES);
+        return query(new Filter(null, null, null, null, since), null, null).stream()
+                .filter(AdminSessionResponse::getIsActive)
+                .toList();
+    }
+
+    /**
+     * Todas las sesiones no revocadas (sin paginar)
+     */
+    public List<AdminSessionResponse> getAllSessions() {
+        return query(Filter.NONE, null, null);
+    }
+
+    private List<AdminSessionResponse> query(Filter filter, Cursor after, Integer limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object> args = new ArrayList<>();
+        args.add(now);
+
+        StringBuilder sql = new StringBuilder()
+                .append("SELECT s.id, host(s.ip_address) AS ip_address, ua.user_agent, s.device_type, s.last_activity_at, s.created_at, ")
+                .append("u.id AS user_id, u.email, u.full_name, ft.tenant_id, ft.tenant_name, ")
+                .append("(rt.revoked = false AND rt.expires_at > ?) AS refresh_token_valid ")
+                .append("FROM auth.user_sessions s ")
+                .append("JOIN auth.users u ON u.id = s.user_id ")
+                .append("JOIN auth.refresh_tokens rt ON rt.id = s.refresh_token_id ")
+                .append("LEFT JOIN auth.user_agents ua ON ua.id = s.user_agent_id ")
+                // Con filtro de app/tenant el LATERAL es obligatorio: excluye a quien no tiene un tenant que cumpla
+                .append(filter.byTenant() ? "JOIN LATERAL (" : "LEFT JOIN LATERAL (")
+                .append("SELECT t.id AS tenant_id, t.name AS tenant_name ")
+                .append("FROM auth.user_tenant_roles utr JOIN auth.tenants t ON t.id = utr.tenant_id ")
+                .append("WHERE utr.user_id = s.user_id");
+        if (filter.tenantId() != null) {
+            sql.append(" AND t.id = ?");
+            args.add(filter.tenantId());
+        }
+        if (filter.appId() != null) {
+            sql.append(" AND t.app_id = ?");
+            args.add(filter.appId());
+        }
+        sql.append(" ORDER BY t.id LIMIT 1) ft ON true ")
+                .append("WHERE s.is_revoked = false");
+
+        if (filter.deviceType() != null) {
+            DeviceType deviceType = DeviceType.fromValue(filter.deviceType());
+            if (deviceType == null) {
+                throw new IllegalStateException("Tipo de dispositivo inválido: " + filter.deviceType());
+            }
+            sql.append(" AND s.device_type = ?");
+            args.add(deviceType.getCode());
+        }
+        if (filter.subnet() != null) {
+            sql.append(" AND s.ip_address <<= CAST(? AS inet)");
+            args.add(validateSubnet(filter.subnet()));
+        }
+        if (filter.activeSince() != null) {
+            sql.append(" AND s.last_activity_at > ?");
+            args.add(filter.activeSince());
+        }
+        if (after != null) {
+            sql.append(" AND (s.created_at, s.id) < (?, ?)");
+            args.add(after.createdAt());
+            args.add(after.id());
+        }
+        sql.append(" ORDER BY s.created_at DESC, s.id DESC");
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+            args.add(limit);
+        }
+
+        LocalDateTime activeAfter = now.minusMinutes(SessionStatsService.ACTIVE_WINDOW_MINUTES);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> mapRow(rs), args.toArray()).stream()
+                .map(row -> withBufferedActivity(row, activeAfter))
+                .toList();
+    }
+
+    /**
+     * Aplica la última actividad aún no volcada a la base de datos (SessionActivityBuffer) y calcula isActive
+     */
+    private AdminSessionResponse withBufferedActivity(SessionRow row, LocalDateTime activeAfter) {
+        AdminSessionResponse response = row.response();
+        LocalDateTime lastActivityAt = sessionActivityBuffer.lastActivityAt(response.getId(), response.getLastActivityAt());
+        response.setLastActivityAt(lastActivityAt);
+        response.setIsActive(row.refreshTokenValid() && lastActivityAt != null && lastActivityAt.isAfter(activeAfter));
+        return response;
+    }
+
+    private SessionRow mapRow(ResultSet rs) throws SQLException {
+        AdminSessionResponse response = new AdminSessionResponse();
+        response.setId(rs.getLong("id"));
+        response.setIpAddress(rs.getString("ip_address"));
+        response.setUserAgent(rs.getString("user_agent"));
+        response.setDeviceType(DeviceType.fromCode(rs.getShort("device_type")).getValue());
+        UserAgentInfo userAgent = userAgentClassifier.classify(response.getUserAgent());
+        response.setDeviceClass(userAgent.deviceClass());
+        response.setOsFamily(userAgent.osFamily());
+        response.setBrowserFamily(userAgent.browserFamily());
+        response.setIsBot(userAgent.bot());
+        response.setLastActivityAt(rs.getObject("last_activity_at", LocalDateTime.class));
+        response.setCreatedAt(rs.getObject("created_at", LocalDateTime.class));
+        response.setUserId(rs.getLong("user_id"));
+        response.setUserEmail(rs.getString("email"));
+        response.setUserFullName(rs.getString("full_name"));
+        response.setTenantId(rs.getObject("tenant_id", Long.class));
+        response.setTenantName(rs.getString("tenant_name"));
+        return new SessionRow(response, rs.getBoolean("refresh_token_valid"));
+    }
+
+    /**
+     * Subred en notación CIDR (10.0.0.0/8, 2001:db8::/32) o una IP suelta. Se comprueba aquí para
+     * responder 400 en lugar de un error de la base de datos.
+     */
+    static String validateSubnet(String subnet) {
+        String[] parts = subnet.trim().split("/", -1);
+        String address = parts[0];
+        boolean ipv6 = address.contains(":");
+        Matcher ipv4 = IPV4.matcher(address);
+
+        boolean valid = parts.length <= 2 && (ipv6 || ipv4.matches());
+        if (valid && !ipv6) {
+            for (int group = 1; group <= 4; group++) {
+                valid &= Integer.parseInt(ipv4.group(group)) <= 255;
+            }
+        }
+        if (valid && ipv6) {
+            try {
+                // Con ':' es siempre un literal IPv6: no hay resolución DNS
+                InetAddress.getByName(address);
+            } catch (UnknownHostException e) {
+                valid = false;
+            }
+        }
+        if (valid && parts.length == 2) {
+            valid = PREFIX.matcher(parts[1]).matches() && Integer.parseInt(parts[1]) <= (ipv6 ? 128 : 32);
+        }
+        if (!valid) {
+            throw new IllegalStateException("Subred inválida: " + subnet);
+        }
+        return subnet.trim();
+    }
+
+    static String toCursor(Cursor cursor) {
+        String raw = cursor.createdAt() + "|" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cursor opaco (base64url de "created_at|id"); null si no hay. Uno mal formado es un error del cliente.
+     */
+    static Cursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalStateException("Cursor de sesiones inválido");
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalStateException("Cursor de sesiones inválido");
+        }
+    }
+}
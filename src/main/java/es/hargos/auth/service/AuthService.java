@@ -1,6 +1,5 @@
 package es.hargos.auth.service;
 
-import com.nimbusds.jwt.JWTClaimsSet;
 import es.hargos.auth.dto.request.AcceptInvitationRequest;
 import es.hargos.auth.dto.request.ForgotPasswordRequest;
 import es.hargos.auth.dto.request.LoginRequest;
@@ -9,6 +8,7 @@ import es.hargos.auth.dto.request.RegisterRequest;
 import es.hargos.auth.dto.request.RegisterWithAccessCodeRequest;
 import es.hargos.auth.dto.request.ResetPasswordRequest;
 import es.hargos.auth.dto.response.LoginResponse;
+import es.hargos.auth.dto.response.TenantNameResponse;
 import es.hargos.auth.dto.response.TenantRoleResponse;
 import es.hargos.auth.dto.response.TokenValidationResponse;
 import es.hargos.auth.dto.response.UserResponse;
@@ -21,7 +21,11 @@ import es.hargos.auth.exception.ResourceNotFoundException;
 import es.hargos.auth.repository.UserRepository;
 import es.hargos.auth.repository.UserSessionRepository;
 import es.hargos.auth.repository.UserTenantRoleRepository;
+import es.hargos.auth.util.IdGenerator;
 import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.TenantClaimFragment;
+import es.hargos.auth.util.TenantGrant;
+import es.hargos.auth.util.VerifiedToken;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,8 +34,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -50,10 +58,18 @@ public class AuthService {
     private final EmailService emailService;
     private final es.hargos.auth.util.PasswordValidator passwordValidator;
     private final TenantLimitService tenantLimitService;
+    private final TokenRevocationService tokenRevocationService;
+    private final TenantDirectoryService tenantDirectoryService;
+    private final TenantClaimCacheService tenantClaimCacheService;
+    private final SessionService sessionService;
+    private final SessionActivityBuffer sessionActivityBuffer;
 
     @Value("${jwt.access-token-expiration-ms}")
     private Long accessTokenExpiration;
 
+    @Value("${app.validate-batch.max-tokens:100}")
+    private int maxBatchValidationTokens;
+
     @Transactional
     public UserResponse register(RegisterRequest request, HttpServletRequest httpRequest) {
         // 1. Rate Limiting: Verificar límite de registros por IP
@@ -120,53 +136,21 @@ public class AuthService {
             throw new InvalidCredentialsException("Cuenta Suspendida"); // inactive
         }
 
-        // Verificar límite de sesiones activas (2 sesiones máximo)
-        LocalDateTime thirtyMinutesAgo = LocalDateTime.now().minusMinutes(30);
-        long activeSessionCount = userSessionRepository.countActiveSessionsByUser(user, thirtyMinutesAgo);
-
-        // Si ya tiene 2 o más sesiones activas, revocar la más antigua
-        if (activeSessionCount >= 2) {
-            UserSessionEntity oldestSession = userSessionRepository
-                    .findFirstByUserAndIsRevokedOrderByCreatedAtAsc(user, false)
-                    .orElse(null);
-
-            if (oldestSession != null) {
-                oldestSession.setIsRevoked(true);
-                userSessionRepository.save(oldestSession);
-
-                // También revocar el refresh token asociado
-                if (oldestSession.getRefreshToken() != null) {
-                    refreshTokenService.revokeToken(oldestSession.getRefreshToken());
-                }
-            }
-        }
-
-        List<UserTenantRoleEntity> userTenantRoles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
+        TenantClaimFragment tenantClaim = tenantClaimCacheService.getFragment(user);
 
         // Generar access token con JTI único
-        String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, userTenantRoles);
+        String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, tenantClaim);
         String accessToken = tokenAndJti[0];
         String jti = tokenAndJti[1];
 
-        RefreshTokenEntity refreshToken = refreshTokenService.createRefreshToken(user);
+        // Crear nueva sesión con JTI (revoca las más antiguas si se supera el límite de sesiones)
+        String refreshToken = sessionService.createSession(user, jti, clientIp, httpRequest.getHeader("User-Agent"));
 
-        // Crear nueva sesión con JTI
-        UserSessionEntity session = new UserSessionEntity();
-        session.setUser(user);
-        session.setRefreshToken(refreshToken);
-        session.setAccessTokenJti(jti); // Guardar JTI del access token
-        session.setIpAddress(getClientIp(httpRequest));
-        session.setUserAgent(httpRequest.getHeader("User-Agent"));
-        session.setDeviceType(UserSessionEntity.detectDeviceType(httpRequest.getHeader("User-Agent")));
-        session.setLastActivityAt(LocalDateTime.now());
-        session.setIsRevoked(false);
-        userSessionRepository.save(session);
-
-        UserResponse userResponse = mapToUserResponse(user, userTenantRoles);
+        UserResponse userResponse = mapToUserResponse(user, tenantClaim);
 
         return new LoginResponse(
                 accessToken,
-                refreshToken.getToken(),
+                refreshToken,
                 accessTokenExpiration / 1000, // Convert to seconds
                 userResponse
         );
@@ -174,41 +158,42 @@ public class AuthService {
 
     @Transactional
     public LoginResponse refreshAccessToken(RefreshTokenRequest request) {
-        RefreshTokenEntity refreshToken = refreshTokenService.findByToken(request.getRefreshToken());
+        // Tokens v1: una sola consulta (sesión + refresh token + usuario) y comparación del hash del secreto
+        RefreshTokenService.ResolvedRefreshToken resolved = refreshTokenService.resolve(request.getRefreshToken());
+        RefreshTokenEntity refreshToken = resolved.entity();
 
-        if (!refreshToken.isValid()) {
+        // Un refresh token emitido antes del último cambio de token_epoch ya no sirve
+        if (!refreshToken.isValid() || refreshToken.getTokenEpoch() < refreshToken.getUser().getTokenEpoch()) {
             throw new InvalidCredentialsException("Refresh Token no valido o expirado");
         }
 
-        // Actualizar actividad de la sesión
-        userSessionRepository.findByRefreshToken(refreshToken).ifPresent(session -> {
-            if (!session.getIsRevoked()) {
-                session.updateActivity();
-                userSessionRepository.save(session);
-            }
-        });
+        // Sin sesión abierta no se emite access token: nada lo revocaría después (el índice solo guarda revocados)
+        UserSessionEntity session = resolved.session();
+        if (session == null || session.getIsRevoked()) {
+            throw new InvalidCredentialsException("Sesión revocada o inexistente");
+        }
 
         UserEntity user = refreshToken.getUser();
-        List<UserTenantRoleEntity> userTenantRoles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
+        // Sin join: el claim de tenants sale de la cache mientras los roles del usuario no cambien
+        TenantClaimFragment tenantClaim = tenantClaimCacheService.getFragment(user);
 
         // Generar nuevo access token con nuevo JTI
-        String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, userTenantRoles);
+        String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, tenantClaim);
         String accessToken = tokenAndJti[0];
         String jti = tokenAndJti[1];
 
-        // Actualizar JTI en la sesión
-        userSessionRepository.findByRefreshToken(refreshToken).ifPresent(session -> {
-            if (!session.getIsRevoked()) {
-                session.setAccessTokenJti(jti);
-                userSessionRepository.save(session);
-            }
-        });
+        // Actualizar JTI y actividad de la sesión (el access token anterior deja de ser válido).
+        // El JTI se escribe en esta transacción (las revocaciones lo leen de la tabla); la actividad,
+        // en diferido y agrupada (SessionActivityBuffer). La entidad no se toca
+        tokenRevocationService.revoke(session.getAccessTokenJti());
+        userSessionRepository.updateAccessTokenJti(session.getId(), session.getCreatedAt(), jti);
+        sessionActivityBuffer.record(session.getId(), session.getCreatedAt(), user.getId());
 
-        UserResponse userResponse = mapToUserResponse(user, userTenantRoles);
+        UserResponse userResponse = mapToUserResponse(user, tenantClaim);
 
         return new LoginResponse(
                 accessToken,
-                refreshToken.getToken(),
+                request.getRefreshToken(),
                 accessTokenExpiration / 1000,
                 userResponse
         );
@@ -216,41 +201,90 @@ public class AuthService {
 
     @Transactional
     public void logout(String refreshToken) {
-        RefreshTokenEntity token = refreshTokenService.findByToken(refreshToken);
+        RefreshTokenService.ResolvedRefreshToken resolved = refreshTokenService.resolve(refreshToken);
+        RefreshTokenEntity token = resolved.entity();
 
         // Revocar la sesión asociada
-        userSessionRepository.findByRefreshToken(token).ifPresent(session -> {
-            session.setIsRevoked(true);
-            userSessionRepository.save(session);
-        });
+        UserSessionEntity session = resolved.session();
+        if (session != null) {
+            sessionService.markRevoked(session);
+        }
 
         refreshTokenService.revokeToken(token);
     }
 
     public TokenValidationResponse validateToken(String token) {
-        if (!jwtUtil.validateToken(token)) {
+        return jwtUtil.verify(token)
+                .map(this::validateToken)
+                .orElseGet(() -> new TokenValidationResponse(false, null, null, null, null));
+    }
+
+    /**
+     * Construye la respuesta de validación a partir de un token ya parseado y verificado
+     * (por ejemplo el que deja JwtAuthenticationFilter en el request).
+     * Un token revocado se reporta como inválido; la comprobación es en memoria.
+     */
+    public TokenValidationResponse validateToken(VerifiedToken token) {
+        if (tokenRevocationService.isRevoked(token)) {
             return new TokenValidationResponse(false, null, null, null, null);
         }
+        return toValidationResponse(token, resolveTenantNames(List.of(token)));
+    }
+
+    /**
+     * Valida varios tokens en una sola llamada (gateways). Los resultados van en el mismo orden que los tokens.
+     * Cada token distinto se verifica una sola vez y los nombres de tenant de todos ellos se resuelven en un único lote.
+     */
+    public List<TokenValidationResponse> validateTokens(List<String> tokens) {
+        if (tokens.size() > maxBatchValidationTokens) {
+            throw new IllegalStateException("Máximo " + maxBatchValidationTokens + " tokens por petición");
+        }
 
-        JWTClaimsSet claims = jwtUtil.getClaimsFromToken(token);
-        Long userId = (Long) claims.getClaim("userId");
-        String email = (String) claims.getClaim("email");
-        String fullName = (String) claims.getClaim("fullName");
+        Map<String, VerifiedToken> validTokens = new HashMap<>();
+        for (String token : new HashSet<>(tokens)) {
+            jwtUtil.verify(token)
+                    .filter(verified -> !tokenRevocationService.isRevoked(verified))
+                    .ifPresent(verified -> validTokens.put(token, verified));
+        }
 
-        @SuppressWarnings("unchecked")
-        List<java.util.Map<String, Object>> tenantsData =
-                (List<java.util.Map<String, Object>>) claims.getClaim("tenants");
+        Map<Long, TenantNameResponse> names = resolveTenantNames(validTokens.values());
 
-        List<TenantRoleResponse> tenants = tenantsData.stream()
-                .map(t -> new TenantRoleResponse(
-                        ((Number) t.get("tenantId")).longValue(),
-                        (String) t.get("tenantName"),
-                        (String) t.get("appName"),
-                        (String) t.get("role")
-                ))
+        return tokens.stream()
+                .map(token -> {
+                    VerifiedToken verified = validTokens.get(token);
+                    return verified != null
+                            ? toValidationResponse(verified, names)
+                            : new TokenValidationResponse(false, null, null, null, null);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Los tokens con el claim compacto no llevan nombres: se resuelven en lote desde la cache
+     */
+    private Map<Long, TenantNameResponse> resolveTenantNames(Collection<VerifiedToken> tokens) {
+        Set<Long> tenantIds = tokens.stream()
+                .flatMap(token -> token.getTenants().stream())
+                .filter(grant -> !grant.hasNames())
+                .map(TenantGrant::tenantId)
+                .collect(Collectors.toSet());
+        return tenantIds.isEmpty() ? Map.of() : tenantDirectoryService.getNames(tenantIds);
+    }
+
+    private TokenValidationResponse toValidationResponse(VerifiedToken token, Map<Long, TenantNameResponse> names) {
+        List<TenantRoleResponse> tenants = token.getTenants().stream()
+                .map(grant -> {
+                    TenantNameResponse name = grant.hasNames() ? null : names.get(grant.tenantId());
+                    return new TenantRoleResponse(
+                            grant.tenantId(),
+                            name != null ? name.getTenantName() : grant.tenantName(),
+                            name != null ? name.getAppName() : grant.appName(),
+                            grant.role().name()
+                    );
+                })
                 .collect(Collectors.toList());
 
-        return new TokenValidationResponse(true, userId, email, fullName, tenants);
+        return new TokenValidationResponse(true, token.getUserId(), token.getEmail(), token.getFullName(), tenants);
     }
 
     private UserResponse mapToUserResponse(UserEntity user, List<UserTenantRoleEntity> userTenantRoles) {
@@ -263,6 +297,23 @@ public class AuthService {
                 ))
                 .collect(Collectors.toList());
 
+        return buildUserResponse(user, tenants);
+    }
+
+    private UserResponse mapToUserResponse(UserEntity user, TenantClaimFragment tenantClaim) {
+        List<TenantRoleResponse> tenants = tenantClaim.getGrants().stream()
+                .map(grant -> new TenantRoleResponse(
+                        grant.tenantId(),
+                        grant.tenantName(),
+                        grant.appName(),
+                        grant.role().name()
+                ))
+                .collect(Collectors.toList());
+
+        return buildUserResponse(user, tenants);
+    }
+
+    private UserResponse buildUserResponse(UserEntity user, List<TenantRoleResponse> tenants) {
         return new UserResponse(
                 user.getId(),
                 user.getEmail(),
@@ -345,6 +396,7 @@ public class AuthService {
         userTenantRole.setTenant(invitation.getTenant());
         userTenantRole.setRole(invitation.getRole());
         userTenantRoleRepository.save(userTenantRole);
+        tenantClaimCacheService.evict(user.getId());
 
         // 7. Marcar invitación como aceptada
         invitationService.markAsAccepted(invitation);
@@ -386,6 +438,7 @@ public class AuthService {
         userTenantRole.setTenant(accessCode.getTenant());
         userTenantRole.setRole(accessCode.getRole());
         userTenantRoleRepository.save(userTenantRole);
+        tenantClaimCacheService.evict(user.getId());
 
         // 6. Incrementar usos del código
         accessCodeService.incrementUses(accessCode);
@@ -454,24 +507,13 @@ public class AuthService {
         String accessToken = tokenAndJti[0];
         String jti = tokenAndJti[1];
 
-        RefreshTokenEntity refreshToken = refreshTokenService.createRefreshToken(user);
-
         // Crear nueva sesión con JTI
-        UserSessionEntity session = new UserSessionEntity();
-        session.setUser(user);
-        session.setRefreshToken(refreshToken);
-        session.setAccessTokenJti(jti);
-        session.setIpAddress(clientIp);
-        session.setUserAgent(httpRequest.getHeader("User-Agent"));
-        session.setDeviceType(UserSessionEntity.detectDeviceType(httpRequest.getHeader("User-Agent")));
-        session.setLastActivityAt(LocalDateTime.now());
-        session.setIsRevoked(false);
-        userSessionRepository.save(session);
+        String refreshToken = sessionService.createSession(user, jti, clientIp, httpRequest.getHeader("User-Agent"));
 
         // 10. Devolver LoginResponse con tokens
         return new LoginResponse(
                 accessToken,
-                refreshToken.getToken(),
+                refreshToken,
                 accessTokenExpiration / 1000, // Convert to seconds
                 mapToUserResponse(user, userTenantRoles)
         );
@@ -560,8 +602,8 @@ public class AuthService {
         UserEntity user = userRepository.findByEmail(request.getEmail())
                 .orElseThrow(() -> new InvalidCredentialsException("No se encontró un usuario con ese email"));
 
-        // 4. Generar token único
-        String token = UUID.randomUUID().toString();
+        // 4. Generar token único (ordenado por tiempo, 128 bits aleatorios)
+        String token = IdGenerator.newToken();
 
         // 5. Establecer expiración en 1 hora
         LocalDateTime expiresAt = LocalDateTime.now().plusHours(1);
@@ -603,6 +645,9 @@ public class AuthService {
         user.setPasswordResetToken(null);
         user.setPasswordResetExpiresAt(null);
 
+        // 6. Invalidar todos los tokens emitidos con la contraseña anterior
+        tokenRevocationService.bumpTokenEpoch(user);
+
         userRepository.save(user);
     }
 
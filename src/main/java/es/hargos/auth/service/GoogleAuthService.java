@@ -5,15 +5,11 @@ import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
 import es.hargos.auth.dto.response.LoginResponse;
-import es.hargos.auth.entity.RefreshTokenEntity;
 import es.hargos.auth.entity.UserEntity;
-import es.hargos.auth.entity.UserSessionEntity;
-import es.hargos.auth.entity.UserTenantRoleEntity;
 import es.hargos.auth.exception.InvalidCredentialsException;
 import es.hargos.auth.repository.UserRepository;
-import es.hargos.auth.repository.UserSessionRepository;
-import es.hargos.auth.repository.UserTenantRoleRepository;
 import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.TenantClaimFragment;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,9 +20,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.time.LocalDateTime;
 import java.util.Collections;
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -40,11 +34,10 @@ import java.util.UUID;
 public class GoogleAuthService {
 
     private final UserRepository userRepository;
-    private final UserTenantRoleRepository userTenantRoleRepository;
-    private final UserSessionRepository userSessionRepository;
     private final JwtUtil jwtUtil;
-    private final RefreshTokenService refreshTokenService;
+    private final SessionService sessionService;
     private final PasswordEncoder passwordEncoder;
+    private final TenantClaimCacheService tenantClaimCacheService;
 
     @Value("${google.oauth2.client-id}")
     private String googleClientId;
@@ -152,34 +145,22 @@ public class GoogleAuthService {
                 throw new InvalidCredentialsException("Tu cuenta está desactivada");
             }
 
-            // Get user tenant roles for JWT
-            List<UserTenantRoleEntity> userTenantRoles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
+            // Get user tenant roles for JWT (cached per user, same as AuthService.login())
+            TenantClaimFragment tenantClaim = tenantClaimCacheService.getFragment(user);
 
             // Generate access token with JTI (same pattern as AuthService)
-            String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, userTenantRoles);
+            String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, tenantClaim);
             String accessToken = tokenAndJti[0];
             String jti = tokenAndJti[1];
 
-            // Generate refresh token
-            RefreshTokenEntity refreshToken = refreshTokenService.createRefreshToken(user);
-
-            // Create session (same pattern as AuthService.login())
-            UserSessionEntity session = new UserSessionEntity();
-            session.setUser(user);
-            session.setRefreshToken(refreshToken);
-            session.setAccessTokenJti(jti);
-            session.setIpAddress(ipAddress);
-            session.setUserAgent(userAgent);
-            session.setDeviceType(UserSessionEntity.detectDeviceType(userAgent));
-            session.setLastActivityAt(LocalDateTime.now());
-            session.setIsRevoked(false);
-            userSessionRepository.save(session);
+            // Create session with its refresh token (same pattern as AuthService.login())
+            String refreshToken = sessionService.createSession(user, jti, ipAddress, userAgent);
 
             log.info("Google authentication successful for user: {}", user.getEmail());
 
             return LoginResponse.builder()
                     .accessToken(accessToken)
-                    .refreshToken(refreshToken.getToken())
+                    .refreshToken(refreshToken)
                     .tokenType("Bearer")
                     .expiresIn(accessTokenExpiration / 1000) // Convert to seconds
                     .user(LoginResponse.UserInfo.builder()
@@ -10,13 +10,13 @@ import es.hargos.auth.exception.ResourceNotFoundException;
 import es.hargos.auth.repository.InvitationRepository;
 import es.hargos.auth.repository.TenantRepository;
 import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.util.IdGenerator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
@@ -49,7 +49,7 @@ public class InvitationService {
         InvitationEntity invitation = new InvitationEntity();
         invitation.setTenant(tenant);
         invitation.setEmail(request.getEmail());
-        invitation.setToken(UUID.randomUUID().toString());
+        invitation.setToken(IdGenerator.newToken());
         invitation.setRole(request.getRole());
         invitation.setInvitedByUserId(invitedByUserId);
         invitation.setExpiresAt(LocalDateTime.now().plusDays(7)); // 7 días
@@ -19,6 +19,7 @@ import java.util.stream.Collectors;
 public class OrganizationService {
 
     private final OrganizationRepository organizationRepository;
+    private final TenantClaimCacheService tenantClaimCacheService;
 
     @Transactional
     public OrganizationResponse createOrganization(CreateOrganizationRequest request) {
@@ -53,6 +54,8 @@ public class OrganizationService {
         OrganizationEntity organization = organizationRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Organizacion no encontrada"));
         organizationRepository.delete(organization);
+        // Sus tenants (y los roles en ellos) se borran en cascada
+        tenantClaimCacheService.evictAll();
     }
 
     /**
@@ -24,6 +24,7 @@ public class PurchaseService {
     private final TenantRidersConfigRepository tenantRidersConfigRepository;
     private final TenantWarehouseConfigRepository tenantWarehouseConfigRepository;
     private final TenantFleetConfigRepository tenantFleetConfigRepository;
+    private final TenantClaimCacheService tenantClaimCacheService;
 
     @Transactional
     public TenantResponse purchaseProduct(String userEmail, PurchaseProductRequest request) {
@@ -73,6 +74,7 @@ public class PurchaseService {
         userTenantRole.setTenant(tenant);
         userTenantRole.setRole("TENANT_ADMIN");
         userTenantRoleRepository.save(userTenantRole);
+        tenantClaimCacheService.evict(user.getId());
 
         // 8. Mapear y devolver respuesta
         return mapToResponse(tenant);
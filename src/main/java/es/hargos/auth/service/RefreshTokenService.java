@@ -2,37 +2,161 @@ package es.hargos.auth.service;
 
 import es.hargos.auth.entity.RefreshTokenEntity;
 import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserSessionEntity;
 import es.hargos.auth.repository.RefreshTokenRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.util.IdGenerator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Refresh tokens.
+ *
+ * Formato v1 (opaco para el cliente): "v1.{refreshTokenId}.{sessionId}.{secreto}"
+ * - Se resuelve por clave primaria: una sola consulta trae sesión, refresh token y usuario
+ * - En base de datos solo se guarda el hash SHA-256 del secreto ("sha256:..."), nunca el secreto
+ * - El secreto se compara en tiempo constante
+ *
+ * Los refresh tokens legacy (UUID guardado en claro) se siguen aceptando hasta que caduquen.
+ */
 @Service
 @RequiredArgsConstructor
 public class RefreshTokenService {
 
+    private static final String TOKEN_VERSION = "v1";
+    private static final String HASH_PREFIX = "sha256:";
+    private static final int SECRET_BYTES = 32;
+    private static final int LEGACY_TOKEN_LENGTH = 36;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
     private final RefreshTokenRepository refreshTokenRepository;
+    private final UserSessionRepository userSessionRepository;
 
     @Value("${jwt.refresh-token-expiration-ms}")
     private Long refreshTokenExpiration;
 
+    /**
+     * Refresh token recién creado junto con su secreto, que solo existe en memoria
+     * hasta entregárselo al cliente (ver {@link #encode(IssuedRefreshToken, Long)})
+     */
+    public record IssuedRefreshToken(RefreshTokenEntity entity, String secret) {
+    }
+
+    /**
+     * Refresh token presentado por el cliente y ya verificado, con su usuario cargado.
+     * session es null si el token (legacy) no tiene sesión asociada.
+     */
+    public record ResolvedRefreshToken(RefreshTokenEntity entity, UserSessionEntity session) {
+    }
+
     @Transactional
-    public RefreshTokenEntity createRefreshToken(UserEntity user) {
+    public IssuedRefreshToken createRefreshToken(UserEntity user) {
+        String secret = IdGenerator.newSecret(SECRET_BYTES);
+
         RefreshTokenEntity refreshToken = new RefreshTokenEntity();
         refreshToken.setUser(user);
-        refreshToken.setToken(UUID.randomUUID().toString());
+        refreshToken.setToken(hash(secret));
         refreshToken.setExpiresAt(LocalDateTime.now().plusSeconds(refreshTokenExpiration / 1000));
+        refreshToken.setTokenEpoch(user.getTokenEpoch());
+
+        return new IssuedRefreshToken(refreshTokenRepository.save(refreshToken), secret);
+    }
+
+    /**
+     * Token que se entrega al cliente. Necesita el id de la sesión, así que se compone después de guardarla.
+     */
+    public String encode(IssuedRefreshToken issued, Long sessionId) {
+        return TOKEN_VERSION + '.' + issued.entity().getId() + '.' + sessionId + '.' + issued.secret();
+    }
 
-        return refreshTokenRepository.save(refreshToken);
+    /**
+     * Resuelve y verifica el token presentado por el cliente.
+     * v1: una consulta por clave primaria. Legacy: búsqueda por la columna token y después la sesión.
+     */
+    @Transactional(readOnly = true)
+    public ResolvedRefreshToken resolve(String token) {
+        return tryResolve(token).orElseThrow(() -> new RuntimeException("Refresh token not found"));
     }
 
-    public RefreshTokenEntity findByToken(String token) {
+    /**
+     * Igual que {@link #resolve(String)}, sin lanzar excepción si el token no existe o no es válido
+     */
+    @Transactional(readOnly = true)
+    public Optional<ResolvedRefreshToken> tryResolve(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        ParsedToken parsed = ParsedToken.parse(token);
+        if (parsed != null) {
+            LocalDateTime createdAfter = LocalDateTime.now().minusSeconds(refreshTokenExpiration / 1000);
+            return userSessionRepository.findForRefresh(parsed.sessionId(), parsed.refreshTokenId(), createdAfter)
+                    .filter(session -> verifySecret(session.getRefreshToken(), parsed.secret()))
+                    .map(session -> new ResolvedRefreshToken(session.getRefreshToken(), session));
+        }
+        // Solo UUIDs: un hash "sha256:..." robado de la tabla no sirve como token legacy
+        if (!isLegacyToken(token)) {
+            return Optional.empty();
+        }
         return refreshTokenRepository.findByToken(token)
-                .orElseThrow(() -> new RuntimeException("Refresh token not found"));
+                .map(refreshToken -> new ResolvedRefreshToken(refreshToken,
+                        userSessionRepository.findByRefreshToken(refreshToken).orElse(null)));
+    }
+
+    private static boolean verifySecret(RefreshTokenEntity refreshToken, String secret) {
+        String stored = refreshToken.getToken();
+        return stored != null && stored.startsWith(HASH_PREFIX) && MessageDigest.isEqual(
+                stored.getBytes(StandardCharsets.US_ASCII),
+                hash(secret).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isLegacyToken(String token) {
+        if (token.length() != LEGACY_TOKEN_LENGTH) {
+            return false;
+        }
+        try {
+            UUID.fromString(token);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String hash(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.US_ASCII));
+            return HASH_PREFIX + ENCODER.encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Partes de un token v1, o null si el token no tiene ese formato
+     */
+    private record ParsedToken(Long refreshTokenId, Long sessionId, String secret) {
+
+        static ParsedToken parse(String token) {
+            String[] parts = token.split("\\.", -1);
+            if (parts.length != 4 || !TOKEN_VERSION.equals(parts[0]) || parts[3].isEmpty()) {
+                return null;
+            }
+            try {
+                return new ParsedToken(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
     }
 
     @Transactional
@@ -43,8 +167,8 @@ public class RefreshTokenService {
     }
 
     @Transactional
-    public void revokeAllUserTokens(UserEntity user) {
-        refreshTokenRepository.findByUser(user).forEach(this::revokeToken);
+    public int revokeAllUserTokens(UserEntity user) {
+        return refreshTokenRepository.revokeAllByUser(user, LocalDateTime.now());
     }
 
     @Transactional
@@ -0,0 +1,255 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.response.RevocationEventResponse;
+import es.hargos.auth.dto.response.RevocationFeedResponse;
+import es.hargos.auth.repository.RevokedAccessTokenRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Feed de revocaciones para servicios que cachean tokens validados.
+ *
+ * - Se sirve desde el registro de revocaciones compartido (revoked_access_tokens y token_epoch_changes,
+ *   ver TokenRevocationService): cualquier instancia entrega las revocaciones hechas en todas
+ * - El cursor es el seq del último evento recibido (auth.revocation_seq), válido en cualquier instancia
+ *   y tras cualquier reinicio
+ * - Solo se entregan filas asentadas (app.revocation-sync.settle-ms): un cursor nunca deja atrás una
+ *   revocación que aún no había hecho commit
+ * - Sin cursor se devuelve el registro entero como snapshot: todo lo revocado que aún puede afectar a
+ *   un access token vigente. Lo que se borra del registro ya no afecta a ningún token, así que un cursor
+ *   antiguo se puede reanudar siempre
+ *
+ * Cada suscriptor SSE tiene su propia cola acotada (app.revocation-feed.subscriber-queue-size) que
+ * vacía un hilo virtual propio: un consumidor lento no retrasa a los demás. Si su cola se llena, se
+ * cierra su conexión y al reconectar reanuda desde su último cursor. TokenRevocationService.sync
+ * publica en las colas las filas que se asientan en cada ejecución.
+ */
+@Service
+@Slf4j
+public class RevocationFeedService {
+
+    public static final String TYPE_JTI = "JTI";
+    public static final String TYPE_USER_EPOCH = "USER_EPOCH";
+
+    // Eventos por consulta al enviar lo pendiente a un suscriptor nuevo
+    static final int SUBSCRIBE_PAGE_SIZE = 1000;
+
+    private final RevokedAccessTokenRepository revokedAccessTokenRepository;
+    private final long sseTimeoutMs;
+    private final double settleSeconds;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Un hilo virtual por envío pendiente a cada suscriptor: sync no espera a la red
+    private final ExecutorService fanOutExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int subscriberQueueSize;
+
+    /**
+     * Suscriptor SSE con su cola de eventos pendientes de enviar
+     */
+    private static final class Subscriber {
+
+        final SseEmitter emitter;
+        final BlockingQueue<RevocationEventResponse> queue;
+        // true mientras hay un hilo enviando a este suscriptor (o el envío inicial de subscribe)
+        final AtomicBoolean sending = new AtomicBoolean(true);
+        // seq del último evento enviado: lo publicado mientras se enviaba lo pendiente puede llegar repetido
+        volatile long lastSentSeq;
+
+        Subscriber(SseEmitter emitter, int queueSize) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+    }
+
+    public RevocationFeedService(RevokedAccessTokenRepository revokedAccessTokenRepository,
+                                 @Value("${app.revocation-feed.sse-timeout-ms:300000}") long sseTimeoutMs,
+                                 @Value("${app.revocation-feed.subscriber-queue-size:1000}") int subscriberQueueSize,
+                                 @Value("${app.revocation-sync.settle-ms:5000}") long settleMs) {
+        this.revokedAccessTokenRepository = revokedAccessTokenRepository;
+        this.sseTimeoutMs = sseTimeoutMs;
+        this.subscriberQueueSize = subscriberQueueSize;
+        this.settleSeconds = settleMs / 1000.0;
+    }
+
+    /**
+     * Envía a los suscriptores conectados eventos recién asentados del registro, en orden de seq
+     */
+    public void publish(List<RevocationEventResponse> events) {
+        for (Subscriber subscriber : subscribers) {
+            if (events.stream().allMatch(subscriber.queue::offer)) {
+                scheduleSend(subscriber);
+            } else {
+                // Va por detrás: se cierra y al reconectar reanuda desde su cursor
+                log.warn("Revocation feed subscriber lagging more than {} events, closing it", subscriberQueueSize);
+                close(subscriber, null);
+            }
+        }
+    }
+
+    /**
+     * Eventos asentados posteriores al cursor (como mucho limit). Sin cursor, o con uno mal formado,
+     * se empieza por el principio del registro y la respuesta es un snapshot.
+     */
+    @Transactional(readOnly = true)
+    public RevocationFeedResponse poll(String cursor, int limit) {
+        Long after = parseCursor(cursor);
+        long from = after != null ? after : 0L;
+
+        List<RevocationEventResponse> events = new ArrayList<>();
+        for (Object[] row : revokedAccessTokenRepository.findRevocationLogAfter(from, LocalDateTime.now(), settleSeconds, limit)) {
+            TokenRevocationService.LogEntry entry = TokenRevocationService.LogEntry.of(row);
+            if (!entry.settled()) {
+                break; // Lo siguiente se entrega cuando se asiente
+            }
+            events.add(toEvent(entry));
+        }
+
+        long last = events.isEmpty() ? from : events.get(events.size() - 1).getSequence();
+        return new RevocationFeedResponse(Long.toString(last), after == null, events);
+    }
+
+    /**
+     * Suscripción SSE: envía primero lo pendiente desde el cursor (sin cursor, el snapshot en un evento
+     * "snapshot" seguido de eventos "revocation") y después cada revocación según se asienta. El id de
+     * cada evento es su cursor (Last-Event-ID al reconectar). Los eventos pueden llegar repetidos
+     * alrededor de la reconexión; aplicarlos es idempotente.
+     */
+    public SseEmitter subscribe(String cursor) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, subscriberQueueSize);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        // Registrado antes de leer lo pendiente: lo publicado entretanto espera en su cola
+        subscribers.add(subscriber);
+
+        try {
+            RevocationFeedResponse page = poll(cursor, SUBSCRIBE_PAGE_SIZE);
+            if (page.getSnapshot()) {
+                emitter.send(SseEmitter.event().name("snapshot").id(page.getCursor()).data(page));
+                subscriber.lastSentSeq = Long.parseLong(page.getCursor());
+            } else {
+                send(subscriber, page.getEvents());
+            }
+            while (page.getEvents().size() == SUBSCRIBE_PAGE_SIZE) {
+                page = poll(page.getCursor(), SUBSCRIBE_PAGE_SIZE);
+                send(subscriber, page.getEvents());
+            }
+        } catch (IOException | IllegalStateException e) {
+            close(subscriber, e);
+            return emitter;
+        }
+
+        subscriber.sending.set(false);
+        if (!subscriber.queue.isEmpty()) {
+            scheduleSend(subscriber);
+        }
+        return emitter;
+    }
+
+    /**
+     * Lanza el envío de la cola del suscriptor si no hay ya uno en curso
+     */
+    private void scheduleSend(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            fanOutExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Envía en orden lo que haya en la cola. Solo se bloquea este suscriptor si su conexión va lenta.
+     */
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            RevocationEventResponse event = subscriber.queue.poll();
+            if (event == null) {
+                subscriber.sending.set(false);
+                // Un evento encolado justo antes de soltar el flag no tendría quien lo enviase
+                if (subscriber.queue.isEmpty() || !subscriber.sending.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                send(subscriber, List.of(event));
+            } catch (IOException | IllegalStateException e) {
+                close(subscriber, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Envía los eventos posteriores al último enviado a este suscriptor
+     */
+    private static void send(Subscriber subscriber, List<RevocationEventResponse> events) throws IOException {
+        for (RevocationEventResponse event : events) {
+            if (event.getSequence() > subscriber.lastSentSeq) {
+                subscriber.emitter.send(SseEmitter.event().name("revocation").id(event.getSequence().toString()).data(event));
+                subscriber.lastSentSeq = event.getSequence();
+            }
+        }
+    }
+
+    private void close(Subscriber subscriber, Exception error) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        subscriber.queue.clear();
+        if (error != null) {
+            subscriber.emitter.completeWithError(error);
+        } else {
+            subscriber.emitter.complete();
+        }
+    }
+
+    /**
+     * Número de suscriptores SSE conectados (útil para monitoreo)
+     */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    static RevocationEventResponse toEvent(TokenRevocationService.LogEntry entry) {
+        return entry.jti() != null
+                ? new RevocationEventResponse(entry.seq(), TYPE_JTI, entry.jti(), null, null, entry.occurredAt())
+                : new RevocationEventResponse(entry.seq(), TYPE_USER_EPOCH, null, entry.userId(), entry.tokenEpoch(),
+                        entry.occurredAt());
+    }
+
+    /**
+     * seq del cursor, o null si falta o está mal formado (por ejemplo, un cursor del antiguo buffer en memoria)
+     */
+    private static Long parseCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            long seq = Long.parseLong(cursor.trim());
+            return seq >= 0 ? seq : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdown();
+        subscribers.forEach(subscriber -> close(subscriber, null));
+    }
+}
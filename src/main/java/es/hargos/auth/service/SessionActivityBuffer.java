@@ -0,0 +1,131 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.entity.UserSessionEntity;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Buffer write-behind de la actividad de las sesiones.
+ *
+ * Cada refresh cambia last_activity_at de su sesión. En lugar de un UPDATE por refresh sobre
+ * user_sessions (tabla con varios índices), aquí solo se guarda el último valor por sesión y se
+ * escribe todo en un único batch cada app.session-activity.flush-interval-ms y al parar.
+ *
+ * Solo last_activity_at: el JTI del access token vigente se escribe en la transacción del refresh
+ * (AuthService), porque revocar la sesión tiene que revocar exactamente ese token, en esta instancia
+ * o en cualquier otra, y aunque el proceso muera sin parar.
+ *
+ * Mientras un valor está pendiente la base de datos va por detrás, así que en esta instancia la última
+ * actividad se consulta con {@link #lastActivityAt(UserSessionEntity)} y {@link #recentSessionIds(Long, LocalDateTime)}.
+ * Si el proceso muere sin parar, se pierde como mucho un intervalo de actividad.
+ */
+@Service
+@Slf4j
+public class SessionActivityBuffer {
+
+    private static final String FLUSH_SQL = "UPDATE auth.user_sessions " +
+            "SET last_activity_at = ? " +
+            "WHERE id = ? AND created_at = ? AND last_activity_at <= ?";
+
+    // createdAt: clave de partición de user_sessions, limita cada UPDATE del flush a la partición de la sesión
+    private record PendingActivity(Long userId, LocalDateTime createdAt, LocalDateTime lastActivityAt) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // sessionId -> último valor pendiente de escribir
+    private final Map<Long, PendingActivity> pending = new ConcurrentHashMap<>();
+
+    public SessionActivityBuffer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Registra actividad en la sesión (createdAt: el de la sesión, ver FLUSH_SQL)
+     */
+    public void record(Long sessionId, LocalDateTime createdAt, Long userId) {
+        PendingActivity activity = new PendingActivity(userId, createdAt, LocalDateTime.now());
+        pending.merge(sessionId, activity,
+                (previous, next) -> next.lastActivityAt().isBefore(previous.lastActivityAt()) ? previous : next);
+    }
+
+    /**
+     * Última actividad de la sesión, aunque aún no se haya escrito
+     */
+    public LocalDateTime lastActivityAt(UserSessionEntity session) {
+        return lastActivityAt(session.getId(), session.getLastActivityAt());
+    }
+
+    /**
+     * Igual que {@link #lastActivityAt(UserSessionEntity)} a partir del valor leído de la tabla
+     */
+    public LocalDateTime lastActivityAt(Long sessionId, LocalDateTime storedLastActivityAt) {
+        PendingActivity activity = pending.get(sessionId);
+        return activity != null && activity.lastActivityAt().isAfter(storedLastActivityAt)
+                ? activity.lastActivityAt()
+                : storedLastActivityAt;
+    }
+
+    /**
+     * Sesiones del usuario con actividad pendiente posterior a since (en la tabla pueden parecer inactivas)
+     */
+    public Set<Long> recentSessionIds(Long userId, LocalDateTime since) {
+        return pending.entrySet().stream()
+                .filter(entry -> entry.getValue().userId().equals(userId)
+                        && entry.getValue().lastActivityAt().isAfter(since))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Escribe la actividad pendiente en un único batch. Las entradas salen del buffer solo cuando
+     * ya están escritas (y si no han cambiado entretanto): hasta entonces las lecturas siguen viéndolas.
+     */
+    @Scheduled(fixedDelayString = "${app.session-activity.flush-interval-ms:5000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Long, PendingActivity>> batch = new ArrayList<>(pending.size());
+        pending.forEach((sessionId, activity) -> batch.add(Map.entry(sessionId, activity)));
+
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch, batch.size(), (ps, entry) -> {
+                ps.setObject(1, entry.getValue().lastActivityAt());
+                ps.setLong(2, entry.getKey());
+                ps.setObject(3, entry.getValue().createdAt());
+                ps.setObject(4, entry.getValue().lastActivityAt());
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not flush activity of {} sessions, retrying on the next run", batch.size(), e);
+            return;
+        }
+
+        batch.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+        log.debug("Flushed activity of {} sessions", batch.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Número de sesiones con actividad pendiente de escribir (útil para monitoreo)
+     */
+    public int size() {
+        return pending.size();
+    }
+}
@@ -1,14 +1,20 @@
 package es.hargos.auth.service;
 
-import es.hargos.auth.entity.UserSessionEntity;
-import es.hargos.auth.repository.UserSessionRepository;
-import lombok.RequiredArgsConstructor;
+import es.hargos.auth.repository.RevokedAccessTokenRepository;
+import es.hargos.auth.repository.TokenEpochChangeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -16,47 +22,137 @@ import java.util.List;
  *
  * Estrategia de limpieza:
  * - Se ejecuta cada 6 horas (a las 00:00, 06:00, 12:00, 18:00)
- * - Elimina sesiones revocadas con más de 7 días de antigüedad
+ * - Con user_sessions particionada: crea las particiones de los próximos meses y borra las
+ *   particiones caducadas enteras (SessionPartitionService). Si se ha borrado alguna, purga de
+ *   auth.user_agents los User-Agents que ya no referencia ninguna sesión (UserAgentDictionary)
+ * - Sin particionar: elimina sesiones revocadas con más de 7 días de antigüedad
+ * - Elimina refresh tokens expirados. Con particiones, solo los anteriores a la partición más
+ *   antigua, para que el ON DELETE CASCADE no borre sesiones fila a fila
+ * - Elimina de revoked_access_tokens los JTIs cuyo access token ya ha expirado, y de
+ *   token_epoch_changes los incrementos de token_epoch que ya no afectan a ningún access token
  * - Esto previene el crecimiento infinito de la base de datos
+ *
+ * Se borra por lotes de app.cleanup.batch-size filas recorriendo el índice por clave
+ * (created_at/expires_at, id), con una pausa de app.cleanup.pause-ms entre lotes. Cada lote es
+ * una sentencia y una transacción cortas: nunca se carga la tabla en memoria ni se bloquean
+ * muchas filas a la vez. Progreso en las métricas hargos.cleanup.deleted / chunks / duration.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class SessionCleanupService {
 
-    private final UserSessionRepository userSessionRepository;
+    static final int RETENTION_DAYS = 7;
+
+    // Inicio del recorrido por clave: anterior a cualquier fila
+    private static final LocalDateTime KEYSET_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final String TARGET_SESSIONS = "user_sessions";
+    private static final String TARGET_REFRESH_TOKENS = "refresh_tokens";
+    private static final String TARGET_USER_AGENTS = "user_agents";
+
+    private static final String PURGE_SESSIONS_SQL = "WITH chunk AS ( " +
+            "SELECT id FROM auth.user_sessions " +
+            "WHERE is_revoked = true AND created_at < ? AND (created_at, id) > (?, ?) " +
+            "ORDER BY created_at, id LIMIT ?) " +
+            "DELETE FROM auth.user_sessions s USING chunk c WHERE s.id = c.id " +
+            "RETURNING s.created_at, s.id";
+
+    private static final String PURGE_REFRESH_TOKENS_SQL = "WITH chunk AS ( " +
+            "SELECT id FROM auth.refresh_tokens " +
+            "WHERE expires_at < ? AND (expires_at, id) > (?, ?) " +
+            "ORDER BY expires_at, id LIMIT ?) " +
+            "DELETE FROM auth.refresh_tokens rt USING chunk c WHERE rt.id = c.id " +
+            "RETURNING rt.expires_at, rt.id";
+
+    /**
+     * Posición del recorrido: última fila borrada según el orden del índice
+     */
+    record PurgeKey(LocalDateTime at, long id) {
+
+        static final Comparator<PurgeKey> ORDER =
+                Comparator.comparing(PurgeKey::at).thenComparingLong(PurgeKey::id);
+    }
+
+    private static final RowMapper<PurgeKey> KEY_MAPPER =
+            (rs, rowNum) -> new PurgeKey(rs.getObject(1, LocalDateTime.class), rs.getLong(2));
+
+    private final SessionStatsService sessionStatsService;
+    private final SessionPartitionService sessionPartitionService;
+    private final UserAgentDictionary userAgentDictionary;
+    private final RevokedAccessTokenRepository revokedAccessTokenRepository;
+    private final TokenEpochChangeRepository tokenEpochChangeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final long pauseMs;
+
+    public SessionCleanupService(SessionStatsService sessionStatsService,
+                                 SessionPartitionService sessionPartitionService,
+                                 UserAgentDictionary userAgentDictionary,
+                                 RevokedAccessTokenRepository revokedAccessTokenRepository,
+                                 TokenEpochChangeRepository tokenEpochChangeRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.cleanup.batch-size:1000}") int batchSize,
+                                 @Value("${app.cleanup.pause-ms:100}") long pauseMs) {
+        this.sessionStatsService = sessionStatsService;
+        this.sessionPartitionService = sessionPartitionService;
+        this.userAgentDictionary = userAgentDictionary;
+        this.revokedAccessTokenRepository = revokedAccessTokenRepository;
+        this.tokenEpochChangeRepository = tokenEpochChangeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+    }
 
     /**
      * Scheduled task que se ejecuta cada 6 horas
      * Cron: "0 0 *\/6 * * *" = A las 00:00, 06:00, 12:00, 18:00 de cada día
      */
     @Scheduled(cron = "0 0 */6 * * *")
-    @Transactional
     public void cleanupExpiredSessions() {
         log.info("Starting scheduled cleanup of expired sessions...");
 
         try {
-            // Calcular fecha límite: 7 días atrás desde ahora
-            LocalDateTime cutoffDate = LocalDateTime.now().minusDays(7);
-
-            // Buscar todas las sesiones revocadas y antiguas
-            List<UserSessionEntity> expiredSessions = userSessionRepository
-                    .findAll()
-                    .stream()
-                    .filter(session -> session.getIsRevoked() && session.getCreatedAt().isBefore(cutoffDate))
-                    .toList();
-
-            if (expiredSessions.isEmpty()) {
-                log.info("No expired sessions to clean up");
-                return;
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime refreshTokenCutoff = now;
+            boolean partitionsDropped = false;
+
+            if (sessionPartitionService.isPartitioned()) {
+                sessionPartitionService.createUpcomingPartitions();
+                List<String> dropped = sessionPartitionService.dropExpiredPartitions();
+                if (!dropped.isEmpty()) {
+                    sessionStatsService.reconcile();
+                    partitionsDropped = true;
+                }
+
+                LocalDateTime oldestSession = sessionPartitionService.oldestPartitionStart().orElse(now);
+                if (oldestSession.isBefore(refreshTokenCutoff)) {
+                    refreshTokenCutoff = oldestSession;
+                }
+                log.info("Dropped {} expired session partitions", dropped.size());
+            } else {
+                // Calcular fecha límite: 7 días atrás desde ahora
+                LocalDateTime cutoffDate = now.minusDays(RETENTION_DAYS);
+                long sessions = purgeSessions(cutoffDate);
+                log.info("Cleaned up {} expired sessions (older than {} days)", sessions, RETENTION_DAYS);
             }
 
-            // Eliminar sesiones expiradas
-            int count = expiredSessions.size();
-            userSessionRepository.deleteAll(expiredSessions);
+            long refreshTokens = purge(TARGET_REFRESH_TOKENS, PURGE_REFRESH_TOKENS_SQL, refreshTokenCutoff);
+            log.info("Cleaned up {} expired refresh tokens", refreshTokens);
+
+            int revokedJtis = revokedAccessTokenRepository.deleteExpired(now);
+            int epochChanges = tokenEpochChangeRepository.deleteExpired(now);
+            log.info("Cleaned up {} expired revoked access token JTIs and {} token epoch changes",
+                    revokedJtis, epochChanges);
 
-            log.info("Successfully cleaned up {} expired sessions (older than {} days)",
-                    count, 7);
+            // Solo tras borrar particiones: recorre user_sessions entera, que no tiene índice por user_agent_id
+            if (partitionsDropped) {
+                int userAgents = userAgentDictionary.purgeUnused();
+                meterRegistry.counter("hargos.cleanup.deleted", "target", TARGET_USER_AGENTS).increment(userAgents);
+                log.info("Cleaned up {} user agents no longer referenced by any session", userAgents);
+            }
 
         } catch (Exception e) {
             log.error("Error during session cleanup: {}", e.getMessage(), e);
@@ -69,22 +165,14 @@ public class SessionCleanupService {
      * @param daysOld Antigüedad en días para considerar sesiones como limpibles
      * @return Número de sesiones eliminadas
      */
-    @Transactional
     public int manualCleanup(int daysOld) {
         log.info("Manual cleanup initiated for sessions older than {} days", daysOld);
 
         try {
             LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysOld);
 
-            List<UserSessionEntity> expiredSessions = userSessionRepository
-                    .findAll()
-                    .stream()
-                    .filter(session -> session.getIsRevoked() && session.getCreatedAt().isBefore(cutoffDate))
-                    .toList();
-
-            int count = expiredSessions.size();
+            int count = (int) purgeSessions(cutoffDate);
             if (count > 0) {
-                userSessionRepository.deleteAll(expiredSessions);
                 log.info("Manual cleanup completed: {} sessions removed", count);
             } else {
                 log.info("Manual cleanup completed: No sessions to remove");
@@ -98,24 +186,76 @@ public class SessionCleanupService {
         }
     }
 
+    private long purgeSessions(LocalDateTime cutoff) {
+        long deleted = purge(TARGET_SESSIONS, PURGE_SESSIONS_SQL, cutoff);
+        sessionStatsService.sessionsPurged(deleted);
+        return deleted;
+    }
+
+    /**
+     * Borra por lotes las filas anteriores a cutoff. Cada lote continúa donde acabó el anterior
+     * (sin volver a recorrer las entradas ya borradas del índice) y termina con el primer lote incompleto.
+     *
+     * @return Número de filas eliminadas
+     */
+    private long purge(String target, String sql, LocalDateTime cutoff) {
+        Counter deleted = meterRegistry.counter("hargos.cleanup.deleted", "target", target);
+        Counter chunks = meterRegistry.counter("hargos.cleanup.chunks", "target", target);
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        PurgeKey last = new PurgeKey(KEYSET_START, 0L);
+        long total = 0;
+        try {
+            while (true) {
+                List<PurgeKey> keys = jdbcTemplate.query(sql, KEY_MAPPER, cutoff, last.at(), last.id(), batchSize);
+                if (keys.isEmpty()) {
+                    break;
+                }
+
+                total += keys.size();
+                deleted.increment(keys.size());
+                chunks.increment();
+                last = Collections.max(keys, PurgeKey.ORDER);
+                log.debug("Cleanup of {}: {} rows deleted so far", target, total);
+
+                if (keys.size() < batchSize || !pause()) {
+                    break;
+                }
+            }
+        } finally {
+            sample.stop(meterRegistry.timer("hargos.cleanup.duration", "target", target));
+        }
+        return total;
+    }
+
+    /**
+     * Pausa entre lotes para no acaparar la base de datos. false si el hilo se interrumpe (apagado).
+     */
+    private boolean pause() {
+        if (pauseMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Cleanup interrupted, remaining rows will be deleted on the next run");
+            return false;
+        }
+    }
+
     /**
-     * Obtiene estadísticas de sesiones para monitoreo
+     * Obtiene estadísticas de sesiones para monitoreo (contadores de SessionStatsService, sin consultas)
+     * activeSessions son aquí las sesiones no revocadas.
      */
     public SessionStats getSessionStats() {
-        long totalSessions = userSessionRepository.count();
-        long activeSessions = userSessionRepository.findAll()
-                .stream()
-                .filter(session -> !session.getIsRevoked())
-                .count();
-        long revokedSessions = totalSessions - activeSessions;
-
-        LocalDateTime sevenDaysAgo = LocalDateTime.now().minusDays(7);
-        long oldRevokedSessions = userSessionRepository.findAll()
-                .stream()
-                .filter(session -> session.getIsRevoked() && session.getCreatedAt().isBefore(sevenDaysAgo))
-                .count();
-
-        return new SessionStats(totalSessions, activeSessions, revokedSessions, oldRevokedSessions);
+        long totalSessions = sessionStatsService.getTotalSessions();
+        long revokedSessions = sessionStatsService.getRevokedSessions();
+        long activeSessions = Math.max(0, totalSessions - revokedSessions);
+
+        return new SessionStats(totalSessions, activeSessions, revokedSessions,
+                sessionStatsService.getPurgeEligibleSessions());
     }
 
     /**
@@ -0,0 +1,161 @@
+package es.hargos.auth.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import es.hargos.auth.dto.response.SessionExportRecord;
+import es.hargos.auth.entity.DeviceType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exportación completa de sesiones para auditorías de seguridad, en NDJSON (un objeto JSON por línea).
+ *
+ * Cada fila de auth.user_sessions es un login (created_at), así que la exportación es también el
+ * historial de logins: incluye las sesiones revocadas. Los filtros (rango de created_at y usuario)
+ * van en el WHERE, con lo que las particiones fuera del rango ni se leen.
+ *
+ * Las filas se leen con un cursor de solo avance (fetch size fijo, dentro de una transacción de
+ * solo lectura: sin ella el driver de PostgreSQL carga el resultado entero) y se escriben según
+ * llegan. La memoria no depende del número de filas.
+ *
+ * Se ejecuta en el hilo de la petición asíncrona (StreamingResponseBody): para exportaciones que
+ * tarden más que el timeout asíncrono del contenedor, subir spring.mvc.async.request-timeout.
+ */
+@Service
+@Slf4j
+public class SessionExportService {
+
+    static final int FETCH_SIZE = 500;
+
+    private static final String EXPORT_SQL = "SELECT s.id, s.user_id, u.email, host(s.ip_address) AS ip_address, " +
+            "ua.user_agent, s.device_type, s.created_at, s.last_activity_at, s.is_revoked " +
+            "FROM auth.user_sessions s " +
+            "JOIN auth.users u ON u.id = s.user_id " +
+            "LEFT JOIN auth.user_agents ua ON ua.id = s.user_agent_id " +
+            "WHERE true";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectWriter recordWriter;
+    private final SessionActivityBuffer sessionActivityBuffer;
+
+    public SessionExportService(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                ObjectMapper objectMapper,
+                                SessionActivityBuffer sessionActivityBuffer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.recordWriter = objectMapper.writerFor(SessionExportRecord.class);
+        this.sessionActivityBuffer = sessionActivityBuffer;
+    }
+
+    /**
+     * Filtros de la exportación; null = sin filtrar. from incluido, to excluido.
+     */
+    public record Filter(LocalDateTime from, LocalDateTime to, Long userId) {}
+
+    /**
+     * Comprueba los filtros antes de empezar a responder (después ya no se puede devolver un 400)
+     */
+    public void validate(Filter filter) {
+        if (filter.from() != null && filter.to() != null && !filter.from().isBefore(filter.to())) {
+            throw new IllegalStateException("El inicio del rango debe ser anterior al final");
+        }
+    }
+
+    /**
+     * Escribe en out las sesiones que cumplen el filtro, por orden de login
+     *
+     * @return Número de sesiones exportadas
+     */
+    public long export(Filter filter, OutputStream out) {
+        validate(filter);
+
+        StringBuilder sql = new StringBuilder(EXPORT_SQL);
+        List<Object> args = new ArrayList<>();
+        if (filter.from() != null) {
+            sql.append(" AND s.created_at >= ?");
+            args.add(filter.from());
+        }
+        if (filter.to() != null) {
+            sql.append(" AND s.created_at < ?");
+            args.add(filter.to());
+        }
+        if (filter.userId() != null) {
+            sql.append(" AND s.user_id = ?");
+            args.add(filter.userId());
+        }
+        sql.append(" ORDER BY s.created_at, s.id");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        AtomicLong exported = new AtomicLong();
+
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, rs -> {
+            writeLine(writer, mapRow(rs));
+            exported.incrementAndGet();
+        }));
+
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Exported {} sessions (from={}, to={}, userId={})",
+                exported.get(), filter.from(), filter.to(), filter.userId());
+        return exported.get();
+    }
+
+    private SessionExportRecord mapRow(ResultSet rs) throws SQLException {
+        long id = rs.getLong("id");
+        return new SessionExportRecord(
+                id,
+                rs.getLong("user_id"),
+                rs.getString("email"),
+                rs.getString("ip_address"),
+                rs.getString("user_agent"),
+                DeviceType.fromCode(rs.getShort("device_type")).getValue(),
+                rs.getObject("created_at", LocalDateTime.class),
+                sessionActivityBuffer.lastActivityAt(id, rs.getObject("last_activity_at", LocalDateTime.class)),
+                rs.getBoolean("is_revoked"));
+    }
+
+    /**
+     * Una línea por sesión. Si el cliente se desconecta, la IOException aborta la consulta.
+     */
+    private void writeLine(Writer writer, SessionExportRecord record) {
+        try {
+            writer.write(recordWriter.writeValueAsString(record));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
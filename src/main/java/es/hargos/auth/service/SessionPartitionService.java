@@ -0,0 +1,154 @@
+package es.hargos.auth.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Particiones mensuales de auth.user_sessions (una por mes de created_at: user_sessions_YYYY_MM).
+ *
+ * - Crea las particiones de los próximos app.sessions.partitions-ahead meses (función
+ *   auth.create_user_sessions_partitions de init-db.sql)
+ * - La retención borra particiones enteras (DROP TABLE) en lugar de filas: se borra una partición
+ *   cuando su último día queda más atrás que la retención. La retención nunca es menor que la vida
+ *   de un refresh token + 1 día: una sesión no puede usarse más allá de su refresh token, así que
+ *   todas las sesiones de la partición están muertas.
+ *
+ * Si la tabla no está particionada (base de datos sin migrar) no hace nada y SessionCleanupService
+ * sigue borrando por filas.
+ */
+@Service
+@Slf4j
+public class SessionPartitionService {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("user_sessions_(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String IS_PARTITIONED_SQL = "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table " +
+            "WHERE partrelid = to_regclass('auth.user_sessions'))";
+
+    private static final String LIST_PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = to_regclass('auth.user_sessions')";
+
+    private static final String CREATE_PARTITIONS_SQL = "SELECT auth.create_user_sessions_partitions(CAST(? AS DATE), ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int partitionsAhead;
+    private final Duration retention;
+
+    public SessionPartitionService(JdbcTemplate jdbcTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.sessions.partitions-ahead:3}") int partitionsAhead,
+                                   @Value("${app.sessions.partition-retention-days:8}") int retentionDays,
+                                   @Value("${jwt.refresh-token-expiration-ms}") long refreshTokenExpirationMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.partitionsAhead = partitionsAhead;
+        Duration minimum = Duration.ofMillis(refreshTokenExpirationMs).plusDays(1);
+        this.retention = Duration.ofDays(retentionDays).compareTo(minimum) < 0 ? minimum : Duration.ofDays(retentionDays);
+    }
+
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Boolean.class));
+    }
+
+    /**
+     * Al arrancar, asegura que existen las particiones de los próximos meses
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            if (isPartitioned()) {
+                createUpcomingPartitions();
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not create upcoming user_sessions partitions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Crea las particiones que falten desde el mes actual hasta partitionsAhead meses después
+     *
+     * @return Número de particiones creadas
+     */
+    public int createUpcomingPartitions() {
+        Integer created = jdbcTemplate.queryForObject(CREATE_PARTITIONS_SQL, Integer.class,
+                LocalDate.now(), partitionsAhead);
+        if (created != null && created > 0) {
+            log.info("Created {} user_sessions partitions", created);
+        }
+        return created != null ? created : 0;
+    }
+
+    /**
+     * Borra las particiones mensuales que terminan antes del límite de retención
+     *
+     * @return Nombres de las particiones borradas
+     */
+    public List<String> dropExpiredPartitions() {
+        LocalDateTime dropBefore = LocalDateTime.now().minus(retention);
+        List<String> dropped = new ArrayList<>();
+
+        for (MonthlyPartition partition : listMonthlyPartitions()) {
+            if (partition.end().isAfter(dropBefore)) {
+                continue;
+            }
+            // El nombre viene del catálogo y ha pasado por PARTITION_NAME: se puede interpolar
+            jdbcTemplate.execute("DROP TABLE IF EXISTS auth." + partition.name());
+            dropped.add(partition.name());
+            meterRegistry.counter("hargos.cleanup.partitions.dropped", "target", "user_sessions").increment();
+            log.info("Dropped user_sessions partition {} (sessions created before {})", partition.name(), partition.end());
+        }
+        return dropped;
+    }
+
+    /**
+     * Inicio de la partición mensual más antigua que queda (las sesiones anteriores ya no existen)
+     */
+    public Optional<LocalDateTime> oldestPartitionStart() {
+        return listMonthlyPartitions().stream()
+                .map(MonthlyPartition::start)
+                .min(Comparator.naturalOrder());
+    }
+
+    private List<MonthlyPartition> listMonthlyPartitions() {
+        List<MonthlyPartition> partitions = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.parse(matcher.group(1) + "_" + matcher.group(2), MONTH_FORMAT);
+                partitions.add(new MonthlyPartition(name, month));
+            }
+        }
+        return partitions;
+    }
+
+    private record MonthlyPartition(String name, YearMonth month) {
+
+        LocalDateTime start() {
+            return month.atDay(1).atStartOfDay();
+        }
+
+        LocalDateTime end() {
+            return month.plusMonths(1).atDay(1).atStartOfDay();
+        }
+    }
+}
@@ -1,32 +1,122 @@
 package es.hargos.auth.service;
 
-import es.hargos.auth.dto.response.AdminSessionResponse;
 import es.hargos.auth.dto.response.SessionResponse;
+import es.hargos.auth.entity.DeviceType;
 import es.hargos.auth.entity.UserEntity;
 import es.hargos.auth.entity.UserSessionEntity;
-import es.hargos.auth.entity.UserTenantRoleEntity;
 import es.hargos.auth.exception.ResourceNotFoundException;
 import es.hargos.auth.repository.RefreshTokenRepository;
 import es.hargos.auth.repository.UserRepository;
 import es.hargos.auth.repository.UserSessionRepository;
-import lombok.RequiredArgsConstructor;
+import es.hargos.auth.util.UserAgentClassifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class SessionService {
 
     private final UserSessionRepository userSessionRepository;
     private final UserRepository userRepository;
     private final RefreshTokenRepository refreshTokenRepository;
     private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
+    private final SessionActivityBuffer sessionActivityBuffer;
+    private final SessionStatsService sessionStatsService;
+    private final UserAgentClassifier userAgentClassifier;
+    private final UserAgentDictionary userAgentDictionary;
+
+    // keepRefreshTokenId que no coincide con ninguna sesión (los ids empiezan en 1)
+    private static final Long NO_SESSION = 0L;
+
+    // Una sesión está activa si ha tenido actividad en este intervalo
+    private static final Duration ACTIVE_SESSION_WINDOW = Duration.ofMinutes(30);
+
+    // Límite de sesiones simultáneas cuando ni el tenant ni la app lo definen
+    private final int defaultMaxSessionsPerUser;
+
+    // Vida de un refresh token: ninguna sesión abierta es más antigua
+    private final long refreshTokenExpirationMs;
+
+    public SessionService(UserSessionRepository userSessionRepository,
+                          UserRepository userRepository,
+                          RefreshTokenRepository refreshTokenRepository,
+                          RefreshTokenService refreshTokenService,
+                          TokenRevocationService tokenRevocationService,
+                          SessionActivityBuffer sessionActivityBuffer,
+                          SessionStatsService sessionStatsService,
+                          UserAgentClassifier userAgentClassifier,
+                          UserAgentDictionary userAgentDictionary,
+                          @Value("${app.sessions.max-per-user:2}") int defaultMaxSessionsPerUser,
+                          @Value("${jwt.refresh-token-expiration-ms}") long refreshTokenExpirationMs) {
+        this.userSessionRepository = userSessionRepository;
+        this.userRepository = userRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.sessionActivityBuffer = sessionActivityBuffer;
+        this.sessionStatsService = sessionStatsService;
+        this.userAgentClassifier = userAgentClassifier;
+        this.userAgentDictionary = userAgentDictionary;
+        this.defaultMaxSessionsPerUser = defaultMaxSessionsPerUser;
+        this.refreshTokenExpirationMs = refreshTokenExpirationMs;
+    }
+
+    /**
+     * Abre una sesión nueva (login, login con Google, registro con auto-login): crea el refresh token,
+     * guarda la sesión con el JTI del access token y devuelve el refresh token que se entrega al cliente.
+     *
+     * Aplica el límite de sesiones simultáneas: si con la nueva se supera, se revocan las más antiguas
+     * (ver UserSessionRepository.revokeSessionsOverLimit). Como antes, solo cuentan las sesiones activas
+     * (con actividad en los últimos 30 minutos, incluida la pendiente de escribir); las inactivas se conservan.
+     *
+     * La fila del usuario queda bloqueada hasta el commit, así que dos logins simultáneos del mismo
+     * usuario se aplican uno detrás de otro y el segundo ya ve la sesión del primero.
+     */
+    @Transactional
+    public String createSession(UserEntity user, String accessTokenJti, String ipAddress, String userAgent) {
+        userRepository.lockById(user.getId());
+
+        RefreshTokenService.IssuedRefreshToken refreshToken = refreshTokenService.createRefreshToken(user);
+
+        UserSessionEntity session = new UserSessionEntity();
+        session.setUser(user);
+        session.setRefreshToken(refreshToken.entity());
+        session.setAccessTokenJti(accessTokenJti); // Guardar JTI del access token
+        session.setIpAddress(ipAddress);
+        session.setUserAgentId(userAgentDictionary.idOf(userAgent));
+        session.setDeviceType(userAgentClassifier.deviceType(userAgent));
+        session.setLastActivityAt(LocalDateTime.now());
+        session.setIsRevoked(false);
+        session = userSessionRepository.save(session);
+        sessionStatsService.sessionCreated(user, session.getDeviceType());
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime activeSince = now.minus(ACTIVE_SESSION_WINDOW);
+        Set<Long> activeIds = new HashSet<>(sessionActivityBuffer.recentSessionIds(user.getId(), activeSince));
+        activeIds.add(session.getId());
+        List<Object[]> revoked = userSessionRepository.revokeSessionsOverLimit(user.getId(), defaultMaxSessionsPerUser,
+                now, now.minus(Duration.ofMillis(refreshTokenExpirationMs)), activeSince, activeIds);
+        onSessionsRevoked(user, revoked);
+        if (!revoked.isEmpty()) {
+            log.debug("Session limit reached for user {}: revoked {} older sessions", user.getId(), revoked.size());
+        }
+
+        return refreshTokenService.encode(refreshToken, session.getId());
+    }
 
     /**
      * Obtiene todas las sesiones activas del usuario autenticado
@@ -36,11 +126,16 @@ public class SessionService {
         UserEntity user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
 
-        LocalDateTime thirtyMinutesAgo = LocalDateTime.now().minusMinutes(30);
-        List<UserSessionEntity> sessions = userSessionRepository.findActiveSessionsByUser(user, thirtyMinutesAgo);
+        LocalDateTime thirtyMinutesAgo = LocalDateTime.now().minus(ACTIVE_SESSION_WINDOW);
+        Set<Long> recentIds = sessionActivityBuffer.recentSessionIds(user.getId(), thirtyMinutesAgo);
+        List<UserSessionEntity> sessions = recentIds.isEmpty()
+                ? userSessionRepository.findActiveSessionsByUser(user, thirtyMinutesAgo)
+                : userSessionRepository.findActiveSessionsByUserIncluding(user, thirtyMinutesAgo, recentIds);
 
+        // Ordenadas por la última actividad real, incluida la que aún no se ha escrito
         return sessions.stream()
                 .map(this::mapToResponse)
+                .sorted(Comparator.comparing(SessionResponse::getLastActivityAt).reversed())
                 .collect(Collectors.toList());
     }
 
@@ -77,8 +172,7 @@ public class SessionService {
         }
 
         // Revocar sesión
-        session.setIsRevoked(true);
-        userSessionRepository.save(session);
+        markRevoked(session);
 
         // Revocar refresh token asociado
         if (session.getRefreshToken() != null) {
@@ -94,75 +188,93 @@ public class SessionService {
         UserEntity user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
 
-        List<UserSessionEntity> sessions = userSessionRepository
-                .findByUserAndIsRevokedOrderByCreatedAtAsc(user, false);
+        // Si el token actual no es válido no se conserva ninguna sesión
+        Long currentRefreshTokenId = refreshTokenService.tryResolve(currentRefreshToken)
+                .map(resolved -> resolved.entity().getId())
+                .orElse(NO_SESSION);
 
-        for (UserSessionEntity session : sessions) {
-            // No revocar la sesión actual
-            if (session.getRefreshToken() != null &&
-                !session.getRefreshToken().getToken().equals(currentRefreshToken)) {
+        revokeOpenSessions(user, currentRefreshTokenId);
+    }
 
-                session.setIsRevoked(true);
-                userSessionRepository.save(session);
+    /**
+     * Revoca en bloque (sesiones y refresh tokens) y pasa los JTIs vigentes al índice de revocación.
+     * Devuelve el número de sesiones revocadas.
+     */
+    private int revokeOpenSessions(UserEntity user, Long keepRefreshTokenId) {
+        List<Object[]> revoked = userSessionRepository.revokeOpenSessionsExcept(
+                user.getId(), keepRefreshTokenId, LocalDateTime.now());
+        onSessionsRevoked(user, revoked);
+        return revoked.size();
+    }
 
-                // Revocar refresh token asociado
-                refreshTokenService.revokeToken(session.getRefreshToken());
-            }
+    /**
+     * Marca una sesión como revocada, revoca su access token vigente y actualiza las estadísticas
+     * (solo la primera vez). No toca el refresh token.
+     */
+    public void markRevoked(UserSessionEntity session) {
+        if (!Boolean.TRUE.equals(session.getIsRevoked())) {
+            sessionStatsService.sessionRevoked(session.getUser(), session.getDeviceType(),
+                    sessionActivityBuffer.lastActivityAt(session));
         }
+        session.setIsRevoked(true);
+        userSessionRepository.save(session);
+        tokenRevocationService.revoke(session.getAccessTokenJti());
+    }
+
+    /**
+     * Filas devueltas por las revocaciones en bloque de UserSessionRepository
+     * ([sessionId, accessTokenJti, código de deviceType, lastActivityAt, ...]): revoca los access tokens
+     * vigentes y actualiza las estadísticas
+     */
+    private void onSessionsRevoked(UserEntity user, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            Long sessionId = ((Number) row[0]).longValue();
+            tokenRevocationService.revoke((String) row[1]);
+            sessionStatsService.sessionRevoked(user, DeviceType.fromCode(((Number) row[2]).intValue()).getValue(),
+                    sessionActivityBuffer.lastActivityAt(sessionId, toLocalDateTime(row[3])));
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
     }
 
     private SessionResponse mapToResponse(UserSessionEntity session) {
         SessionResponse response = new SessionResponse();
         response.setId(session.getId());
         response.setIpAddress(session.getIpAddress());
-        response.setUserAgent(session.getUserAgent());
+        response.setUserAgent(userAgentDictionary.userAgent(session.getUserAgentId()));
         response.setDeviceType(session.getDeviceType());
-        response.setLastActivityAt(session.getLastActivityAt());
+        LocalDateTime lastActivityAt = sessionActivityBuffer.lastActivityAt(session);
+        response.setLastActivityAt(lastActivityAt);
         response.setCreatedAt(session.getCreatedAt());
-        response.setIsActive(session.isActive());
+        response.setIsActive(session.isActive(lastActivityAt));
         return response;
     }
 
     // ==================== ADMIN METHODS ====================
 
-    /**
-     * Obtiene todas las sesiones activas del sistema (para SUPER_ADMIN)
-     * Una sesion se considera activa si tuvo actividad en los ultimos 30 minutos
-     */
-    @Transactional(readOnly = true)
-    public List<AdminSessionResponse> getAllActiveSessions() {
-        LocalDateTime thirtyMinutesAgo = LocalDateTime.now().minusMinutes(30);
-        List<UserSessionEntity> sessions = userSessionRepository.findAllActiveSessions(thirtyMinutesAgo);
-
-        return sessions.stream()
-                .map(this::mapToAdminResponse)
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Obtiene todas las sesiones no revocadas del sistema (para SUPER_ADMIN)
-     */
-    @Transactional(readOnly = true)
-    public List<AdminSessionResponse> getAllSessions() {
-        List<UserSessionEntity> sessions = userSessionRepository.findAllNonRevokedSessions();
-
-        return sessions.stream()
-                .map(this::mapToAdminResponse)
-                .collect(Collectors.toList());
-    }
-
     /**
      * Obtiene estadisticas de sesiones (para SUPER_ADMIN)
+     * Se leen de los contadores de SessionStatsService, sin consultar la base de datos.
+     * totalSessions son las sesiones no revocadas; storedSessions, todas las filas.
      */
-    @Transactional(readOnly = true)
     public Map<String, Object> getSessionStats() {
-        LocalDateTime thirtyMinutesAgo = LocalDateTime.now().minusMinutes(30);
-        long activeSessions = userSessionRepository.countAllActiveSessions(thirtyMinutesAgo);
-        long totalSessions = userSessionRepository.findAllNonRevokedSessions().size();
+        long storedSessions = sessionStatsService.getTotalSessions();
+        long revokedSessions = sessionStatsService.getRevokedSessions();
 
         Map<String, Object> stats = new HashMap<>();
-        stats.put("activeSessions", activeSessions);
-        stats.put("totalSessions", totalSessions);
+        stats.put("activeSessions", sessionStatsService.getActiveSessions());
+        stats.put("totalSessions", Math.max(0, storedSessions - revokedSessions));
+        stats.put("revokedSessions", revokedSessions);
+        stats.put("storedSessions", storedSessions);
+        stats.put("purgeEligibleSessions", sessionStatsService.getPurgeEligibleSessions());
+        stats.put("activeSessionsByDeviceType", sessionStatsService.getActiveSessionsByDeviceType());
+        stats.put("activeSessionsByApp", sessionStatsService.getActiveSessionsByApp());
+        stats.put("reconciledAt", sessionStatsService.getReconciledAt());
         return stats;
     }
 
@@ -174,8 +286,7 @@ public class SessionService {
         UserSessionEntity session = userSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new ResourceNotFoundException("Sesion no encontrada"));
 
-        session.setIsRevoked(true);
-        userSessionRepository.save(session);
+        markRevoked(session);
 
         // Revocar refresh token asociado
         if (session.getRefreshToken() != null) {
@@ -191,50 +302,11 @@ public class SessionService {
         UserEntity user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
 
-        List<UserSessionEntity> sessions = userSessionRepository
-                .findByUserAndIsRevokedOrderByCreatedAtAsc(user, false);
-
-        int count = 0;
-        for (UserSessionEntity session : sessions) {
-            session.setIsRevoked(true);
-            userSessionRepository.save(session);
-
-            if (session.getRefreshToken() != null) {
-                refreshTokenService.revokeToken(session.getRefreshToken());
-            }
-            count++;
-        }
-
-        return count;
-    }
+        // Invalida de golpe todos los access y refresh tokens del usuario;
+        // marcar las sesiones solo mantiene coherente el listado de sesiones
+        tokenRevocationService.bumpTokenEpoch(user);
+        userRepository.save(user);
 
-    private AdminSessionResponse mapToAdminResponse(UserSessionEntity session) {
-        AdminSessionResponse response = new AdminSessionResponse();
-        response.setId(session.getId());
-        response.setIpAddress(session.getIpAddress());
-        response.setUserAgent(session.getUserAgent());
-        response.setDeviceType(session.getDeviceType());
-        response.setLastActivityAt(session.getLastActivityAt());
-        response.setCreatedAt(session.getCreatedAt());
-        response.setIsActive(session.isActive());
-
-        // Info del usuario
-        UserEntity user = session.getUser();
-        if (user != null) {
-            response.setUserId(user.getId());
-            response.setUserEmail(user.getEmail());
-            response.setUserFullName(user.getFullName());
-
-            // Obtener primer tenant del usuario (si tiene)
-            if (user.getUserTenantRoles() != null && !user.getUserTenantRoles().isEmpty()) {
-                UserTenantRoleEntity firstUserTenantRole = user.getUserTenantRoles().iterator().next();
-                if (firstUserTenantRole.getTenant() != null) {
-                    response.setTenantId(firstUserTenantRole.getTenant().getId());
-                    response.setTenantName(firstUserTenantRole.getTenant().getName());
-                }
-            }
-        }
-
-        return response;
+        return revokeOpenSessions(user, NO_SESSION);
     }
 }
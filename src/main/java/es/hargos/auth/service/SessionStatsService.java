@@ -0,0 +1,248 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.entity.DeviceType;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.util.TenantGrant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Contadores de sesiones mantenidos en memoria para los endpoints de administración.
+ *
+ * - Total, activas (no revocadas y con actividad en los últimos 30 minutos), revocadas y
+ *   purgables (revocadas con más de 7 días, ver SessionCleanupService)
+ * - Activas por tipo de dispositivo y por app (una sesión cuenta en cada app en la que el usuario tiene tenant)
+ *
+ * Se actualizan al crear, revocar y purgar sesiones y se leen sin consultar la base de datos.
+ * Se recalculan periódicamente con consultas agregadas, que corrigen lo que no se ve como evento
+ * (sesiones que dejan de estar activas por inactividad, cambios hechos por otras instancias,
+ * transacciones que hicieron rollback):
+ * - Activas (totales, por dispositivo y por app) cada app.session-stats.reconcile-interval-ms (1 minuto).
+ *   Una sesión activa no es más antigua que un refresh token, así que la consulta solo lee las
+ *   particiones recientes de user_sessions
+ * - Total, revocadas y purgables cada app.session-stats.totals-reconcile-interval-ms (30 minutos),
+ *   al arrancar y cuando la limpieza borra particiones. Recorren la tabla entera
+ */
+@Service
+@Slf4j
+public class SessionStatsService {
+
+    static final int ACTIVE_WINDOW_MINUTES = 30;
+
+    private static final String RECONCILE_ACTIVE_SQL = "WITH s AS ( " +
+            "    SELECT id, user_id, device_type " +
+            "    FROM auth.user_sessions " +
+            "    WHERE created_at > ? AND is_revoked = false AND last_activity_at > ? " +
+            ") " +
+            "SELECT 'total' AS dimension, NULL AS name, COUNT(*) AS active FROM s " +
+            "UNION ALL " +
+            "SELECT 'device', CAST(device_type AS TEXT), COUNT(*) FROM s GROUP BY device_type " +
+            "UNION ALL " +
+            "SELECT 'app', a.name, COUNT(DISTINCT s.id) " +
+            "FROM s " +
+            "JOIN auth.user_tenant_roles utr ON utr.user_id = s.user_id " +
+            "JOIN auth.tenants t ON t.id = utr.tenant_id " +
+            "JOIN auth.apps a ON a.id = t.app_id " +
+            "GROUP BY a.name";
+
+    private static final String RECONCILE_TOTALS_SQL = "SELECT COUNT(*) AS total, " +
+            "       COUNT(*) FILTER (WHERE is_revoked) AS revoked, " +
+            "       COUNT(*) FILTER (WHERE is_revoked AND created_at < ?) AS purge_eligible " +
+            "FROM auth.user_sessions";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TenantClaimCacheService tenantClaimCacheService;
+
+    // Vida de un refresh token: ninguna sesión activa es más antigua
+    private final Duration refreshTokenTtl;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong revoked = new AtomicLong();
+    private final AtomicLong purgeEligible = new AtomicLong();
+    private final Map<String, AtomicLong> activeByDeviceType = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> activeByApp = new ConcurrentHashMap<>();
+
+    // Último recálculo de las sesiones activas
+    private volatile LocalDateTime reconciledAt;
+
+    public SessionStatsService(JdbcTemplate jdbcTemplate,
+                               TenantClaimCacheService tenantClaimCacheService,
+                               @Value("${jwt.refresh-token-expiration-ms}") long refreshTokenExpirationMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tenantClaimCacheService = tenantClaimCacheService;
+        this.refreshTokenTtl = Duration.ofMillis(refreshTokenExpirationMs);
+    }
+
+    /**
+     * Sesión nueva: cuenta como activa desde el primer momento
+     */
+    public void sessionCreated(UserEntity user, String deviceType) {
+        total.incrementAndGet();
+        active.incrementAndGet();
+        adjust(activeByDeviceType, deviceKey(deviceType), 1);
+        appNames(user).forEach(app -> adjust(activeByApp, app, 1));
+    }
+
+    /**
+     * Sesión revocada. lastActivityAt indica si hasta ahora contaba como activa.
+     */
+    public void sessionRevoked(UserEntity user, String deviceType, LocalDateTime lastActivityAt) {
+        revoked.incrementAndGet();
+        if (lastActivityAt != null && lastActivityAt.isAfter(activeSince())) {
+            decrement(active);
+            adjust(activeByDeviceType, deviceKey(deviceType), -1);
+            appNames(user).forEach(app -> adjust(activeByApp, app, -1));
+        }
+    }
+
+    /**
+     * Sesiones revocadas y antiguas borradas por la limpieza
+     */
+    public void sessionsPurged(long count) {
+        for (AtomicLong counter : new AtomicLong[]{total, revoked, purgeEligible}) {
+            counter.updateAndGet(value -> Math.max(0, value - count));
+        }
+    }
+
+    /**
+     * Recalcula todos los contadores: los totales (recorriendo la tabla entera) y las activas.
+     * Los eventos que lleguen mientras se ejecuta pueden perderse o contarse dos veces; lo corrige la siguiente.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.session-stats.totals-reconcile-interval-ms:1800000}",
+               initialDelayString = "${app.session-stats.totals-reconcile-interval-ms:1800000}")
+    public void reconcile() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            jdbcTemplate.query(RECONCILE_TOTALS_SQL, rs -> {
+                total.set(rs.getLong("total"));
+                revoked.set(rs.getLong("revoked"));
+                purgeEligible.set(rs.getLong("purge_eligible"));
+            }, now.minusDays(SessionCleanupService.RETENTION_DAYS));
+        } catch (RuntimeException e) {
+            log.error("Could not reconcile session totals, keeping the maintained counters", e);
+            return;
+        }
+        reconcileActive();
+    }
+
+    /**
+     * Recalcula las sesiones activas (totales, por dispositivo y por app) leyendo solo las sesiones
+     * creadas dentro de la vida de un refresh token.
+     */
+    @Scheduled(fixedDelayString = "${app.session-stats.reconcile-interval-ms:60000}",
+               initialDelayString = "${app.session-stats.reconcile-interval-ms:60000}")
+    public void reconcileActive() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Long> devices = new HashMap<>();
+        Map<String, Long> apps = new HashMap<>();
+        long[] activeTotal = new long[1];
+
+        try {
+            jdbcTemplate.query(RECONCILE_ACTIVE_SQL, rs -> {
+                String dimension = rs.getString("dimension");
+                switch (dimension) {
+                    case "total" -> activeTotal[0] = rs.getLong("active");
+                    case "device" -> devices.merge(DeviceType.fromCode(Integer.parseInt(rs.getString("name"))).getValue(),
+                            rs.getLong("active"), Long::sum);
+                    case "app" -> apps.put(rs.getString("name"), rs.getLong("active"));
+                    default -> log.warn("Unknown session stats dimension {}", dimension);
+                }
+            }, now.minus(refreshTokenTtl), now.minusMinutes(ACTIVE_WINDOW_MINUTES));
+        } catch (RuntimeException e) {
+            log.error("Could not reconcile active session stats, keeping the maintained counters", e);
+            return;
+        }
+
+        active.set(activeTotal[0]);
+        replace(activeByDeviceType, devices);
+        replace(activeByApp, apps);
+        reconciledAt = now;
+    }
+
+    public long getTotalSessions() {
+        return total.get();
+    }
+
+    public long getActiveSessions() {
+        return active.get();
+    }
+
+    public long getRevokedSessions() {
+        return revoked.get();
+    }
+
+    public long getPurgeEligibleSessions() {
+        return purgeEligible.get();
+    }
+
+    public Map<String, Long> getActiveSessionsByDeviceType() {
+        return snapshot(activeByDeviceType);
+    }
+
+    public Map<String, Long> getActiveSessionsByApp() {
+        return snapshot(activeByApp);
+    }
+
+    public LocalDateTime getReconciledAt() {
+        return reconciledAt;
+    }
+
+    private Set<String> appNames(UserEntity user) {
+        if (user == null) {
+            return Set.of();
+        }
+        return tenantClaimCacheService.getFragment(user).getGrants().stream()
+                .map(TenantGrant::appName)
+                .filter(name -> name != null)
+                .collect(Collectors.toSet());
+    }
+
+    private static LocalDateTime activeSince() {
+        return LocalDateTime.now().minusMinutes(ACTIVE_WINDOW_MINUTES);
+    }
+
+    private static String deviceKey(String deviceType) {
+        return deviceType != null ? deviceType : "unknown";
+    }
+
+    private static void adjust(Map<String, AtomicLong> counters, String key, long delta) {
+        AtomicLong counter = counters.computeIfAbsent(key, k -> new AtomicLong());
+        counter.updateAndGet(value -> Math.max(0, value + delta));
+    }
+
+    private static void decrement(AtomicLong counter) {
+        counter.updateAndGet(value -> Math.max(0, value - 1));
+    }
+
+    private static void replace(Map<String, AtomicLong> counters, Map<String, Long> values) {
+        counters.keySet().retainAll(values.keySet());
+        values.forEach((key, value) -> counters.computeIfAbsent(key, k -> new AtomicLong()).set(value));
+    }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((key, value) -> {
+            if (value.get() > 0) {
+                result.put(key, value.get());
+            }
+        });
+        return result;
+    }
+}
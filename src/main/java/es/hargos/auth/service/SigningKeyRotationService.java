@@ -0,0 +1,242 @@
+package es.hargos.auth.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
+import es.hargos.auth.entity.JwtSigningKeyEntity;
+import es.hargos.auth.entity.SigningKeyStatus;
+import es.hargos.auth.repository.JwtSigningKeyRepository;
+import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.SigningKey;
+import es.hargos.auth.util.SigningKeyEncryptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Rotación sin downtime de las claves de firma de access tokens (jwt.key-rotation.enabled=true).
+ *
+ * Estrategia:
+ * - Las claves viven en auth.jwt_signing_keys y todas las instancias recargan el anillo periódicamente
+ * - Una clave nueva se crea como VERIFY_ONLY y solo pasa a ACTIVE tras dos intervalos de recarga más el
+ *   max-age del JWKS (jwt.jwks.max-age-ms): cuando empieza a firmar, todas las instancias la conocen y
+ *   ningún servicio que verifica en local puede tener aún en cache un JWKS anterior a ella
+ * - La clave sustituida queda VERIFY_ONLY durante el TTL del access token y después pasa a RETIRED
+ * - Los tokens sin kid siguen validando con jwt.secret
+ * - key_material se guarda cifrado con jwt.key-rotation.encryption-key (SigningKeyEncryptor), obligatoria
+ *   con la rotación activada. Las filas en claro de versiones anteriores se cifran en la siguiente rotateIfDue
+ *
+ * Así rotar no invalida ningún token emitido ni provoca una avalancha de logins.
+ */
+@Service
+@Slf4j
+public class SigningKeyRotationService {
+
+    private static final EnumSet<SigningKeyStatus> LIVE_STATUSES =
+            EnumSet.of(SigningKeyStatus.ACTIVE, SigningKeyStatus.VERIFY_ONLY);
+
+    private final JwtSigningKeyRepository signingKeyRepository;
+    private final JwtUtil jwtUtil;
+    private final SigningKeyEncryptor encryptor;
+    private final boolean enabled;
+    private final JWSAlgorithm algorithm;
+    private final Duration rotationPeriod;
+    private final Duration propagationDelay;
+    private final Duration accessTokenTtl;
+
+    public SigningKeyRotationService(JwtSigningKeyRepository signingKeyRepository,
+                                     JwtUtil jwtUtil,
+                                     @Value("${jwt.key-rotation.enabled:false}") boolean enabled,
+                                     @Value("${jwt.signing-algorithm:HS256}") String signingAlgorithm,
+                                     @Value("${jwt.key-rotation.period-ms:2592000000}") long rotationPeriodMs,
+                                     @Value("${jwt.key-rotation.reload-interval-ms:60000}") long reloadIntervalMs,
+                                     @Value("${jwt.jwks.max-age-ms:300000}") long jwksMaxAgeMs,
+                                     @Value("${jwt.access-token-expiration-ms}") Long accessTokenExpiration,
+                                     @Value("${jwt.key-rotation.encryption-key:}") String encryptionKey) {
+        this.signingKeyRepository = signingKeyRepository;
+        this.jwtUtil = jwtUtil;
+        if (enabled && encryptionKey.isBlank()) {
+            throw new IllegalStateException("jwt.key-rotation.encryption-key es obligatoria con jwt.key-rotation.enabled=true");
+        }
+        this.encryptor = enabled ? new SigningKeyEncryptor(encryptionKey) : null;
+        this.enabled = enabled;
+        this.algorithm = JWSAlgorithm.parse(signingAlgorithm.toUpperCase());
+        this.rotationPeriod = Duration.ofMillis(rotationPeriodMs);
+        this.propagationDelay = Duration.ofMillis(reloadIntervalMs * 2 + jwksMaxAgeMs);
+        this.accessTokenTtl = Duration.ofMillis(accessTokenExpiration);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadOnStartup() {
+        reloadKeyRing();
+    }
+
+    /**
+     * Recarga el anillo desde la base de datos. Se ejecuta en todas las instancias.
+     */
+    @Scheduled(fixedDelayString = "${jwt.key-rotation.reload-interval-ms:60000}",
+            initialDelayString = "${jwt.key-rotation.reload-interval-ms:60000}")
+    @Transactional(readOnly = true)
+    public void reloadKeyRing() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        SigningKey active = null;
+        LocalDateTime activeSince = null;
+        List<SigningKey> verifyOnly = new ArrayList<>();
+
+        for (JwtSigningKeyEntity entity : signingKeyRepository.findByStatusIn(LIVE_STATUSES)) {
+            if (entity.getVerifyUntil() != null && entity.getVerifyUntil().isBefore(now)) {
+                continue; // Pendiente de pasar a RETIRED
+            }
+            SigningKey key;
+            try {
+                key = SigningKey.fromJwk(readKey(entity));
+            } catch (Exception e) {
+                log.error("Signing key {} could not be loaded, skipping it", entity.getKid(), e);
+                continue;
+            }
+            // Si dos instancias activaron a la vez, firma la más reciente y la otra solo verifica
+            if (entity.getStatus() == SigningKeyStatus.ACTIVE
+                    && (activeSince == null || entity.getActivatedAt().isAfter(activeSince))) {
+                if (active != null) {
+                    verifyOnly.add(active);
+                }
+                active = key;
+                activeSince = entity.getActivatedAt();
+            } else {
+                verifyOnly.add(key);
+            }
+        }
+
+        if (active == null) {
+            // Aún no hay clave rotada activa: sigue firmando la configurada
+            if (!verifyOnly.isEmpty()) {
+                log.debug("Key ring has {} pending keys and no active key yet", verifyOnly.size());
+            }
+            return;
+        }
+
+        if (!active.getKeyId().equals(jwtUtil.getActiveKeyId())) {
+            log.info("Signing key ring reloaded: active kid={}, {} verify-only keys", active.getKeyId(), verifyOnly.size());
+        }
+        jwtUtil.installKeyRing(active, verifyOnly);
+    }
+
+    /**
+     * Avanza el ciclo de vida de las claves. Puede ejecutarse en todas las instancias a la vez:
+     * las filas se bloquean y la segunda transacción ya ve el trabajo hecho.
+     */
+    @Scheduled(fixedDelayString = "${jwt.key-rotation.reload-interval-ms:60000}",
+            initialDelayString = "${jwt.key-rotation.reload-interval-ms:60000}")
+    @Transactional
+    public void rotateIfDue() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<JwtSigningKeyEntity> keys = signingKeyRepository.findByStatusInForUpdate(LIVE_STATUSES);
+
+        // 0. Cifrar las claves guardadas en claro por versiones anteriores
+        for (JwtSigningKeyEntity key : keys) {
+            if (SigningKeyEncryptor.isPlaintext(key.getKeyMaterial())) {
+                try {
+                    key.setKeyMaterial(encryptor.encrypt(JWK.parse(key.getKeyMaterial())));
+                    log.info("Signing key {} encrypted at rest", key.getKid());
+                } catch (ParseException e) {
+                    log.error("Signing key {} could not be parsed, left as is", key.getKid(), e);
+                }
+            }
+        }
+
+        // 1. Retirar claves cuyo último token ya ha expirado
+        for (JwtSigningKeyEntity key : keys) {
+            if (key.getStatus() == SigningKeyStatus.VERIFY_ONLY
+                    && key.getVerifyUntil() != null && key.getVerifyUntil().isBefore(now)) {
+                key.setStatus(SigningKeyStatus.RETIRED);
+                log.info("Signing key {} retired", key.getKid());
+            }
+        }
+
+        // 2. Activar la clave pendiente cuando ya la conocen todas las instancias
+        JwtSigningKeyEntity pending = keys.stream()
+                .filter(key -> key.getStatus() == SigningKeyStatus.VERIFY_ONLY && key.getActivatedAt() == null)
+                .max(Comparator.comparing(JwtSigningKeyEntity::getActivateAfter))
+                .orElse(null);
+
+        if (pending != null && !pending.getActivateAfter().isAfter(now)) {
+            for (JwtSigningKeyEntity key : keys) {
+                if (key.getStatus() == SigningKeyStatus.ACTIVE) {
+                    key.setStatus(SigningKeyStatus.VERIFY_ONLY);
+                    key.setVerifyUntil(now.plus(accessTokenTtl).plus(propagationDelay));
+                }
+            }
+            pending.setStatus(SigningKeyStatus.ACTIVE);
+            pending.setActivatedAt(now);
+            log.info("Signing key {} activated", pending.getKid());
+            return;
+        }
+
+        // 3. Publicar una clave nueva si la activa ha cumplido su periodo (o si aún no hay ninguna)
+        if (pending == null) {
+            boolean rotationDue = keys.stream()
+                    .filter(key -> key.getStatus() == SigningKeyStatus.ACTIVE)
+                    .allMatch(key -> key.getActivatedAt().plus(rotationPeriod).isBefore(now));
+            if (rotationDue) {
+                JwtSigningKeyEntity created = signingKeyRepository.save(generateKey(now.plus(propagationDelay)));
+                log.info("Signing key {} published, it will be activated after {}", created.getKid(), created.getActivateAfter());
+            }
+        }
+    }
+
+    /**
+     * Clave de firma de la fila: cifrada, o en claro si aún no se ha cifrado (ver rotateIfDue)
+     */
+    private JWK readKey(JwtSigningKeyEntity entity) throws ParseException, JOSEException {
+        if (SigningKeyEncryptor.isPlaintext(entity.getKeyMaterial())) {
+            log.warn("Signing key {} is stored unencrypted, it will be encrypted on the next rotation run", entity.getKid());
+            return JWK.parse(entity.getKeyMaterial());
+        }
+        return encryptor.decrypt(entity.getKid(), entity.getKeyMaterial());
+    }
+
+    private JwtSigningKeyEntity generateKey(LocalDateTime activateAfter) {
+        JWK jwk;
+        try {
+            if (JWSAlgorithm.ES256.equals(algorithm)) {
+                jwk = new ECKeyGenerator(Curve.P_256).keyIDFromThumbprint(true).generate();
+            } else {
+                jwk = new OctetSequenceKeyGenerator(256).keyIDFromThumbprint(true).generate();
+            }
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Error generating JWT signing key", e);
+        }
+
+        JwtSigningKeyEntity entity = new JwtSigningKeyEntity();
+        entity.setKid(jwk.getKeyID());
+        entity.setAlgorithm(algorithm.getName());
+        entity.setKeyMaterial(encryptor.encrypt(jwk));
+        entity.setStatus(SigningKeyStatus.VERIFY_ONLY);
+        entity.setActivateAfter(activateAfter);
+        return entity;
+    }
+}
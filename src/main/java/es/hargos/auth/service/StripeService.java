@@ -47,6 +47,7 @@ public class StripeService {
     private final UserRepository userRepository;
     private final AppRepository appRepository;
     private final UserTenantRoleRepository userTenantRoleRepository;
+    private final TenantClaimCacheService tenantClaimCacheService;
     private final RestTemplate restTemplate;
     private final ApplicationEventPublisher eventPublisher;
 
@@ -380,6 +381,7 @@ public class StripeService {
                     .role(Role.TENANT_ADMIN.name())
                     .build();
             userTenantRoleRepository.save(userTenantRole);
+            tenantClaimCacheService.evict(user.getId());
             log.info("Assigned user {} as TENANT_ADMIN for tenant: {}", user.getEmail(), tenantName);
         } else {
             log.info("User {} already assigned to tenant: {} (webhook retry)", user.getEmail(), tenantName);
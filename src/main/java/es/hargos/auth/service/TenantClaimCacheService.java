@@ -0,0 +1,88 @@
+package es.hargos.auth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.repository.UserTenantRoleRepository;
+import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.TenantClaimFragment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Claim de tenants pre-construido por usuario, para que login y refresh no tengan que hacer
+ * el join user_tenant_roles + tenants + apps ni reconstruir la lista del claim en cada token.
+ *
+ * Cualquier cambio en los UserTenantRoleEntity de un usuario tiene que llamar a {@link #evict(Long)},
+ * y un cambio de nombre o el borrado de un tenant a {@link #evictAll()}. La invalidación se repite
+ * al hacer commit: un refresh concurrente que haya leído los roles antiguos antes del commit no
+ * deja su fragmento en la cache (Caffeine espera a que termine esa carga antes de invalidar).
+ * La cache es local a la instancia: las demás no reciben la invalidación y pueden seguir emitiendo el
+ * claim anterior hasta que caduque. Por eso el TTL es por defecto el del access token: tras un cambio de
+ * roles el claim antiguo dura como mucho lo mismo que ya dura en los access tokens emitidos antes del cambio.
+ */
+@Service
+public class TenantClaimCacheService {
+
+    private final UserTenantRoleRepository userTenantRoleRepository;
+    private final JwtUtil jwtUtil;
+    private final Cache<Long, TenantClaimFragment> fragments;
+
+    public TenantClaimCacheService(UserTenantRoleRepository userTenantRoleRepository,
+                                   JwtUtil jwtUtil,
+                                   @Value("${app.tenant-claim-cache.ttl-ms:${jwt.access-token-expiration-ms}}") long ttlMs,
+                                   @Value("${app.tenant-claim-cache.max-size:100000}") long maxSize) {
+        this.userTenantRoleRepository = userTenantRoleRepository;
+        this.jwtUtil = jwtUtil;
+        this.fragments = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Claim de tenants del usuario; solo consulta la base de datos si no está en cache
+     */
+    public TenantClaimFragment getFragment(UserEntity user) {
+        return fragments.get(user.getId(),
+                userId -> jwtUtil.buildTenantClaimFragment(userTenantRoleRepository.findByUserWithTenantAndApp(user)));
+    }
+
+    /**
+     * Invalida el claim de un usuario (se han añadido, cambiado o quitado roles suyos)
+     */
+    public void evict(Long userId) {
+        fragments.invalidate(userId);
+        afterCommit(() -> fragments.invalidate(userId));
+    }
+
+    /**
+     * Invalida todos los claims (renombrado o borrado de un tenant: los nombres viajan en el claim completo)
+     */
+    public void evictAll() {
+        fragments.invalidateAll();
+        afterCommit(fragments::invalidateAll);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Número aproximado de usuarios en la cache (útil para monitoreo)
+     */
+    public long size() {
+        return fragments.estimatedSize();
+    }
+}
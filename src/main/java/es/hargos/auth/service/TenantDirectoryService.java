@@ -0,0 +1,63 @@
+package es.hargos.auth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import es.hargos.auth.dto.response.TenantNameResponse;
+import es.hargos.auth.repository.TenantRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Nombres de tenant y app por tenantId, para tokens con el claim de tenants compacto
+ * (que solo lleva ids numéricos).
+ *
+ * Cache Caffeine con carga por lotes: una sola consulta para todos los ids que falten.
+ */
+@Service
+public class TenantDirectoryService {
+
+    private final TenantRepository tenantRepository;
+    private final Cache<Long, TenantNameResponse> namesCache;
+
+    public TenantDirectoryService(TenantRepository tenantRepository) {
+        this.tenantRepository = tenantRepository;
+        this.namesCache = Caffeine.newBuilder()
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .maximumSize(50_000)
+                .build();
+    }
+
+    /**
+     * Nombres de los tenants indicados. Los ids que no existen no aparecen en el resultado.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, TenantNameResponse> getNames(Collection<Long> tenantIds) {
+        return namesCache.getAll(tenantIds, this::loadNames);
+    }
+
+    private Map<Long, TenantNameResponse> loadNames(Set<? extends Long> tenantIds) {
+        return tenantRepository.findAllWithAppByIdIn(Set.copyOf(tenantIds)).stream()
+                .collect(Collectors.toMap(
+                        tenant -> tenant.getId(),
+                        tenant -> new TenantNameResponse(
+                                tenant.getId(),
+                                tenant.getName(),
+                                tenant.getApp().getId(),
+                                tenant.getApp().getName()
+                        )
+                ));
+    }
+
+    /**
+     * Invalida los nombres de un tenant (al renombrarlo o eliminarlo)
+     */
+    public void evict(Long tenantId) {
+        namesCache.invalidate(tenantId);
+    }
+}
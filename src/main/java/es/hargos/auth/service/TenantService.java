@@ -32,6 +32,8 @@ public class TenantService {
     private final TenantWarehouseConfigRepository tenantWarehouseConfigRepository;
     private final TenantFleetConfigRepository tenantFleetConfigRepository;
     private final RiTrackClient riTrackClient;
+    private final TenantDirectoryService tenantDirectoryService;
+    private final TenantClaimCacheService tenantClaimCacheService;
 
     @Transactional
     public TenantResponse createTenant(CreateTenantRequest request) {
@@ -95,6 +97,7 @@ public class TenantService {
                 adminRole.setTenant(tenant);
                 adminRole.setRole("TENANT_ADMIN");
                 userTenantRoleRepository.save(adminRole);
+                tenantClaimCacheService.evict(adminUser.getId());
                 logger.info("Usuario {} asignado como TENANT_ADMIN del tenant {}", adminUser.getEmail(), tenant.getId());
             } else {
                 logger.warn("Usuario {} ya estaba asignado al tenant {}", adminUser.getEmail(), tenant.getId());
@@ -151,6 +154,8 @@ public class TenantService {
         }
 
         tenantRepository.delete(tenant);
+        tenantDirectoryService.evict(id);
+        tenantClaimCacheService.evictAll();
         logger.info("Tenant {} eliminado de HargosAuth", id);
     }
 
@@ -176,6 +181,7 @@ public class TenantService {
         response.setName(tenant.getName());
         response.setDescription(tenant.getDescription());
         response.setAccountLimit(tenant.getAccountLimit());
+        response.setMaxSessionsPerUser(tenant.getMaxSessionsPerUser());
         response.setCurrentAccountCount(currentAccountCount);
         response.setIsActive(tenant.getIsActive());
         response.setCreatedAt(tenant.getCreatedAt());
@@ -255,7 +261,7 @@ public class TenantService {
     }
 
     /**
-     * Actualiza la información básica de un tenant (name, description, accountLimit)
+     * Actualiza la información básica de un tenant (name, description, accountLimit, maxSessionsPerUser)
      */
     @Transactional
     public TenantResponse updateTenant(Long id, UpdateTenantRequest request) {
@@ -275,7 +281,13 @@ public class TenantService {
             tenant.setAccountLimit(request.getAccountLimit());
         }
 
+        if (request.getMaxSessionsPerUser() != null) {
+            tenant.setMaxSessionsPerUser(request.getMaxSessionsPerUser());
+        }
+
         tenant = tenantRepository.save(tenant);
+        tenantDirectoryService.evict(id);
+        tenantClaimCacheService.evictAll();
         return mapToResponse(tenant);
     }
 
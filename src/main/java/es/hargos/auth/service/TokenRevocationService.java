@@ -0,0 +1,261 @@
+package es.hargos.auth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import es.hargos.auth.dto.response.RevocationEventResponse;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.repository.RevokedAccessTokenRepository;
+import es.hargos.auth.repository.TokenEpochChangeRepository;
+import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.util.VerifiedToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice en memoria de access tokens revocados, indexado por JTI.
+ *
+ * Sustituye la consulta a user_sessions que JwtAuthenticationFilter hacía en cada request:
+ * - Se alimenta cuando una sesión se revoca (logout, revocación por el usuario o por admin,
+ *   límite de sesiones en login) o cuando un refresh sustituye el JTI de la sesión
+ * - Cada entrada expira tras el TTL del access token: pasado ese tiempo el token ya no
+ *   pasaría la validación de expiración y no hace falta recordarlo
+ *
+ * Para revocar todo lo de un usuario (revocación masiva por admin, desactivación, reset de contraseña)
+ * se incrementa su token_epoch: los tokens llevan el epoch con el que se emitieron (claim "tep")
+ * y cualquier token con un epoch menor al actual queda revocado sin tocar sus sesiones una a una.
+ *
+ * Cada revocación se guarda, en la transacción que revoca, en el registro de revocaciones compartido
+ * (revoked_access_tokens y token_epoch_changes, ordenados por auth.revocation_seq). La instancia que
+ * revoca la aplica en cuanto hace commit; las demás la leen en el siguiente sync (cada
+ * app.revocation-sync.interval-ms). Al arrancar, el índice se reconstruye desde ese mismo registro.
+ */
+@Service
+@Slf4j
+public class TokenRevocationService {
+
+    // Filas del registro leídas por consulta en sync
+    static final int SYNC_BATCH_SIZE = 10_000;
+
+    /**
+     * Fila del registro de revocaciones: un JTI revocado o un incremento de token_epoch.
+     * settled: ninguna transacción pendiente puede añadir ya una fila con un seq menor.
+     */
+    record LogEntry(long seq, String jti, Long userId, Integer tokenEpoch, LocalDateTime occurredAt, boolean settled) {
+
+        static LogEntry of(Object[] row) {
+            Object occurredAt = row[4];
+            return new LogEntry(((Number) row[0]).longValue(), (String) row[1],
+                    row[2] != null ? ((Number) row[2]).longValue() : null,
+                    row[3] != null ? ((Number) row[3]).intValue() : null,
+                    occurredAt instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) occurredAt,
+                    Boolean.TRUE.equals(row[5]));
+        }
+    }
+
+    private final UserSessionRepository userSessionRepository;
+    private final RevokedAccessTokenRepository revokedAccessTokenRepository;
+    private final TokenEpochChangeRepository tokenEpochChangeRepository;
+    private final UserRepository userRepository;
+    private final RevocationFeedService revocationFeedService;
+    private final Duration accessTokenTtl;
+    private final double settleSeconds;
+
+    // Sin maximumSize a propósito: desalojar una entrada por tamaño volvería a aceptar un token revocado
+    private final Cache<String, Boolean> revokedJtis;
+
+    // userId -> token_epoch actual. Solo contiene usuarios con epoch > 0 (el resto no tiene nada revocado)
+    private final Map<Long, Integer> userEpochs = new ConcurrentHashMap<>();
+
+    // Hasta este seq el registro ya está asentado y aplicado; sync relee siempre lo posterior
+    private long settledSeq; // Protegido por sync (synchronized)
+
+    public TokenRevocationService(UserSessionRepository userSessionRepository,
+                                  RevokedAccessTokenRepository revokedAccessTokenRepository,
+                                  TokenEpochChangeRepository tokenEpochChangeRepository,
+                                  UserRepository userRepository,
+                                  RevocationFeedService revocationFeedService,
+                                  @Value("${jwt.access-token-expiration-ms}") Long accessTokenExpiration,
+                                  @Value("${app.revocation-sync.settle-ms:5000}") long settleMs) {
+        this.userSessionRepository = userSessionRepository;
+        this.revokedAccessTokenRepository = revokedAccessTokenRepository;
+        this.tokenEpochChangeRepository = tokenEpochChangeRepository;
+        this.userRepository = userRepository;
+        this.revocationFeedService = revocationFeedService;
+        this.accessTokenTtl = Duration.ofMillis(accessTokenExpiration);
+        this.settleSeconds = settleMs / 1000.0;
+        this.revokedJtis = Caffeine.newBuilder()
+                .expireAfterWrite(accessTokenTtl)
+                .build();
+    }
+
+    /**
+     * Marca como revocado el access token con este JTI y lo guarda en revoked_access_tokens.
+     * El token se emitió como muy tarde ahora, así que expira como muy tarde dentro de un TTL.
+     * El índice en memoria se actualiza cuando la transacción del caller hace commit; las demás
+     * instancias y el feed la reciben desde el registro (sync): una revocación que se deshace no llega.
+     */
+    public void revoke(String jti) {
+        if (jti != null) {
+            revokedAccessTokenRepository.insertIfAbsent(jti, LocalDateTime.now().plus(accessTokenTtl));
+            afterCommit(() -> revokedJtis.put(jti, Boolean.TRUE));
+        }
+    }
+
+    /**
+     * Marca como revocados varios access tokens a la vez
+     */
+    public void revokeAll(Collection<String> jtis) {
+        jtis.forEach(this::revoke);
+    }
+
+    /**
+     * Indica si el access token con este JTI fue revocado. No toca la base de datos.
+     */
+    public boolean isRevoked(String jti) {
+        return jti != null && revokedJtis.getIfPresent(jti) != null;
+    }
+
+    /**
+     * Indica si el access token fue revocado, por su JTI o por un token_epoch posterior a su emisión.
+     * No toca la base de datos.
+     */
+    public boolean isRevoked(VerifiedToken token) {
+        if (isRevoked(token.getJti())) {
+            return true;
+        }
+        Long userId = token.getUserId();
+        return userId != null && token.getTokenEpoch() < userEpochs.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Invalida todos los access y refresh tokens emitidos hasta ahora para el usuario.
+     * Incrementa token_epoch en la entidad (el caller la guarda en su transacción), lo anota en
+     * token_epoch_changes para las demás instancias y actualiza el mapa en memoria cuando esa
+     * transacción hace commit.
+     */
+    public void bumpTokenEpoch(UserEntity user) {
+        int epoch = user.getTokenEpoch() + 1;
+        user.setTokenEpoch(epoch);
+        tokenEpochChangeRepository.insert(user.getId(), epoch, LocalDateTime.now().plus(accessTokenTtl));
+        afterCommit(() -> userEpochs.merge(user.getId(), epoch, Math::max));
+    }
+
+    /**
+     * Ejecuta action cuando la transacción en curso hace commit (y no si se deshace); sin transacción, ya
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Reconstruye el índice al arrancar: todo el registro de revocaciones aún vigente (sync desde el
+     * principio), los token_epoch de users y las sesiones revocadas con actividad dentro del TTL
+     * (revocaciones anteriores a revoked_access_tokens).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void bootstrap() {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> legacyJtis = userSessionRepository.findRevokedJtisWithActivitySince(now.minus(accessTokenTtl));
+        legacyJtis.forEach(jti -> revokedJtis.put(jti, Boolean.TRUE));
+
+        List<Object[]> epochs = userRepository.findRaisedTokenEpochs();
+        for (Object[] row : epochs) {
+            userEpochs.merge((Long) row[0], (Integer) row[1], Math::max);
+        }
+
+        int logEntries = sync();
+        log.info("Token revocation index bootstrapped with {} revocation log entries, {} legacy session JTIs " +
+                "and {} user token epochs", logEntries, legacyJtis.size(), epochs.size());
+    }
+
+    /**
+     * Aplica las revocaciones hechas en cualquier instancia: lee el registro compartido a partir del
+     * último seq asentado y aplica cada fila (aplicar dos veces no cambia nada). Las filas que se
+     * asientan se publican, en orden, a los suscriptores del feed (RevocationFeedService).
+     *
+     * Un seq se asigna al insertar pero la fila solo se ve tras el commit, así que una transacción lenta
+     * puede hacer visible un seq menor que otro ya leído. Por eso el watermark solo avanza sobre las filas
+     * asentadas (con más de app.revocation-sync.settle-ms) y las recientes se releen en cada sync.
+     * Las transacciones que revocan (login, refresh, logout, acciones de admin) duran mucho menos.
+     *
+     * @return Número de filas leídas
+     */
+    @Scheduled(fixedDelayString = "${app.revocation-sync.interval-ms:2000}",
+               initialDelayString = "${app.revocation-sync.interval-ms:2000}")
+    public synchronized int sync() {
+        int read = 0;
+        List<RevocationEventResponse> settled = new ArrayList<>();
+        try {
+            while (true) {
+                List<Object[]> rows = revokedAccessTokenRepository.findRevocationLogAfter(
+                        settledSeq, LocalDateTime.now(), settleSeconds, SYNC_BATCH_SIZE);
+                read += rows.size();
+
+                boolean settledPrefix = true;
+                for (Object[] row : rows) {
+                    LogEntry entry = LogEntry.of(row);
+                    apply(entry);
+                    if (settledPrefix && entry.settled()) {
+                        settledSeq = entry.seq();
+                        settled.add(RevocationFeedService.toEvent(entry));
+                    } else {
+                        settledPrefix = false;
+                    }
+                }
+
+                // Página incompleta, o filas sin asentar: el resto se lee en el siguiente sync
+                if (rows.size() < SYNC_BATCH_SIZE || !settledPrefix) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not sync the revocation log after seq {}, retrying on the next run", settledSeq, e);
+        }
+        if (!settled.isEmpty()) {
+            revocationFeedService.publish(settled);
+        }
+        return read;
+    }
+
+    private void apply(LogEntry entry) {
+        if (entry.jti() != null) {
+            revokedJtis.put(entry.jti(), Boolean.TRUE);
+        } else if (entry.userId() != null && entry.tokenEpoch() != null) {
+            userEpochs.merge(entry.userId(), entry.tokenEpoch(), Math::max);
+        }
+    }
+
+    /**
+     * Número aproximado de JTIs en el índice (útil para monitoreo)
+     */
+    public long size() {
+        return revokedJtis.estimatedSize();
+    }
+}
@@ -0,0 +1,155 @@
+package es.hargos.auth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Diccionario de User-Agents (auth.user_agents): cada sesión guarda el id del User-Agent en lugar
+ * del texto, que se repite en millones de filas.
+ *
+ * - idOf: id de un User-Agent, dándolo de alta si es nuevo
+ * - userAgent: texto de un id
+ *
+ * Las dos direcciones se cachean en memoria (cachés Caffeine acotadas por app.user-agents.cache-size):
+ * el tráfico real tiene pocos User-Agents distintos, así que casi nunca se consulta la tabla.
+ *
+ * Los ids no cambian, pero purgeUnused borra los que ya no referencia ninguna sesión (lo llama
+ * SessionCleanupService tras borrar particiones) y los saca de las dos cachés. Las demás instancias
+ * no se enteran, así que cada entrada caduca tras app.user-agents.cache-ttl-ms sin usarse: un id usado
+ * dentro de ese plazo tiene una sesión de ese plazo, más reciente que cualquier partición borrada
+ * (la retención nunca es menor de 8 días), y por tanto no se purga.
+ *
+ * El alta va en la transacción del caller (INSERT ... ON CONFLICT DO NOTHING), sin abrir otra conexión
+ * mientras el login tiene la suya y el bloqueo del usuario. Un id recién insertado solo se cachea cuando
+ * esa transacción hace commit: si hace rollback, la fila no existe y la siguiente petición la vuelve a dar de alta.
+ */
+@Service
+public class UserAgentDictionary {
+
+    static final int MAX_LENGTH = 500;
+
+    private static final String FIND_ID_SQL = "SELECT id FROM auth.user_agents WHERE user_agent = ?";
+
+    // Sin fila devuelta si otra transacción lo insertó a la vez: entonces se vuelve a leer con FIND_ID_SQL
+    private static final String INSERT_SQL = "INSERT INTO auth.user_agents (user_agent) VALUES (?) " +
+            "ON CONFLICT (user_agent) DO NOTHING RETURNING id";
+
+    private static final String FIND_USER_AGENT_SQL = "SELECT user_agent FROM auth.user_agents WHERE id = ?";
+
+    // SKIP LOCKED salta las filas que la foreign key de una sesión que se está insertando tiene bloqueadas
+    private static final String PURGE_UNUSED_SQL = "WITH unused AS ( " +
+            "SELECT ua.id FROM auth.user_agents ua " +
+            "WHERE NOT EXISTS (SELECT 1 FROM auth.user_sessions s WHERE s.user_agent_id = ua.id) " +
+            "FOR UPDATE SKIP LOCKED) " +
+            "DELETE FROM auth.user_agents ua USING unused u WHERE ua.id = u.id " +
+            "RETURNING ua.id, ua.user_agent";
+
+    private record Entry(Integer id, String userAgent) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, Integer> idsByUserAgent;
+    private final Cache<Integer, String> userAgentsById;
+
+    public UserAgentDictionary(JdbcTemplate jdbcTemplate,
+                               @Value("${app.user-agents.cache-size:10000}") long cacheSize,
+                               @Value("${app.user-agents.cache-ttl-ms:86400000}") long cacheTtlMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idsByUserAgent = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(Duration.ofMillis(cacheTtlMs))
+                .build();
+        this.userAgentsById = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(Duration.ofMillis(cacheTtlMs))
+                .build();
+    }
+
+    /**
+     * Id del User-Agent (recortado a 500 caracteres), dándolo de alta si no existe. null si no hay User-Agent.
+     */
+    public Integer idOf(String userAgent) {
+        if (userAgent == null || userAgent.isEmpty()) {
+            return null;
+        }
+        String key = userAgent.length() > MAX_LENGTH ? userAgent.substring(0, MAX_LENGTH) : userAgent;
+        Integer cached = idsByUserAgent.getIfPresent(key);
+        return cached != null ? cached : findOrInsert(key);
+    }
+
+    /**
+     * Texto del User-Agent con ese id, o null
+     */
+    public String userAgent(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        return userAgentsById.get(id, key -> {
+            List<String> found = jdbcTemplate.queryForList(FIND_USER_AGENT_SQL, String.class, key);
+            return found.isEmpty() ? null : found.get(0);
+        });
+    }
+
+    /**
+     * Borra los User-Agents que no referencia ninguna sesión y los saca de las cachés
+     *
+     * @return Número de User-Agents eliminados
+     */
+    public int purgeUnused() {
+        List<Entry> purged = jdbcTemplate.query(PURGE_UNUSED_SQL,
+                (rs, rowNum) -> new Entry(rs.getInt(1), rs.getString(2)));
+        for (Entry entry : purged) {
+            userAgentsById.invalidate(entry.id());
+            idsByUserAgent.invalidate(entry.userAgent());
+        }
+        return purged.size();
+    }
+
+    private Integer findOrInsert(String userAgent) {
+        Integer existing = findId(userAgent);
+        if (existing != null) {
+            cache(userAgent, existing);
+            return existing;
+        }
+
+        List<Integer> inserted = jdbcTemplate.queryForList(INSERT_SQL, Integer.class, userAgent);
+        if (inserted.isEmpty()) {
+            // Lo insertó otra transacción que ya hizo commit
+            Integer concurrent = findId(userAgent);
+            if (concurrent != null) {
+                cache(userAgent, concurrent);
+            }
+            return concurrent;
+        }
+
+        Integer id = inserted.get(0);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache(userAgent, id);
+                }
+            });
+        } else {
+            cache(userAgent, id);
+        }
+        return id;
+    }
+
+    private Integer findId(String userAgent) {
+        List<Integer> found = jdbcTemplate.queryForList(FIND_ID_SQL, Integer.class, userAgent);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private void cache(String userAgent, Integer id) {
+        idsByUserAgent.put(userAgent, id);
+        userAgentsById.put(id, userAgent);
+    }
+}
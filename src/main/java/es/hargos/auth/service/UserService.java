@@ -13,6 +13,7 @@ import es.hargos.auth.exception.DuplicateResourceException;
 import es.hargos.auth.exception.ResourceNotFoundException;
 import es.hargos.auth.repository.TenantRepository;
 import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.repository.UserSessionRepository;
 import es.hargos.auth.repository.UserTenantRoleRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -30,6 +31,9 @@ public class UserService {
     private final TenantRepository tenantRepository;
     private final UserTenantRoleRepository userTenantRoleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserSessionRepository userSessionRepository;
+    private final TokenRevocationService tokenRevocationService;
+    private final TenantClaimCacheService tenantClaimCacheService;
 
     @Transactional
     public UserResponse createUser(CreateUserRequest request) {
@@ -123,6 +127,7 @@ public class UserService {
         userTenantRole.setRole(request.getRole());
 
         userTenantRoleRepository.save(userTenantRole);
+        tenantClaimCacheService.evict(user.getId());
 
         List<UserTenantRoleEntity> roles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
         return mapToUserResponse(user, roles);
@@ -133,7 +138,12 @@ public class UserService {
         UserEntity user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
 
+        // Las sesiones se borran en cascada: revocar antes sus access tokens vigentes
+        userSessionRepository.findByUserAndIsRevokedOrderByCreatedAtAsc(user, false)
+                .forEach(session -> tokenRevocationService.revoke(session.getAccessTokenJti()));
+
         userRepository.delete(user);
+        tenantClaimCacheService.evict(userId);
     }
 
     /**
@@ -160,6 +170,7 @@ public class UserService {
 
         // Solo eliminar la relación, no el usuario
         userTenantRoleRepository.delete(userTenantRole);
+        tenantClaimCacheService.evict(userId);
     }
 
     @Transactional
@@ -168,6 +179,10 @@ public class UserService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuario no encontrado"));
 
         user.setIsActive(isActive);
+        if (!isActive) {
+            // Un usuario desactivado pierde al instante todos sus access y refresh tokens
+            tokenRevocationService.bumpTokenEpoch(user);
+        }
         userRepository.save(user);
 
         List<UserTenantRoleEntity> roles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
@@ -298,6 +313,7 @@ public class UserService {
 
         // Eliminar la relación
         userTenantRoleRepository.delete(userTenantRole);
+        tenantClaimCacheService.evict(userId);
 
         // Devolver usuario actualizado
         List<UserTenantRoleEntity> remainingRoles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
@@ -323,6 +339,7 @@ public class UserService {
         // Actualizar rol
         userTenantRole.setRole(request.getRole());
         userTenantRoleRepository.save(userTenantRole);
+        tenantClaimCacheService.evict(userId);
 
         // Devolver usuario actualizado
         List<UserTenantRoleEntity> userTenantRoles = userTenantRoleRepository.findByUserWithTenantAndApp(user);
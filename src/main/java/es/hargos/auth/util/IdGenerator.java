@@ -0,0 +1,99 @@
+package es.hargos.auth.util;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Generador central de identificadores y tokens.
+ *
+ * - {@link #newUuid()}: UUIDv7 (RFC 9562), 48 bits de timestamp en ms + 74 bits aleatorios.
+ *   Ordenado por tiempo: las inserciones en índices btree (access_token_jti) van al final del
+ *   índice en lugar de repartirse por todas las páginas como con UUID.randomUUID()
+ * - {@link #newToken()}: token secreto ordenado por tiempo (timestamp en hex + 128 bits aleatorios)
+ *   para tokens de un solo uso que se buscan por índice (reset de contraseña, invitaciones)
+ * - {@link #newSecret(int)}: secreto aleatorio sin orden (solo se guarda su hash)
+ *
+ * La entropía sale de un SecureRandom por hilo con un buffer de bytes pre-generados:
+ * no hay contención sobre un SecureRandom compartido y se pide entropía en bloques.
+ */
+public final class IdGenerator {
+
+    private static final int BUFFER_SIZE = 512;
+    private static final int TOKEN_RANDOM_BYTES = 16;
+
+    private static final ThreadLocal<EntropyBuffer> ENTROPY = ThreadLocal.withInitial(EntropyBuffer::new);
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private IdGenerator() {
+    }
+
+    /**
+     * UUIDv7: ordenado por milisegundo de creación e imposible de adivinar (74 bits aleatorios)
+     */
+    public static UUID newUuid() {
+        long millis = System.currentTimeMillis();
+        EntropyBuffer entropy = ENTROPY.get();
+        long randA = entropy.nextLong();
+        long randB = entropy.nextLong();
+
+        long mostSigBits = (millis << 16) | 0x7000L | (randA & 0x0FFFL);        // versión 7
+        long leastSigBits = (randB & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // variante RFC 9562
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Token secreto ordenado por tiempo: 12 caracteres hex del timestamp en ms seguidos de
+     * 128 bits aleatorios en base64url (34 caracteres, seguro en URLs)
+     */
+    public static String newToken() {
+        byte[] random = new byte[TOKEN_RANDOM_BYTES];
+        ENTROPY.get().nextBytes(random);
+        return String.format("%012x", System.currentTimeMillis()) + ENCODER.encodeToString(random);
+    }
+
+    /**
+     * Secreto aleatorio de la longitud indicada en base64url
+     */
+    public static String newSecret(int bytes) {
+        byte[] random = new byte[bytes];
+        ENTROPY.get().nextBytes(random);
+        return ENCODER.encodeToString(random);
+    }
+
+    /**
+     * Bytes aleatorios pre-generados de un hilo. Solo lo usa su hilo, así que no necesita sincronización.
+     */
+    private static final class EntropyBuffer {
+
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+
+        long nextLong() {
+            refillIfNeeded(Long.BYTES);
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        void nextBytes(byte[] out) {
+            if (out.length > BUFFER_SIZE) {
+                random.nextBytes(out);
+                return;
+            }
+            refillIfNeeded(out.length);
+            System.arraycopy(buffer, position, out, 0, out.length);
+            position += out.length;
+        }
+
+        private void refillIfNeeded(int needed) {
+            if (BUFFER_SIZE - position < needed) {
+                random.nextBytes(buffer);
+                position = 0;
+            }
+        }
+    }
+}
@@ -1,38 +1,105 @@
 package es.hargos.auth.util;
 
 import com.nimbusds.jose.*;
-import com.nimbusds.jose.crypto.MACSigner;
-import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
-import es.hargos.auth.dto.response.TenantRoleResponse;
 import es.hargos.auth.entity.UserEntity;
 import es.hargos.auth.entity.UserTenantRoleEntity;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Component
+@Slf4j
 public class JwtUtil {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private final Long accessTokenExpiration;
+    private final boolean compactTenantClaim;
 
-    @Value("${jwt.access-token-expiration-ms}")
-    private Long accessTokenExpiration;
+    // Material criptográfico inmutable y thread-safe: se deriva una sola vez al arrancar
+    // en lugar de reconstruir signer/verifier/cabecera en cada login, refresh y request
+    private final SigningKey legacyKey;       // HS256 sin kid (jwt.secret)
+    private final SigningKey configuredKey;   // Clave de jwt.signing-algorithm, firma mientras no haya anillo rotado
+
+    // Anillo de claves indexado por kid. SigningKeyRotationService lo sustituye entero al rotar
+    private volatile KeyRing keyRing;
+
+    public JwtUtil(@Value("${jwt.secret}") String secret,
+                   @Value("${jwt.access-token-expiration-ms}") Long accessTokenExpiration,
+                   @Value("${jwt.signing-algorithm:HS256}") String signingAlgorithm,
+                   @Value("${jwt.ec-private-jwk:}") String ecPrivateJwk,
+                   @Value("${jwt.tenant-claim-format:full}") String tenantClaimFormat) {
+        this.accessTokenExpiration = accessTokenExpiration;
+        this.compactTenantClaim = "compact".equalsIgnoreCase(tenantClaimFormat);
+
+        try {
+            this.legacyKey = SigningKey.hmac(null, secret.getBytes(StandardCharsets.UTF_8));
+        } catch (JOSEException e) {
+            throw new IllegalStateException("jwt.secret no es una clave HS256 válida (mínimo 256 bits)", e);
+        }
+
+        if (JWSAlgorithm.ES256.getName().equalsIgnoreCase(signingAlgorithm)) {
+            this.configuredKey = loadEcKey(ecPrivateJwk);
+        } else if (JWSAlgorithm.HS256.getName().equalsIgnoreCase(signingAlgorithm)) {
+            this.configuredKey = legacyKey;
+        } else {
+            throw new IllegalStateException("jwt.signing-algorithm no soportado: " + signingAlgorithm + " (HS256 o ES256)");
+        }
+        this.keyRing = new KeyRing(configuredKey, List.of());
+    }
+
+    /**
+     * Carga la clave ES256 desde jwt.ec-private-jwk (JWK en JSON con la parte privada).
+     * Si no está configurada se genera una efímera: válido para desarrollo, pero los tokens
+     * emitidos dejan de validar al reiniciar el servicio.
+     */
+    private static SigningKey loadEcKey(String ecPrivateJwk) {
+        try {
+            ECKey key;
+            if (ecPrivateJwk == null || ecPrivateJwk.isBlank()) {
+                log.warn("jwt.ec-private-jwk not configured: generating an ephemeral ES256 key");
+                key = new ECKeyGenerator(Curve.P_256).generate();
+            } else {
+                key = ECKey.parse(ecPrivateJwk);
+            }
+            if (!key.isPrivate()) {
+                throw new IllegalStateException("jwt.ec-private-jwk debe incluir la clave privada");
+            }
+            return SigningKey.ec(key);
+        } catch (JOSEException | ParseException e) {
+            throw new IllegalStateException("jwt.ec-private-jwk no es una clave EC P-256 válida", e);
+        }
+    }
 
     /**
      * Genera un access token con un JTI único
      * @return Array: [0] = token JWT, [1] = JTI generado
      */
     public String[] generateAccessTokenWithJti(UserEntity user, List<UserTenantRoleEntity> userTenantRoles) {
+        return generateAccessTokenWithJti(user, buildTenantClaimFragment(userTenantRoles));
+    }
+
+    /**
+     * Genera un access token con un JTI único a partir de un claim de tenants ya construido
+     * (ver {@link es.hargos.auth.service.TenantClaimCacheService})
+     * @return Array: [0] = token JWT, [1] = JTI generado
+     */
+    public String[] generateAccessTokenWithJti(UserEntity user, TenantClaimFragment tenantClaim) {
         try {
             // Generar JTI único
-            String jti = UUID.randomUUID().toString();
+            String jti = IdGenerator.newUuid().toString(); // UUIDv7: ordenado por tiempo
 
             JWTClaimsSet.Builder claimsBuilder = new JWTClaimsSet.Builder()
                     .jwtID(jti) // JWT ID único
@@ -40,39 +107,57 @@ public class JwtUtil {
                     .claim("userId", user.getId())
                     .claim("email", user.getEmail())
                     .claim("fullName", user.getFullName())
+                    .claim("tep", user.getTokenEpoch())
                     .issueTime(new Date())
                     .expirationTime(new Date(System.currentTimeMillis() + accessTokenExpiration));
 
             // Add tenant roles
-            List<Object> tenants = userTenantRoles.stream()
-                    .map(utr -> {
-                        return java.util.Map.of(
-                                "tenantId", utr.getTenant().getId(),
-                                "tenantName", utr.getTenant().getName(),
-                                "appName", utr.getTenant().getApp().getName(),
-                                "role", utr.getRole()
-                        );
-                    })
-                    .collect(Collectors.toList());
-
-            claimsBuilder.claim("tenants", tenants);
-
-            JWTClaimsSet claimsSet = claimsBuilder.build();
-
-            SignedJWT signedJWT = new SignedJWT(
-                    new JWSHeader(JWSAlgorithm.HS256),
-                    claimsSet
-            );
-
-            JWSSigner signer = new MACSigner(secret.getBytes());
-            signedJWT.sign(signer);
-
-            return new String[]{signedJWT.serialize(), jti};
+            tenantClaim.writeTo(claimsBuilder);
+
+            return new String[]{sign(claimsBuilder.build()), jti};
         } catch (Exception e) {
             throw new RuntimeException("Error generating JWT token", e);
         }
     }
 
+    /**
+     * Construye el claim de tenants en el formato configurado (jwt.tenant-claim-format)
+     */
+    public TenantClaimFragment buildTenantClaimFragment(List<UserTenantRoleEntity> userTenantRoles) {
+        return TenantClaimCodec.buildFragment(userTenantRoles, compactTenantClaim);
+    }
+
+    /**
+     * Camino rápido de firma con la clave activa (ver {@link SigningKey#sign(JWTClaimsSet)})
+     */
+    String sign(JWTClaimsSet claimsSet) throws JOSEException {
+        return keyRing.getActive().sign(claimsSet);
+    }
+
+    /**
+     * Sustituye el anillo de claves. La clave configurada sigue verificando siempre,
+     * así los tokens emitidos antes de la primera rotación no se invalidan.
+     */
+    public void installKeyRing(SigningKey active, Collection<SigningKey> verifyOnly) {
+        List<SigningKey> verifyKeys = new ArrayList<>(verifyOnly);
+        verifyKeys.add(configuredKey);
+        this.keyRing = new KeyRing(active, verifyKeys);
+    }
+
+    /**
+     * kid de la clave que firma actualmente (null si es la HS256 legacy)
+     */
+    public String getActiveKeyId() {
+        return keyRing.getActive().getKeyId();
+    }
+
+    /**
+     * Claves públicas para /.well-known/jwks.json (vacío con HS256: la clave simétrica nunca se publica)
+     */
+    public JWKSet getPublicJwkSet() {
+        return keyRing.getPublicJwkSet();
+    }
+
     /**
      * Método legacy para compatibilidad (sin JTI)
      * @deprecated Usar generateAccessTokenWithJti() en su lugar
@@ -82,51 +167,41 @@ public class JwtUtil {
         return generateAccessTokenWithJti(user, userTenantRoles)[0];
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Parsea el token, verifica firma y expiración y decodifica los claims, todo en una sola pasada.
+     * @return el token verificado, o vacío si el token es inválido o ha expirado
+     */
+    public Optional<VerifiedToken> verify(String token) {
         try {
             SignedJWT signedJWT = SignedJWT.parse(token);
-            JWSVerifier verifier = new MACVerifier(secret.getBytes());
-
-            if (!signedJWT.verify(verifier)) {
-                return false;
+            SigningKey key = resolveKey(signedJWT.getHeader());
+            if (key == null || !signedJWT.verify(key.getVerifier())) {
+                return Optional.empty();
             }
 
-            Date expirationTime = signedJWT.getJWTClaimsSet().getExpirationTime();
-            return expirationTime.after(new Date());
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    public JWTClaimsSet getClaimsFromToken(String token) {
-        try {
-            SignedJWT signedJWT = SignedJWT.parse(token);
-            return signedJWT.getJWTClaimsSet();
-        } catch (Exception e) {
-            throw new RuntimeException("Error parsing JWT token", e);
-        }
-    }
-
-    public String getEmailFromToken(String token) {
-        return getClaimsFromToken(token).getSubject();
-    }
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+            Date expirationTime = claims.getExpirationTime();
+            if (expirationTime == null || !expirationTime.after(new Date())) {
+                return Optional.empty();
+            }
 
-    public Long getUserIdFromToken(String token) {
-        try {
-            return getClaimsFromToken(token).getLongClaim("userId");
+            return Optional.of(new VerifiedToken(claims));
         } catch (Exception e) {
-            return null;
+            return Optional.empty();
         }
     }
 
     /**
-     * Extrae el JTI (JWT ID) del token
+     * Selecciona la clave de verificación a partir de la cabecera. El algoritmo tiene que coincidir
+     * con el de la clave para evitar confusiones de algoritmo (p.ej. HS256 firmado con la clave pública).
+     * Los tokens HS256 sin kid (legacy) siguen validando aunque la clave activa sea otra.
      */
-    public String getJtiFromToken(String token) {
-        try {
-            return getClaimsFromToken(token).getJWTID();
-        } catch (Exception e) {
-            return null;
-        }
+    private SigningKey resolveKey(JWSHeader header) {
+        SigningKey key = header.getKeyID() == null ? legacyKey : keyRing.find(header.getKeyID());
+        return key != null && key.getAlgorithm().equals(header.getAlgorithm()) ? key : null;
+    }
+
+    public boolean validateToken(String token) {
+        return verify(token).isPresent();
     }
 }
@@ -0,0 +1,68 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Anillo inmutable de claves de firma indexado por kid.
+ *
+ * - La clave activa firma los tokens nuevos
+ * - El resto solo verifica: tokens emitidos con claves anteriores siguen validando hasta expirar
+ *   y las claves publicadas antes de activarse ya son conocidas por todas las instancias
+ *
+ * JwtUtil sustituye el anillo completo de forma atómica, así que las lecturas no necesitan sincronización.
+ */
+public final class KeyRing {
+
+    private final SigningKey active;
+    private final Map<String, SigningKey> keysById;
+    private final JWKSet publicJwkSet;
+
+    public KeyRing(SigningKey active, Collection<SigningKey> verifyOnly) {
+        Map<String, SigningKey> keys = new HashMap<>();
+        List<JWK> publicJwks = new ArrayList<>();
+        for (SigningKey key : verifyOnly) {
+            add(keys, publicJwks, key);
+        }
+        add(keys, publicJwks, active);
+
+        this.active = active;
+        this.keysById = Map.copyOf(keys);
+        this.publicJwkSet = new JWKSet(publicJwks);
+    }
+
+    private static void add(Map<String, SigningKey> keys, List<JWK> publicJwks, SigningKey key) {
+        // Las claves sin kid (HS256 legacy) no entran en el anillo: JwtUtil las resuelve aparte
+        if (key.getKeyId() != null && keys.put(key.getKeyId(), key) == null && key.getPublicJwk() != null) {
+            publicJwks.add(key.getPublicJwk());
+        }
+    }
+
+    public SigningKey getActive() {
+        return active;
+    }
+
+    /**
+     * Clave de verificación para un kid, o null si no está en el anillo
+     */
+    public SigningKey find(String keyId) {
+        return keysById.get(keyId);
+    }
+
+    /**
+     * Partes públicas de las claves asimétricas del anillo (activa y verify-only)
+     */
+    public JWKSet getPublicJwkSet() {
+        return publicJwkSet;
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+}
@@ -0,0 +1,108 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Clave de firma de access tokens con todo su material ya derivado:
+ * cabecera pre-serializada, signer y verifier (inmutables y thread-safe).
+ *
+ * - HS256: clave simétrica (jwt.secret), solo la puede verificar este servicio
+ * - ES256: par de claves EC P-256, la parte pública se publica en /.well-known/jwks.json
+ *   para que RiTrack y el resto de servicios verifiquen los tokens localmente
+ */
+public final class SigningKey {
+
+    private final String keyId;
+    private final JWSHeader header;
+    private final String encodedHeader;
+    private final JWSSigner signer;
+    private final JWSVerifier verifier;
+    private final JWK publicJwk;
+
+    private SigningKey(String keyId, JWSHeader header, JWSSigner signer, JWSVerifier verifier, JWK publicJwk) {
+        this.keyId = keyId;
+        this.header = header;
+        this.encodedHeader = header.toBase64URL().toString();
+        this.signer = signer;
+        this.verifier = verifier;
+        this.publicJwk = publicJwk;
+    }
+
+    /**
+     * Clave HMAC. Con keyId null la cabecera no lleva "kid" (formato de los tokens legacy).
+     */
+    public static SigningKey hmac(String keyId, byte[] secret) throws JOSEException {
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.HS256).keyID(keyId).build();
+        return new SigningKey(keyId, header, new MACSigner(secret), new MACVerifier(secret), null);
+    }
+
+    /**
+     * Clave EC P-256 (debe incluir la parte privada). El kid es el de la JWK o, si no tiene, su thumbprint.
+     */
+    public static SigningKey ec(ECKey key) throws JOSEException {
+        String keyId = key.getKeyID() != null ? key.getKeyID() : key.computeThumbprint().toString();
+        ECKey publicKey = new ECKey.Builder(key.toPublicJWK())
+                .keyID(keyId)
+                .algorithm(JWSAlgorithm.ES256)
+                .build();
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(keyId).build();
+        return new SigningKey(keyId, header, new ECDSASigner(key), new ECDSAVerifier(publicKey), publicKey);
+    }
+
+    /**
+     * Clave a partir de una JWK privada/secreta (claves rotadas guardadas en auth.jwt_signing_keys)
+     */
+    public static SigningKey fromJwk(JWK jwk) throws JOSEException {
+        if (jwk instanceof ECKey ecKey) {
+            return ec(ecKey);
+        }
+        if (jwk instanceof OctetSequenceKey octetKey) {
+            return hmac(octetKey.getKeyID(), octetKey.toByteArray());
+        }
+        throw new JOSEException("Tipo de JWK no soportado para firmar access tokens: " + jwk.getKeyType());
+    }
+
+    /**
+     * Firma los claims concatenando la cabecera pre-serializada con el payload,
+     * sin construir un SignedJWT. El resultado es idéntico a SignedJWT.sign() + serialize().
+     */
+    public String sign(JWTClaimsSet claimsSet) throws JOSEException {
+        String signingInput = encodedHeader + '.' + Base64URL.encode(claimsSet.toString());
+        Base64URL signature = signer.sign(header, signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + '.' + signature;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public JWSAlgorithm getAlgorithm() {
+        return header.getAlgorithm();
+    }
+
+    public JWSVerifier getVerifier() {
+        return verifier;
+    }
+
+    /**
+     * Parte pública de la clave, o null si es simétrica (nunca se publica)
+     */
+    public JWK getPublicJwk() {
+        return publicJwk;
+    }
+}
@@ -0,0 +1,86 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jose.EncryptionMethod;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.JWEHeader;
+import com.nimbusds.jose.JWEObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.DirectDecrypter;
+import com.nimbusds.jose.crypto.DirectEncrypter;
+import com.nimbusds.jose.jwk.JWK;
+
+import java.text.ParseException;
+import java.util.Base64;
+
+/**
+ * Cifrado de las claves de firma guardadas en auth.jwt_signing_keys.key_material.
+ *
+ * La clave (JWK con la parte privada/secreta) se guarda como JWE compacto con cifrado directo
+ * (dir + A256GCM) bajo la clave de cifrado jwt.key-rotation.encryption-key: 256 bits en base64,
+ * fuera de la base de datos (variable de entorno, gestor de secretos o KMS). Sin ella, quien lea la
+ * tabla o una copia de seguridad no puede firmar tokens.
+ *
+ * El kid de la clave de firma va en la cabecera del JWE, que está autenticada: el material de una
+ * fila copiado a otra no se descifra.
+ */
+public class SigningKeyEncryptor {
+
+    private static final String SIGNING_KID_HEADER = "sig_kid";
+
+    private final DirectEncrypter encrypter;
+    private final DirectDecrypter decrypter;
+
+    public SigningKeyEncryptor(String base64Key) {
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(base64Key.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("jwt.key-rotation.encryption-key no es base64 válido", e);
+        }
+        if (key.length != 32) {
+            throw new IllegalStateException("jwt.key-rotation.encryption-key debe tener 256 bits (32 bytes en base64)");
+        }
+        try {
+            this.encrypter = new DirectEncrypter(key);
+            this.decrypter = new DirectDecrypter(key);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("jwt.key-rotation.encryption-key no es una clave AES-256 válida", e);
+        }
+    }
+
+    /**
+     * Material a guardar en key_material para la clave de firma jwk
+     */
+    public String encrypt(JWK jwk) {
+        JWEHeader header = new JWEHeader.Builder(JWEAlgorithm.DIR, EncryptionMethod.A256GCM)
+                .customParam(SIGNING_KID_HEADER, jwk.getKeyID())
+                .build();
+        JWEObject jwe = new JWEObject(header, new Payload(jwk.toJSONString()));
+        try {
+            jwe.encrypt(encrypter);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Error cifrando la clave de firma " + jwk.getKeyID(), e);
+        }
+        return jwe.serialize();
+    }
+
+    /**
+     * Clave de firma guardada en key_material para el kid indicado
+     */
+    public JWK decrypt(String kid, String keyMaterial) throws ParseException, JOSEException {
+        JWEObject jwe = JWEObject.parse(keyMaterial);
+        if (!kid.equals(jwe.getHeader().getCustomParam(SIGNING_KID_HEADER))) {
+            throw new JOSEException("El material cifrado no corresponde a la clave " + kid);
+        }
+        jwe.decrypt(decrypter);
+        return JWK.parse(jwe.getPayload().toString());
+    }
+
+    /**
+     * true si key_material es un JWK en claro (filas anteriores al cifrado)
+     */
+    public static boolean isPlaintext(String keyMaterial) {
+        return keyMaterial.stripLeading().startsWith("{");
+    }
+}
@@ -0,0 +1,153 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import es.hargos.auth.entity.Role;
+import es.hargos.auth.entity.UserTenantRoleEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codificación del claim de tenants del access token.
+ *
+ * - v1 (completo, sin marcador "tv"): "tenants": [{tenantId, tenantName, appName, role}, ...]
+ * - v2 (compacto, "tv": 2): "tr": [tenantId, appId, roleCode, tenantId, appId, roleCode, ...]
+ *   Los nombres no viajan en el token; se resuelven con GET /api/auth/tenant-names (cacheable)
+ *
+ * Ambos formatos se decodifican siempre, así que se puede cambiar jwt.tenant-claim-format
+ * sin invalidar los tokens ya emitidos. El resultado son {@link TenantGrant} inmutables:
+ * sin mapas intermedios ni casts campo a campo en cada consumidor.
+ */
+public final class TenantClaimCodec {
+
+    public static final String VERSION_CLAIM = "tv";
+    public static final String FULL_CLAIM = "tenants";
+    public static final String COMPACT_CLAIM = "tr";
+
+    public static final int FULL_VERSION = 1;
+    public static final int COMPACT_VERSION = 2;
+
+    // El índice es el código del rol: solo se pueden añadir roles al final
+    private static final Role[] ROLES_BY_CODE = {Role.SUPER_ADMIN, Role.TENANT_ADMIN, Role.USER};
+    private static final List<String> ROLE_CODES = Arrays.stream(ROLES_BY_CODE).map(Role::name).toList();
+
+    private static final int COMPACT_ENTRY_SIZE = 3;
+
+    private TenantClaimCodec() {
+    }
+
+    /**
+     * Escribe el claim completo (v1)
+     */
+    public static void writeFull(JWTClaimsSet.Builder claimsBuilder, List<UserTenantRoleEntity> userTenantRoles) {
+        List<Object> tenants = new ArrayList<>(userTenantRoles.size());
+        for (UserTenantRoleEntity utr : userTenantRoles) {
+            tenants.add(Map.of(
+                    "tenantId", utr.getTenant().getId(),
+                    "tenantName", utr.getTenant().getName(),
+                    "appName", utr.getTenant().getApp().getName(),
+                    "role", utr.getRole()
+            ));
+        }
+        claimsBuilder.claim(FULL_CLAIM, List.copyOf(tenants));
+    }
+
+    /**
+     * Escribe el claim compacto (v2). Si algún rol no tiene código devuelve false sin escribir nada
+     * y el token debe emitirse en formato completo.
+     */
+    public static boolean writeCompact(JWTClaimsSet.Builder claimsBuilder, List<UserTenantRoleEntity> userTenantRoles) {
+        List<Long> packed = new ArrayList<>(userTenantRoles.size() * COMPACT_ENTRY_SIZE);
+        for (UserTenantRoleEntity utr : userTenantRoles) {
+            int roleCode = ROLE_CODES.indexOf(utr.getRole());
+            if (roleCode < 0) {
+                return false;
+            }
+            packed.add(utr.getTenant().getId());
+            packed.add(utr.getTenant().getApp().getId());
+            packed.add((long) roleCode);
+        }
+        claimsBuilder.claim(VERSION_CLAIM, COMPACT_VERSION);
+        claimsBuilder.claim(COMPACT_CLAIM, List.copyOf(packed));
+        return true;
+    }
+
+    /**
+     * Construye el claim de tenants una sola vez, en formato compacto si se pide y todos los roles
+     * tienen código, y si no en formato completo. Las entidades tienen que venir con tenant y app cargados.
+     */
+    public static TenantClaimFragment buildFragment(List<UserTenantRoleEntity> userTenantRoles, boolean compact) {
+        JWTClaimsSet.Builder claimsBuilder = new JWTClaimsSet.Builder();
+        if (!compact || !writeCompact(claimsBuilder, userTenantRoles)) {
+            writeFull(claimsBuilder, userTenantRoles);
+        }
+
+        List<TenantGrant> grants = new ArrayList<>(userTenantRoles.size());
+        for (UserTenantRoleEntity utr : userTenantRoles) {
+            Role role = parseRole(utr.getRole());
+            if (role != null) {
+                grants.add(new TenantGrant(utr.getTenant().getId(), utr.getTenant().getApp().getId(), role,
+                        utr.getTenant().getName(), utr.getTenant().getApp().getName()));
+            }
+        }
+        return new TenantClaimFragment(claimsBuilder.build().getClaims(), grants);
+    }
+
+    /**
+     * Decodifica el claim de tenants en cualquiera de los dos formatos.
+     * Las entradas mal formadas o con un rol desconocido se descartan (no conceden nada).
+     */
+    public static List<TenantGrant> decode(JWTClaimsSet claims) {
+        Object version = claims.getClaim(VERSION_CLAIM);
+        if (version instanceof Number number && number.intValue() == COMPACT_VERSION) {
+            return decodeCompact(claims.getClaim(COMPACT_CLAIM));
+        }
+        return decodeFull(claims.getClaim(FULL_CLAIM));
+    }
+
+    private static List<TenantGrant> decodeFull(Object claim) {
+        if (!(claim instanceof List<?> entries)) {
+            return Collections.emptyList();
+        }
+        List<TenantGrant> grants = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            if (entry instanceof Map<?, ?> tenant
+                    && tenant.get("tenantId") instanceof Number tenantId
+                    && tenant.get("role") instanceof String roleName) {
+                Role role = parseRole(roleName);
+                if (role != null) {
+                    grants.add(new TenantGrant(tenantId.longValue(), 0L, role,
+                            (String) tenant.get("tenantName"), (String) tenant.get("appName")));
+                }
+            }
+        }
+        return List.copyOf(grants);
+    }
+
+    private static List<TenantGrant> decodeCompact(Object claim) {
+        if (!(claim instanceof List<?> packed) || packed.size() % COMPACT_ENTRY_SIZE != 0) {
+            return Collections.emptyList();
+        }
+        List<TenantGrant> grants = new ArrayList<>(packed.size() / COMPACT_ENTRY_SIZE);
+        for (int i = 0; i < packed.size(); i += COMPACT_ENTRY_SIZE) {
+            int roleCode = ((Number) packed.get(i + 2)).intValue();
+            if (roleCode < 0 || roleCode >= ROLES_BY_CODE.length) {
+                continue; // Rol desconocido por esta versión del servicio: no concede nada
+            }
+            grants.add(new TenantGrant(((Number) packed.get(i)).longValue(), ((Number) packed.get(i + 1)).longValue(),
+                    ROLES_BY_CODE[roleCode], null, null));
+        }
+        return List.copyOf(grants);
+    }
+
+    private static Role parseRole(String roleName) {
+        try {
+            return Role.valueOf(roleName);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
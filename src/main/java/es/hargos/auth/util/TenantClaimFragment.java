@@ -0,0 +1,38 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Claim de tenants de un usuario ya construido en el formato configurado, junto con los
+ * {@link TenantGrant} (con ids y nombres) de los que sale.
+ *
+ * Es inmutable: se puede cachear por usuario y reutilizar en cada login/refresh sin volver
+ * a consultar user_tenant_roles ni reconstruir la lista del claim.
+ */
+public final class TenantClaimFragment {
+
+    private final Map<String, Object> claims;
+    private final List<TenantGrant> grants;
+
+    TenantClaimFragment(Map<String, Object> claims, List<TenantGrant> grants) {
+        this.claims = Map.copyOf(claims);
+        this.grants = List.copyOf(grants);
+    }
+
+    /**
+     * Añade los claims del fragmento al token
+     */
+    void writeTo(JWTClaimsSet.Builder claimsBuilder) {
+        claims.forEach(claimsBuilder::claim);
+    }
+
+    /**
+     * Tenants del usuario con tenantId, appId, rol y nombres
+     */
+    public List<TenantGrant> getGrants() {
+        return grants;
+    }
+}
@@ -0,0 +1,19 @@
+package es.hargos.auth.util;
+
+import es.hargos.auth.entity.Role;
+
+/**
+ * Rol de un usuario en un tenant, tal y como viene en el claim de tenants del access token.
+ *
+ * @param tenantId   id del tenant
+ * @param appId      id de la app del tenant (0 en tokens con el claim completo, que solo llevan appName)
+ * @param role       rol en el tenant
+ * @param tenantName nombre del tenant (null en tokens con el claim compacto)
+ * @param appName    nombre de la app (null en tokens con el claim compacto)
+ */
+public record TenantGrant(long tenantId, long appId, Role role, String tenantName, String appName) {
+
+    public boolean hasNames() {
+        return tenantName != null;
+    }
+}
@@ -0,0 +1,134 @@
+package es.hargos.auth.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Clasifica User-Agents: tipo y clase de dispositivo, familia de sistema operativo y de navegador, y bots.
+ *
+ * El tráfico real tiene pocos User-Agents distintos (los mismos navegadores y apps una y otra vez),
+ * así que el resultado se cachea por el User-Agent tal cual llega, en una caché Caffeine acotada
+ * (app.user-agent-cache.max-size). Un User-Agent solo se pasa a minúsculas y se recorre la primera vez.
+ *
+ * deviceType mantiene los valores que ya se guardaban en user_sessions.device_type
+ * (web, mobile, desktop, unknown); el resto de campos son para el panel de administración.
+ */
+@Component
+public class UserAgentClassifier {
+
+    private final Cache<String, UserAgentInfo> cache;
+
+    public UserAgentClassifier(@Value("${app.user-agent-cache.max-size:10000}") long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    public UserAgentInfo classify(String userAgent) {
+        if (userAgent == null || userAgent.isEmpty()) {
+            return UserAgentInfo.UNKNOWN;
+        }
+        return cache.get(userAgent, UserAgentClassifier::parse);
+    }
+
+    /**
+     * Tipo de dispositivo a guardar en la sesión
+     */
+    public String deviceType(String userAgent) {
+        return classify(userAgent).deviceType();
+    }
+
+    static UserAgentInfo parse(String userAgent) {
+        String ua = userAgent.toLowerCase(Locale.ROOT);
+
+        String os = osFamily(ua);
+        String browser = browserFamily(ua);
+        boolean bot = isBot(ua);
+        boolean tablet = ua.contains("ipad") || (ua.contains("android") && !ua.contains("mobile")) || ua.contains("tablet");
+        boolean mobile = ua.contains("mobile") || ua.contains("android") || ua.contains("iphone")
+                || ua.contains("ipad") || ua.contains("ipod") || ua.contains("windows phone");
+        boolean desktopApp = ua.contains("electron") || ua.contains("nwjs");
+
+        // Mismo criterio que se usaba para device_type: móvil antes que app de escritorio, web por defecto
+        String deviceType = mobile ? "mobile" : desktopApp ? "desktop" : "web";
+
+        String deviceClass;
+        if (bot) {
+            deviceClass = "bot";
+        } else if (tablet) {
+            deviceClass = "tablet";
+        } else if (mobile) {
+            deviceClass = "mobile";
+        } else if (desktopApp) {
+            deviceClass = "desktop-app";
+        } else {
+            deviceClass = "browser";
+        }
+
+        return new UserAgentInfo(deviceType, deviceClass, os, browser, bot);
+    }
+
+    private static String osFamily(String ua) {
+        if (ua.contains("windows phone")) {
+            return "Windows Phone";
+        }
+        if (ua.contains("iphone") || ua.contains("ipad") || ua.contains("ipod")) {
+            return "iOS";
+        }
+        if (ua.contains("android")) {
+            return "Android";
+        }
+        if (ua.contains(" cros ")) {
+            return "ChromeOS";
+        }
+        if (ua.contains("mac os x") || ua.contains("macintosh")) {
+            return "macOS";
+        }
+        if (ua.contains("windows")) {
+            return "Windows";
+        }
+        if (ua.contains("linux")) {
+            return "Linux";
+        }
+        return "Other";
+    }
+
+    // El orden importa: Edge, Opera y Samsung Internet también anuncian Chrome, y Chrome anuncia Safari
+    private static String browserFamily(String ua) {
+        if (ua.contains("electron/")) {
+            return "Electron";
+        }
+        if (ua.contains("edg/") || ua.contains("edge/") || ua.contains("edga/") || ua.contains("edgios/")) {
+            return "Edge";
+        }
+        if (ua.contains("opr/") || ua.contains("opera")) {
+            return "Opera";
+        }
+        if (ua.contains("samsungbrowser/")) {
+            return "Samsung Internet";
+        }
+        if (ua.contains("firefox/") || ua.contains("fxios/")) {
+            return "Firefox";
+        }
+        if (ua.contains("chrome/") || ua.contains("crios/") || ua.contains("chromium/")) {
+            return "Chrome";
+        }
+        if (ua.contains("safari/")) {
+            return "Safari";
+        }
+        if (ua.contains("okhttp/")) {
+            return "OkHttp";
+        }
+        return "Other";
+    }
+
+    private static boolean isBot(String ua) {
+        return ua.contains("bot") || ua.contains("crawl") || ua.contains("spider") || ua.contains("slurp")
+                || ua.contains("headless") || ua.startsWith("curl/") || ua.startsWith("wget/")
+                || ua.startsWith("python-") || ua.startsWith("java/") || ua.startsWith("go-http-client");
+    }
+}
@@ -0,0 +1,15 @@
+package es.hargos.auth.util;
+
+/**
+ * Clasificación de un User-Agent (ver UserAgentClassifier).
+ *
+ * @param deviceType    tipo de dispositivo guardado en la sesión: web, mobile, desktop o unknown
+ * @param deviceClass   clase de dispositivo: browser, mobile, tablet, desktop-app, bot o unknown
+ * @param osFamily      familia del sistema operativo (Windows, macOS, iOS, Android, Linux, ChromeOS, Other)
+ * @param browserFamily familia del navegador o cliente (Chrome, Safari, Firefox, Edge, Opera, ..., Other)
+ * @param bot           true si es un bot, crawler o cliente HTTP de scripts
+ */
+public record UserAgentInfo(String deviceType, String deviceClass, String osFamily, String browserFamily, boolean bot) {
+
+    public static final UserAgentInfo UNKNOWN = new UserAgentInfo("unknown", "unknown", "Other", "Other", false);
+}
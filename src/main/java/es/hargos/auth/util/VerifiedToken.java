@@ -0,0 +1,76 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Access token ya parseado, con firma y expiración verificadas.
+ *
+ * Se obtiene con {@link JwtUtil#verify(String)}: el JWT se parsea y verifica una sola vez
+ * y los claims quedan decodificados para el resto del request (filtro, /validate, /me).
+ */
+public final class VerifiedToken {
+
+    /**
+     * Atributo del request donde JwtAuthenticationFilter deja el token verificado
+     * para que los controllers no tengan que volver a parsearlo.
+     */
+    public static final String REQUEST_ATTRIBUTE = "es.hargos.auth.verifiedToken";
+
+    private final JWTClaimsSet claims;
+    private List<TenantGrant> tenants; // Decodificado bajo demanda (el objeto vive dentro de un request)
+
+    VerifiedToken(JWTClaimsSet claims) {
+        this.claims = claims;
+    }
+
+    public JWTClaimsSet getClaims() {
+        return claims;
+    }
+
+    public String getJti() {
+        return claims.getJWTID();
+    }
+
+    public String getSubject() {
+        return claims.getSubject();
+    }
+
+    public Date getExpiresAt() {
+        return claims.getExpirationTime();
+    }
+
+    public Long getUserId() {
+        Object userId = claims.getClaim("userId");
+        return userId instanceof Number number ? number.longValue() : null;
+    }
+
+    public String getEmail() {
+        return (String) claims.getClaim("email");
+    }
+
+    public String getFullName() {
+        return (String) claims.getClaim("fullName");
+    }
+
+    /**
+     * token_epoch del usuario cuando se emitió el token (0 en tokens anteriores al claim)
+     */
+    public int getTokenEpoch() {
+        Object epoch = claims.getClaim("tep");
+        return epoch instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * Tenants del token en cualquiera de los formatos del claim (ver {@link TenantClaimCodec}).
+     * tenantName/appName solo vienen si el token usa el formato completo.
+     */
+    public List<TenantGrant> getTenants() {
+        if (tenants == null) {
+            tenants = TenantClaimCodec.decode(claims);
+        }
+        return tenants;
+    }
+}
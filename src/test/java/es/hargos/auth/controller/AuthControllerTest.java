@@ -0,0 +1,98 @@
+package es.hargos.auth.controller;
+
+import es.hargos.auth.dto.response.TokenValidationResponse;
+import es.hargos.auth.exception.GlobalExceptionHandler;
+import es.hargos.auth.service.AuthService;
+import es.hargos.auth.service.GoogleAuthService;
+import es.hargos.auth.service.TenantDirectoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Unit tests for AuthController
+ * Tests that batch token validation is only served to callers with the service key
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthControllerTest {
+
+    private static final String SERVICE_KEY = "gateway-service-key";
+    private static final String BODY = "{\"tokens\": [\"token-a\", \"token-b\"]}";
+
+    @Mock
+    private AuthService authService;
+
+    @Mock
+    private GoogleAuthService googleAuthService;
+
+    @Mock
+    private TenantDirectoryService tenantDirectoryService;
+
+    private AuthController controller;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        controller = new AuthController(authService, googleAuthService, tenantDirectoryService);
+        ReflectionTestUtils.setField(controller, "validateBatchServiceKey", SERVICE_KEY);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void testValidateBatch_WithServiceKey() throws Exception {
+        TokenValidationResponse invalid = new TokenValidationResponse();
+        invalid.setValid(false);
+        when(authService.validateTokens(List.of("token-a", "token-b"))).thenReturn(List.of(invalid, invalid));
+
+        mockMvc.perform(post("/api/auth/validate/batch")
+                        .header("X-Service-Key", SERVICE_KEY)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    void testValidateBatch_RejectsMissingOrWrongServiceKey() throws Exception {
+        mockMvc.perform(post("/api/auth/validate/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isForbidden());
+
+        mockMvc.perform(post("/api/auth/validate/batch")
+                        .header("X-Service-Key", "wrong-key")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isForbidden());
+
+        verify(authService, never()).validateTokens(any());
+    }
+
+    @Test
+    void testValidateBatch_DisabledWithoutConfiguredKey() throws Exception {
+        ReflectionTestUtils.setField(controller, "validateBatchServiceKey", "");
+
+        mockMvc.perform(post("/api/auth/validate/batch")
+                        .header("X-Service-Key", "")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isForbidden());
+
+        verify(authService, never()).validateTokens(any());
+    }
+}
@@ -0,0 +1,133 @@
+package es.hargos.auth.filter;
+
+import es.hargos.auth.entity.AppEntity;
+import es.hargos.auth.entity.Role;
+import es.hargos.auth.entity.TenantEntity;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserTenantRoleEntity;
+import es.hargos.auth.security.JwtAuthenticationToken;
+import es.hargos.auth.service.TokenRevocationService;
+import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.VerifiedToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for JwtAuthenticationFilter
+ * Tests that each request parses and verifies its token once and checks revocation in memory
+ */
+@ExtendWith(MockitoExtension.class)
+class JwtAuthenticationFilterTest {
+
+    private static final String SECRET = "test-secret-with-at-least-256-bits-of-entropy!!";
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    private JwtUtil jwtUtil;
+    private JwtAuthenticationFilter filter;
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = spy(new JwtUtil(SECRET, 900_000L, "HS256", "", "full"));
+        filter = new JwtAuthenticationFilter(jwtUtil, tokenRevocationService);
+
+        UserEntity user = new UserEntity();
+        user.setId(42L);
+        user.setEmail("rider@hargos.es");
+
+        AppEntity app = new AppEntity();
+        app.setId(2L);
+        app.setName("RiTrack");
+
+        TenantEntity tenant = new TenantEntity();
+        tenant.setId(7L);
+        tenant.setName("Arendel");
+        tenant.setApp(app);
+
+        UserTenantRoleEntity role = new UserTenantRoleEntity();
+        role.setUser(user);
+        role.setTenant(tenant);
+        role.setRole("TENANT_ADMIN");
+
+        token = jwtUtil.generateAccessTokenWithJti(user, List.of(role))[0];
+        clearInvocations(jwtUtil);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testValidToken_ParsedOnceAndShared() throws Exception {
+        MockHttpServletRequest request = bearer(token);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        // Una sola pasada de parseo y verificación; el resto del request reutiliza el token verificado
+        verify(jwtUtil, times(1)).verify(token);
+        verifyNoMoreInteractions(jwtUtil);
+        verify(tokenRevocationService).isRevoked(any(VerifiedToken.class));
+        verify(tokenRevocationService, never()).isRevoked(anyString());
+
+        VerifiedToken verified = (VerifiedToken) request.getAttribute(VerifiedToken.REQUEST_ATTRIBUTE);
+        assertEquals("rider@hargos.es", verified.getSubject());
+
+        JwtAuthenticationToken authentication =
+                (JwtAuthenticationToken) SecurityContextHolder.getContext().getAuthentication();
+        assertEquals(42L, authentication.getUserId());
+        assertEquals(Role.TENANT_ADMIN, authentication.getRoleInTenant(7L));
+        assertEquals(List.of("TENANT_ADMIN"),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        assertSame(request, chain.getRequest());
+    }
+
+    @Test
+    void testRevokedToken_NotAuthenticated() throws Exception {
+        when(tokenRevocationService.isRevoked(any(VerifiedToken.class))).thenReturn(true);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(bearer(token), new MockHttpServletResponse(), chain);
+
+        verify(jwtUtil, times(1)).verify(token);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void testTamperedToken_NotAuthenticatedAndNoRevocationLookup() throws Exception {
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(bearer(tampered), new MockHttpServletResponse(), chain);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(tokenRevocationService);
+        assertNotNull(chain.getRequest());
+    }
+
+    private static MockHttpServletRequest bearer(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/auth/me");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
@@ -0,0 +1,69 @@
+package es.hargos.auth.security;
+
+import es.hargos.auth.entity.Role;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AuthorizationService
+ * Tests tenant-scoped checks against the tenantId -> role index of the JWT authentication
+ */
+class AuthorizationServiceTest {
+
+    private final AuthorizationService authz = new AuthorizationService();
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void authenticate(Map<Long, Role> tenantRoles) {
+        List<SimpleGrantedAuthority> authorities = tenantRoles.values().stream()
+                .map(role -> new SimpleGrantedAuthority(role.name()))
+                .toList();
+        SecurityContextHolder.getContext().setAuthentication(
+                new JwtAuthenticationToken("admin@hargos.es", 42L, tenantRoles, authorities));
+    }
+
+    @Test
+    void testCanAccessTenant_TenantAdminOnlyForManagedTenants() {
+        authenticate(Map.of(7L, Role.TENANT_ADMIN, 8L, Role.USER));
+
+        assertTrue(authz.canAccessTenant(7L));
+        assertFalse(authz.canAccessTenant(8L));  // Solo USER en ese tenant
+        assertFalse(authz.canAccessTenant(99L)); // No pertenece
+        assertEquals(Set.of(7L), authz.getManagedTenantIds());
+        assertEquals(42L, authz.getCurrentUserId());
+    }
+
+    @Test
+    void testCanManageTenants_RequiresEveryTenant() {
+        authenticate(Map.of(7L, Role.TENANT_ADMIN, 9L, Role.TENANT_ADMIN));
+
+        assertTrue(authz.canManageTenants(List.of(7L, 9L)));
+        assertFalse(authz.canManageTenants(List.of(7L, 10L)));
+    }
+
+    @Test
+    void testSuperAdminCanAccessAnyTenant() {
+        authenticate(Map.of(1L, Role.SUPER_ADMIN));
+
+        assertTrue(authz.canAccessTenant(12345L));
+        assertTrue(authz.canManageTenants(List.of(1L, 2L, 3L)));
+    }
+
+    @Test
+    void testWithoutAuthenticationNothingIsAllowed() {
+        assertFalse(authz.canAccessTenant(7L));
+        assertTrue(authz.getManagedTenantIds().isEmpty());
+        assertNull(authz.getCurrentUserId());
+    }
+}
@@ -0,0 +1,91 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.response.AdminSessionPageResponse;
+import es.hargos.auth.util.UserAgentClassifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AdminSessionQueryService
+ * Tests the keyset cursor, the page-size cap and the filters of the admin session listing
+ */
+@ExtendWith(MockitoExtension.class)
+class AdminSessionQueryServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private SessionActivityBuffer sessionActivityBuffer;
+
+    private AdminSessionQueryService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AdminSessionQueryService(jdbcTemplate, sessionActivityBuffer, new UserAgentClassifier(100));
+    }
+
+    @Test
+    void testCursor_RoundTripsAndRejectsGarbage() {
+        AdminSessionQueryService.Cursor cursor =
+                new AdminSessionQueryService.Cursor(LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_000_000), 42L);
+
+        assertEquals(cursor, AdminSessionQueryService.parseCursor(AdminSessionQueryService.toCursor(cursor)));
+        assertNull(AdminSessionQueryService.parseCursor(null));
+        assertThrows(IllegalStateException.class, () -> AdminSessionQueryService.parseCursor("not-a-cursor!"));
+        assertThrows(IllegalStateException.class, () -> AdminSessionQueryService.parseCursor("Zm9vfGJhcg"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetSessionsPage_CapsPageSizeAndAppliesFiltersInOneQuery() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        when(jdbcTemplate.query(sql.capture(), any(RowMapper.class), args.capture())).thenReturn(List.of());
+
+        LocalDateTime createdAt = LocalDateTime.of(2025, 3, 14, 9, 0);
+        String cursor = AdminSessionQueryService.toCursor(new AdminSessionQueryService.Cursor(createdAt, 77L));
+        AdminSessionPageResponse page = service.getSessionsPage(
+                new AdminSessionQueryService.Filter(3L, null, "mobile", null, null), cursor, 10_000);
+
+        assertTrue(page.getSessions().isEmpty());
+        assertNull(page.getNextCursor());
+        assertTrue(sql.getValue().contains("JOIN LATERAL"));
+        assertFalse(sql.getValue().contains("LEFT JOIN LATERAL"));
+        assertTrue(sql.getValue().contains("(s.created_at, s.id) < (?, ?)"));
+
+        Object[] values = args.getValue();
+        // now, appId, deviceType, cursor (created_at, id), limit = MAX_PAGE_SIZE + 1
+        assertEquals(6, values.length);
+        assertEquals(3L, values[1]);
+        assertEquals((short) 2, values[2]);
+        assertEquals(createdAt, values[3]);
+        assertEquals(77L, values[4]);
+        assertEquals(AdminSessionQueryService.MAX_PAGE_SIZE + 1, values[5]);
+        verifyNoInteractions(sessionActivityBuffer);
+    }
+
+    @Test
+    void testValidateSubnet_AcceptsCidrAndRejectsInvalidInput() {
+        assertEquals("10.0.0.0/8", AdminSessionQueryService.validateSubnet(" 10.0.0.0/8 "));
+        assertEquals("192.168.1.20", AdminSessionQueryService.validateSubnet("192.168.1.20"));
+        assertEquals("2001:db8::/32", AdminSessionQueryService.validateSubnet("2001:db8::/32"));
+
+        for (String invalid : new String[]{"999.1.1.1", "10.0.0.0/33", "2001:db8::/129", "example.com", "10.0.0/8", "1.2.3.4/x"}) {
+            assertThrows(IllegalStateException.class, () -> AdminSessionQueryService.validateSubnet(invalid), invalid);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.request.RefreshTokenRequest;
+import es.hargos.auth.dto.response.LoginResponse;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserSessionEntity;
+import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.PasswordValidator;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for AuthService.refreshAccessToken
+ * Counts the SQL statements a refresh really sends to PostgreSQL (Hibernate statistics)
+ *
+ * Needs a PostgreSQL database with init-db.sql applied (the native queries are PostgreSQL-only):
+ *   mvn test -Dtest=AuthServiceRefreshIntegrationTest -Dspring.datasource.url=jdbc:postgresql://localhost:5432/hargos_test \
+ *       -Dspring.datasource.username=... -Dspring.datasource.password=...
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "jwt.secret=test-secret-with-at-least-256-bits-of-entropy!!",
+        "jwt.access-token-expiration-ms=900000",
+        "jwt.refresh-token-expiration-ms=604800000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EnabledIfSystemProperty(named = "spring.datasource.url", matches = "jdbc:postgresql:.+")
+@Import({AuthService.class, RefreshTokenService.class, TokenRevocationService.class,
+        TenantClaimCacheService.class, JwtUtil.class})
+class AuthServiceRefreshIntegrationTest {
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private TenantClaimCacheService tenantClaimCacheService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSessionRepository userSessionRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    // Fuera del camino del refresh
+    @MockBean
+    private RateLimitService rateLimitService;
+    @MockBean
+    private PasswordEncoder passwordEncoder;
+    @MockBean
+    private InvitationService invitationService;
+    @MockBean
+    private AccessCodeService accessCodeService;
+    @MockBean
+    private EmailService emailService;
+    @MockBean
+    private PasswordValidator passwordValidator;
+    @MockBean
+    private TenantLimitService tenantLimitService;
+    @MockBean
+    private TenantDirectoryService tenantDirectoryService;
+    @MockBean
+    private SessionService sessionService;
+    @MockBean
+    private RevocationFeedService revocationFeedService;
+
+    // Escribe la actividad en diferido, fuera de la transacción del refresh
+    @MockBean
+    private SessionActivityBuffer sessionActivityBuffer;
+
+    private Statistics statistics;
+    private UserSessionEntity session;
+    private String refreshToken;
+
+    @BeforeEach
+    void setUp() {
+        UserEntity user = new UserEntity();
+        user.setEmail("refresh-" + System.nanoTime() + "@hargos.es");
+        user.setPasswordHash("not-used");
+        user = userRepository.save(user);
+
+        RefreshTokenService.IssuedRefreshToken issued = refreshTokenService.createRefreshToken(user);
+        session = new UserSessionEntity();
+        session.setUser(user);
+        session.setRefreshToken(issued.entity());
+        session.setDeviceType("web");
+        session.setAccessTokenJti("old-jti-" + System.nanoTime());
+        session = userSessionRepository.save(session);
+        refreshToken = refreshTokenService.encode(issued, session.getId());
+
+        // El claim de tenants ya está en la cache, como tras el login
+        tenantClaimCacheService.getFragment(user);
+
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void testRefresh_SendsThreeStatements() {
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken(refreshToken);
+
+        LoginResponse response = authService.refreshAccessToken(request);
+        // Lo que quedase pendiente de dirty checking también cuenta
+        entityManager.flush();
+
+        // SELECT sesión + refresh token + usuario, INSERT en revoked_access_tokens y UPDATE del JTI
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityUpdateCount());
+
+        entityManager.clear();
+        Number revoked = (Number) entityManager.createNativeQuery(
+                        "SELECT COUNT(*) FROM auth.revoked_access_tokens WHERE jti = :jti")
+                .setParameter("jti", session.getAccessTokenJti())
+                .getSingleResult();
+        assertEquals(1, revoked.intValue());
+        UserSessionEntity updated = userSessionRepository.findById(session.getId()).orElseThrow();
+        assertNotEquals(session.getAccessTokenJti(), updated.getAccessTokenJti());
+        assertNotNull(response.getAccessToken());
+    }
+}
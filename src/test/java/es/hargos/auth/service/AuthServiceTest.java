@@ -0,0 +1,145 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.request.RefreshTokenRequest;
+import es.hargos.auth.dto.response.LoginResponse;
+import es.hargos.auth.entity.RefreshTokenEntity;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserSessionEntity;
+import es.hargos.auth.exception.InvalidCredentialsException;
+import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.repository.UserTenantRoleRepository;
+import es.hargos.auth.util.JwtUtil;
+import es.hargos.auth.util.TenantClaimFragment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AuthService
+ * Tests the repository calls of the refresh fast path (statements sent: AuthServiceRefreshIntegrationTest)
+ */
+@ExtendWith(MockitoExtension.class)
+class AuthServiceTest {
+
+    private static final String REFRESH_TOKEN = "v1.7.99.secret";
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserTenantRoleRepository userTenantRoleRepository;
+
+    @Mock
+    private UserSessionRepository userSessionRepository;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    @Mock
+    private TenantClaimCacheService tenantClaimCacheService;
+
+    @Mock
+    private SessionActivityBuffer sessionActivityBuffer;
+
+    @Mock
+    private JwtUtil jwtUtil;
+
+    @InjectMocks
+    private AuthService authService;
+
+    private UserEntity user;
+    private UserSessionEntity session;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(authService, "accessTokenExpiration", 900_000L);
+
+        user = new UserEntity();
+        user.setId(42L);
+        user.setEmail("rider@hargos.es");
+
+        RefreshTokenEntity refreshToken = new RefreshTokenEntity();
+        refreshToken.setId(7L);
+        refreshToken.setUser(user);
+        refreshToken.setExpiresAt(LocalDateTime.now().plusDays(1));
+
+        session = new UserSessionEntity();
+        session.setId(99L);
+        session.setRefreshToken(refreshToken);
+        session.setAccessTokenJti("old-jti");
+        session.setCreatedAt(LocalDateTime.now().minusDays(1));
+
+        // lenient: los refresh rechazados no llegan a leer el claim ni a emitir el token
+        lenient().when(refreshTokenService.resolve(REFRESH_TOKEN))
+                .thenReturn(new RefreshTokenService.ResolvedRefreshToken(refreshToken, session));
+        lenient().when(tenantClaimCacheService.getFragment(user))
+                .thenReturn(new JwtUtil("test-secret-with-at-least-256-bits-of-entropy!!", 900_000L, "HS256", "", "full")
+                        .buildTenantClaimFragment(List.of()));
+        lenient().when(jwtUtil.generateAccessTokenWithJti(eq(user), any(TenantClaimFragment.class)))
+                .thenReturn(new String[]{"access-token", "new-jti"});
+    }
+
+    @Test
+    void testRefresh_OneLookupAndOnlyTheJtiWrittenSynchronously() {
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken(REFRESH_TOKEN);
+
+        LoginResponse response = authService.refreshAccessToken(request);
+
+        assertEquals("access-token", response.getAccessToken());
+        assertEquals(REFRESH_TOKEN, response.getRefreshToken());
+
+        // La sesión, el refresh token y el usuario llegan en la única consulta de resolve();
+        // el claim de tenants sale de la cache, el JTI se escribe en la transacción y la actividad
+        // queda en el buffer write-behind
+        verify(refreshTokenService).resolve(REFRESH_TOKEN);
+        verify(userSessionRepository).updateAccessTokenJti(99L, session.getCreatedAt(), "new-jti");
+        verify(sessionActivityBuffer).record(99L, session.getCreatedAt(), 42L);
+        verify(tokenRevocationService).revoke("old-jti");
+        verifyNoMoreInteractions(refreshTokenService, userSessionRepository);
+        verifyNoInteractions(userRepository, userTenantRoleRepository);
+    }
+
+    @Test
+    void testRefresh_RevokedSessionIsRejected() {
+        session.setIsRevoked(true);
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken(REFRESH_TOKEN);
+
+        assertThrows(InvalidCredentialsException.class, () -> authService.refreshAccessToken(request));
+
+        verify(jwtUtil, never()).generateAccessTokenWithJti(any(), any(TenantClaimFragment.class));
+        verify(sessionActivityBuffer, never()).record(any(), any(), any());
+        verify(userSessionRepository, never()).updateAccessTokenJti(any(), any(), anyString());
+        verify(tokenRevocationService, never()).revoke(anyString());
+    }
+
+    @Test
+    void testRefresh_TokenWithoutSessionIsRejected() {
+        RefreshTokenEntity orphan = session.getRefreshToken();
+        when(refreshTokenService.resolve("legacy-token"))
+                .thenReturn(new RefreshTokenService.ResolvedRefreshToken(orphan, null));
+        RefreshTokenRequest request = new RefreshTokenRequest();
+        request.setRefreshToken("legacy-token");
+
+        assertThrows(InvalidCredentialsException.class, () -> authService.refreshAccessToken(request));
+        verify(jwtUtil, never()).generateAccessTokenWithJti(any(), any(TenantClaimFragment.class));
+    }
+}
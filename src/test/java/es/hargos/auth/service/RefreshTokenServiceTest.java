@@ -0,0 +1,124 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.entity.RefreshTokenEntity;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserSessionEntity;
+import es.hargos.auth.repository.RefreshTokenRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RefreshTokenService
+ * Tests the v1 token format: primary-key resolution, hashed secret and legacy fallback
+ */
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenServiceTest {
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private UserSessionRepository userSessionRepository;
+
+    private RefreshTokenService service;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        service = new RefreshTokenService(refreshTokenRepository, userSessionRepository);
+        ReflectionTestUtils.setField(service, "refreshTokenExpiration", 604_800_000L);
+
+        user = new UserEntity();
+        user.setId(42L);
+    }
+
+    private RefreshTokenService.IssuedRefreshToken issue() {
+        when(refreshTokenRepository.save(any())).thenAnswer(invocation -> {
+            RefreshTokenEntity entity = invocation.getArgument(0);
+            entity.setId(7L);
+            return entity;
+        });
+        return service.createRefreshToken(user);
+    }
+
+    @Test
+    void testCreate_StoresOnlyTheHashOfTheSecret() {
+        RefreshTokenService.IssuedRefreshToken issued = issue();
+
+        String token = service.encode(issued, 99L);
+
+        assertTrue(token.startsWith("v1.7.99."));
+        assertTrue(issued.entity().getToken().startsWith("sha256:"));
+        assertFalse(issued.entity().getToken().contains(issued.secret()));
+    }
+
+    private UserSessionEntity sessionOf(RefreshTokenEntity refreshToken) {
+        UserSessionEntity session = new UserSessionEntity();
+        session.setId(99L);
+        session.setRefreshToken(refreshToken);
+        return session;
+    }
+
+    @Test
+    void testResolve_V1TokenInASingleQuery() {
+        RefreshTokenService.IssuedRefreshToken issued = issue();
+        UserSessionEntity session = sessionOf(issued.entity());
+        when(userSessionRepository.findForRefresh(eq(99L), eq(7L), any())).thenReturn(Optional.of(session));
+
+        RefreshTokenService.ResolvedRefreshToken resolved = service.resolve(service.encode(issued, 99L));
+
+        assertSame(issued.entity(), resolved.entity());
+        assertSame(session, resolved.session());
+        // Solo las particiones que aún pueden tener un refresh token vigente (TTL de 7 días)
+        ArgumentCaptor<LocalDateTime> createdAfter = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(userSessionRepository).findForRefresh(eq(99L), eq(7L), createdAfter.capture());
+        assertTrue(createdAfter.getValue().isBefore(LocalDateTime.now().minusDays(7).plusMinutes(1)));
+        assertTrue(createdAfter.getValue().isAfter(LocalDateTime.now().minusDays(7).minusMinutes(1)));
+        verifyNoMoreInteractions(userSessionRepository);
+        verify(refreshTokenRepository, never()).findByToken(anyString());
+    }
+
+    @Test
+    void testResolve_RejectsWrongSecret() {
+        RefreshTokenService.IssuedRefreshToken issued = issue();
+        when(userSessionRepository.findForRefresh(eq(99L), eq(7L), any())).thenReturn(Optional.of(sessionOf(issued.entity())));
+
+        assertThrows(RuntimeException.class, () -> service.resolve("v1.7.99.not-the-secret"));
+    }
+
+    @Test
+    void testResolve_StoredHashIsNotAcceptedAsLegacyToken() {
+        RefreshTokenService.IssuedRefreshToken issued = issue();
+
+        assertThrows(RuntimeException.class, () -> service.resolve(issued.entity().getToken()));
+        verify(refreshTokenRepository, never()).findByToken(anyString());
+    }
+
+    @Test
+    void testResolve_LegacyUuidToken() {
+        RefreshTokenEntity legacy = new RefreshTokenEntity();
+        legacy.setToken("3f2b6c1e-8a41-4d7e-9b0a-5c2f1e7d9a13");
+        when(refreshTokenRepository.findByToken(legacy.getToken())).thenReturn(Optional.of(legacy));
+        when(userSessionRepository.findByRefreshToken(legacy)).thenReturn(Optional.empty());
+
+        RefreshTokenService.ResolvedRefreshToken resolved = service.resolve(legacy.getToken());
+
+        assertSame(legacy, resolved.entity());
+        assertNull(resolved.session());
+    }
+}
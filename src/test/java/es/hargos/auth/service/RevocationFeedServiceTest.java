@@ -0,0 +1,84 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.response.RevocationFeedResponse;
+import es.hargos.auth.repository.RevokedAccessTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RevocationFeedService
+ * Tests that the feed is served from the shared revocation log with a database-ordered cursor
+ */
+@ExtendWith(MockitoExtension.class)
+class RevocationFeedServiceTest {
+
+    @Mock
+    private RevokedAccessTokenRepository revokedAccessTokenRepository;
+
+    private RevocationFeedService feed;
+
+    @BeforeEach
+    void setUp() {
+        feed = new RevocationFeedService(revokedAccessTokenRepository, 60_000L, 16, 5000L);
+    }
+
+    @Test
+    void testPoll_WithoutCursorReturnsSnapshotFromTheLog() {
+        when(revokedAccessTokenRepository.findRevocationLogAfter(eq(0L), any(), eq(5.0), eq(100))).thenReturn(List.of(
+                logRow(3L, "superseded-jti", null, null, true),
+                logRow(8L, null, 42L, 3, true)));
+
+        RevocationFeedResponse response = feed.poll(null, 100);
+
+        assertTrue(response.getSnapshot());
+        assertEquals("8", response.getCursor());
+        assertEquals("superseded-jti", response.getEvents().get(0).getJti());
+        assertEquals(RevocationFeedService.TYPE_USER_EPOCH, response.getEvents().get(1).getType());
+        assertEquals(42L, response.getEvents().get(1).getUserId());
+        assertEquals(3, response.getEvents().get(1).getTokenEpoch());
+    }
+
+    @Test
+    void testPoll_ResumesFromCursorOnAnyInstanceUpToTheFirstUnsettledRow() {
+        when(revokedAccessTokenRepository.findRevocationLogAfter(eq(8L), any(), eq(5.0), eq(100))).thenReturn(List.of(
+                logRow(9L, "a", null, null, true),
+                logRow(10L, "b", null, null, false),
+                logRow(11L, "c", null, null, true)));
+
+        RevocationFeedResponse response = feed.poll("8", 100);
+
+        assertFalse(response.getSnapshot());
+        assertEquals(List.of(9L), response.getEvents().stream().map(e -> e.getSequence()).toList());
+        // 10 aún puede tener por detrás una transacción sin commit: se reanuda desde 9
+        assertEquals("9", response.getCursor());
+    }
+
+    @Test
+    void testPoll_IdleKeepsCursorAndMalformedCursorRestartsWithSnapshot() {
+        when(revokedAccessTokenRepository.findRevocationLogAfter(anyLong(), any(), anyDouble(), anyInt())).thenReturn(List.of());
+
+        RevocationFeedResponse idle = feed.poll("12", 100);
+        assertTrue(idle.getEvents().isEmpty());
+        assertEquals("12", idle.getCursor());
+
+        // Cursor del antiguo buffer en memoria ("bootId:seq")
+        assertTrue(feed.poll("otroarranque:12", 100).getSnapshot());
+        verify(revokedAccessTokenRepository).findRevocationLogAfter(eq(0L), any(), anyDouble(), anyInt());
+    }
+
+    private static Object[] logRow(long seq, String jti, Long userId, Integer tokenEpoch, boolean settled) {
+        return new Object[]{seq, jti, userId, tokenEpoch, Timestamp.valueOf(LocalDateTime.now()), settled};
+    }
+}
@@ -0,0 +1,108 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.entity.UserSessionEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SessionActivityBuffer
+ * Tests coalescing per session, read-through and the batched flush
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionActivityBufferTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SessionActivityBuffer buffer;
+    private UserSessionEntity session;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new SessionActivityBuffer(jdbcTemplate);
+
+        session = new UserSessionEntity();
+        session.setId(99L);
+        session.setCreatedAt(LocalDateTime.now().minusDays(1));
+        session.setLastActivityAt(LocalDateTime.now().minusHours(1));
+    }
+
+    @Test
+    void testRecord_KeepsOnlyTheLatestValuePerSession() {
+        buffer.record(99L, session.getCreatedAt(), 42L);
+        buffer.record(99L, session.getCreatedAt(), 42L);
+
+        assertEquals(1, buffer.size());
+        assertTrue(buffer.lastActivityAt(session).isAfter(session.getLastActivityAt()));
+        assertEquals(Set.of(99L), buffer.recentSessionIds(42L, LocalDateTime.now().minusMinutes(30)));
+        assertTrue(buffer.recentSessionIds(7L, LocalDateTime.now().minusMinutes(30)).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_WritesAllSessionsInOneBatch() {
+        buffer.record(99L, session.getCreatedAt(), 42L);
+        buffer.record(100L, session.getCreatedAt(), 42L);
+
+        buffer.flush();
+
+        verify(jdbcTemplate).batchUpdate(anyString(), argThat((List<Object> batch) -> batch.size() == 2), eq(2),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(0, buffer.size());
+        assertEquals(session.getLastActivityAt(), buffer.lastActivityAt(session));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_BoundsEachUpdateToTheSessionPartition() throws Exception {
+        buffer.record(99L, session.getCreatedAt(), 42L);
+
+        buffer.flush();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<Map.Entry<Long, Object>>> batch = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<Map.Entry<Long, Object>>> setter =
+                ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(sql.capture(), batch.capture(), eq(1), setter.capture());
+        assertTrue(sql.getValue().contains("AND created_at = ?"));
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.getValue().setValues(ps, batch.getValue().get(0));
+        verify(ps).setLong(2, 99L);
+        verify(ps).setObject(3, session.getCreatedAt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_FailedBatchStaysInTheBuffer() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(List.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new QueryTimeoutException("timeout"));
+        buffer.record(99L, session.getCreatedAt(), 42L);
+
+        buffer.flush();
+
+        assertEquals(1, buffer.size());
+        assertTrue(buffer.lastActivityAt(session).isAfter(session.getLastActivityAt()));
+    }
+}
@@ -0,0 +1,141 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.repository.RevokedAccessTokenRepository;
+import es.hargos.auth.repository.TokenEpochChangeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SessionCleanupService
+ * Tests the chunked keyset purge and its metrics
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionCleanupServiceTest {
+
+    @Mock
+    private SessionStatsService sessionStatsService;
+
+    @Mock
+    private SessionPartitionService sessionPartitionService;
+
+    @Mock
+    private UserAgentDictionary userAgentDictionary;
+
+    @Mock
+    private RevokedAccessTokenRepository revokedAccessTokenRepository;
+
+    @Mock
+    private TokenEpochChangeRepository tokenEpochChangeRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SessionCleanupService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new SessionCleanupService(sessionStatsService, sessionPartitionService, userAgentDictionary,
+                revokedAccessTokenRepository, tokenEpochChangeRepository, jdbcTemplate, meterRegistry, 2, 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testManualCleanup_DeletesInChunksContinuingFromTheLastKey() {
+        LocalDateTime t1 = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime t2 = LocalDateTime.of(2024, 1, 2, 10, 0);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(new SessionCleanupService.PurgeKey(t2, 5L), new SessionCleanupService.PurgeKey(t1, 9L)))
+                .thenReturn(List.of(new SessionCleanupService.PurgeKey(t2, 6L)));
+
+        int deleted = service.manualCleanup(7);
+
+        assertEquals(3, deleted);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class), args.capture());
+        // Segundo lote: continúa después de la última fila borrada (t2, 5), con el mismo tamaño de lote
+        Object[] second = args.getAllValues().get(1);
+        assertEquals(t2, second[1]);
+        assertEquals(5L, second[2]);
+        assertEquals(2, second[3]);
+
+        assertEquals(3.0, meterRegistry.counter("hargos.cleanup.deleted", "target", "user_sessions").count());
+        assertEquals(2.0, meterRegistry.counter("hargos.cleanup.chunks", "target", "user_sessions").count());
+        verify(sessionStatsService).sessionsPurged(3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCleanupExpiredSessions_UnpartitionedPurgesSessionsAndRefreshTokens() {
+        when(sessionPartitionService.isPartitioned()).thenReturn(false);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of());
+
+        service.cleanupExpiredSessions();
+
+        verify(jdbcTemplate).query(contains("DELETE FROM auth.user_sessions"), any(RowMapper.class), any(Object[].class));
+        verify(jdbcTemplate).query(contains("DELETE FROM auth.refresh_tokens"), any(RowMapper.class), any(Object[].class));
+        verify(sessionPartitionService, never()).dropExpiredPartitions();
+        verify(userAgentDictionary, never()).purgeUnused();
+        verify(revokedAccessTokenRepository).deleteExpired(any());
+        verify(tokenEpochChangeRepository).deleteExpired(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCleanupExpiredSessions_PartitionedDropsPartitionsInsteadOfRows() {
+        LocalDateTime oldestPartition = LocalDateTime.of(2026, 2, 1, 0, 0);
+        when(sessionPartitionService.isPartitioned()).thenReturn(true);
+        when(sessionPartitionService.dropExpiredPartitions()).thenReturn(List.of("user_sessions_2026_01"));
+        when(sessionPartitionService.oldestPartitionStart()).thenReturn(Optional.of(oldestPartition));
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of());
+        when(userAgentDictionary.purgeUnused()).thenReturn(4);
+
+        service.cleanupExpiredSessions();
+
+        verify(sessionPartitionService).createUpcomingPartitions();
+        verify(sessionStatsService).reconcile();
+        // Tras borrar particiones se purgan los User-Agents que ya no usa ninguna sesión
+        InOrder order = inOrder(sessionPartitionService, userAgentDictionary);
+        order.verify(sessionPartitionService).dropExpiredPartitions();
+        order.verify(userAgentDictionary).purgeUnused();
+        assertEquals(4.0, meterRegistry.counter("hargos.cleanup.deleted", "target", "user_agents").count());
+        verify(jdbcTemplate, never()).query(contains("DELETE FROM auth.user_sessions"), any(RowMapper.class), any(Object[].class));
+        // Solo refresh tokens anteriores a la partición más antigua: el cascade no toca sesiones vivas
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).query(contains("DELETE FROM auth.refresh_tokens"), any(RowMapper.class), args.capture());
+        assertEquals(oldestPartition, args.getValue()[0]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCleanupExpiredSessions_NoDroppedPartitionSkipsUserAgentPurge() {
+        when(sessionPartitionService.isPartitioned()).thenReturn(true);
+        when(sessionPartitionService.dropExpiredPartitions()).thenReturn(List.of());
+        when(sessionPartitionService.oldestPartitionStart()).thenReturn(Optional.empty());
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of());
+
+        service.cleanupExpiredSessions();
+
+        verify(sessionStatsService, never()).reconcile();
+        verify(userAgentDictionary, never()).purgeUnused();
+    }
+}
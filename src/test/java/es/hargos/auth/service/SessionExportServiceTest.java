@@ -0,0 +1,108 @@
+package es.hargos.auth.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SessionExportService
+ * Tests the forward-only cursor, the pushed-down filters and the NDJSON output
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionExportServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private SessionActivityBuffer sessionActivityBuffer;
+
+    private SessionExportService service;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        service = new SessionExportService(jdbcTemplate, transactionManager, objectMapper, sessionActivityBuffer);
+    }
+
+    @Test
+    void testExport_StreamsRowsFromForwardOnlyCursorInReadOnlyTransaction() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime createdAt = LocalDateTime.of(2025, 1, 2, 10, 0);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY)))
+                .thenReturn(statement);
+        when(rs.getLong("id")).thenReturn(5L, 6L);
+        when(rs.getLong("user_id")).thenReturn(42L);
+        when(rs.getString("email")).thenReturn("user@hargos.es");
+        when(rs.getObject("created_at", LocalDateTime.class)).thenReturn(createdAt);
+        when(rs.getBoolean("is_revoked")).thenReturn(true, false);
+        when(sessionActivityBuffer.lastActivityAt(anyLong(), any())).thenReturn(createdAt);
+
+        doAnswer(invocation -> {
+            PreparedStatementCreator creator = invocation.getArgument(0);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            creator.createPreparedStatement(connection);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = service.export(new SessionExportService.Filter(from, null, 42L), out);
+
+        assertEquals(2, exported);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"id\":5") && lines[0].contains("\"isRevoked\":true"));
+        assertTrue(lines[1].contains("\"id\":6") && lines[1].contains("\"createdAt\":\"2025-01-02T10:00:00\""));
+
+        verify(connection).prepareStatement(argThat(sql -> sql.contains("s.created_at >= ?")
+                        && sql.contains("s.user_id = ?") && !sql.contains("s.created_at < ?")),
+                anyInt(), anyInt());
+        verify(statement).setFetchSize(SessionExportService.FETCH_SIZE);
+        verify(statement).setObject(1, from);
+        verify(statement).setObject(2, 42L);
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+    }
+
+    @Test
+    void testValidate_RejectsEmptyRange() {
+        LocalDateTime at = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+        assertThrows(IllegalStateException.class,
+                () -> service.validate(new SessionExportService.Filter(at, at, null)));
+        assertDoesNotThrow(() -> service.validate(new SessionExportService.Filter(at, null, null)));
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,69 @@
+package es.hargos.auth.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SessionPartitionService
+ * Tests which monthly partitions are dropped by the retention
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionPartitionServiceTest {
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SessionPartitionService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // Retención de 1 día configurada, pero nunca menor que la vida del refresh token (7 días) + 1
+        service = new SessionPartitionService(jdbcTemplate, meterRegistry, 3, 1, 604_800_000L);
+    }
+
+    private static String partition(YearMonth month) {
+        return "user_sessions_" + month.format(MONTH_FORMAT);
+    }
+
+    @Test
+    void testDropExpiredPartitions_KeepsPartitionsWithSessionsStillUsable() {
+        YearMonth current = YearMonth.now();
+        YearMonth twoMonthsAgo = current.minusMonths(2);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                partition(twoMonthsAgo), partition(current), partition(current.plusMonths(1)), "user_sessions_default"));
+
+        List<String> dropped = service.dropExpiredPartitions();
+
+        assertEquals(List.of(partition(twoMonthsAgo)), dropped);
+        verify(jdbcTemplate).execute("DROP TABLE IF EXISTS auth." + partition(twoMonthsAgo));
+        verify(jdbcTemplate, times(1)).execute(anyString());
+        assertEquals(1.0, meterRegistry.counter("hargos.cleanup.partitions.dropped", "target", "user_sessions").count());
+    }
+
+    @Test
+    void testOldestPartitionStart_IgnoresTheDefaultPartition() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "user_sessions_default", "user_sessions_2026_03", "user_sessions_2026_02"));
+
+        assertEquals(LocalDateTime.of(2026, 2, 1, 0, 0), service.oldestPartitionStart().orElseThrow());
+    }
+}
@@ -0,0 +1,147 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.entity.RefreshTokenEntity;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserSessionEntity;
+import es.hargos.auth.repository.RefreshTokenRepository;
+import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.util.UserAgentClassifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SessionService
+ * Tests the concurrent-session cap applied when a session is opened and set-based revocation
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionServiceTest {
+
+    @Mock
+    private UserSessionRepository userSessionRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    @Mock
+    private SessionActivityBuffer sessionActivityBuffer;
+
+    @Mock
+    private SessionStatsService sessionStatsService;
+
+    @Mock
+    private UserAgentDictionary userAgentDictionary;
+
+    private SessionService service;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        service = new SessionService(userSessionRepository, userRepository, refreshTokenRepository,
+                refreshTokenService, tokenRevocationService, sessionActivityBuffer, sessionStatsService,
+                new UserAgentClassifier(100), userAgentDictionary, 2, 604_800_000L);
+
+        user = new UserEntity();
+        user.setId(42L);
+    }
+
+    private void stubSessionCreation() {
+        RefreshTokenEntity refreshToken = new RefreshTokenEntity();
+        refreshToken.setId(7L);
+        RefreshTokenService.IssuedRefreshToken issued = new RefreshTokenService.IssuedRefreshToken(refreshToken, "secret");
+        when(refreshTokenService.createRefreshToken(user)).thenReturn(issued);
+        when(refreshTokenService.encode(eq(issued), anyLong())).thenReturn("v1.7.99.secret");
+        when(userSessionRepository.save(any())).thenAnswer(invocation -> {
+            UserSessionEntity session = invocation.getArgument(0);
+            session.setId(99L);
+            return session;
+        });
+    }
+
+    @Test
+    void testCreateSession_LocksUserThenAppliesTheCapInOneStatement() {
+        stubSessionCreation();
+        when(sessionActivityBuffer.recentSessionIds(eq(42L), any())).thenReturn(Set.of(12L));
+        when(userSessionRepository.revokeSessionsOverLimit(eq(42L), eq(2), any(), any(), any(), any())).thenReturn(List.of());
+
+        String token = service.createSession(user, "new-jti", "127.0.0.1", "Mozilla/5.0");
+
+        assertEquals("v1.7.99.secret", token);
+        InOrder inOrder = inOrder(userRepository, userSessionRepository);
+        inOrder.verify(userRepository).lockById(42L);
+        inOrder.verify(userSessionRepository).save(any());
+        // Solo cuentan las sesiones activas en los últimos 30 minutos, la nueva y la de actividad pendiente incluidas
+        inOrder.verify(userSessionRepository).revokeSessionsOverLimit(eq(42L), eq(2), any(), any(),
+                argThat(since -> since.isAfter(LocalDateTime.now().minusMinutes(31))
+                        && since.isBefore(LocalDateTime.now().minusMinutes(29))),
+                eq(Set.of(12L, 99L)));
+        verifyNoMoreInteractions(userSessionRepository);
+        verifyNoInteractions(tokenRevocationService);
+    }
+
+    @Test
+    void testCreateSession_RevokesCurrentJtiOfOverflowSessions() {
+        stubSessionCreation();
+        LocalDateTime lastActivity = LocalDateTime.now().minusMinutes(5);
+        when(userSessionRepository.revokeSessionsOverLimit(eq(42L), eq(2), any(), any(), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{5L, "db-jti", (short) 2, lastActivity, 3L}));
+        when(sessionActivityBuffer.lastActivityAt(5L, lastActivity)).thenReturn(lastActivity);
+
+        service.createSession(user, "new-jti", "127.0.0.1", "Mozilla/5.0");
+
+        verify(tokenRevocationService).revoke("db-jti");
+        verify(tokenRevocationService, never()).revoke("new-jti");
+        verify(sessionStatsService).sessionCreated(user, "web");
+        verify(sessionStatsService).sessionRevoked(user, "mobile", lastActivity);
+        verify(refreshTokenService, never()).revokeToken(any());
+        verify(sessionActivityBuffer, never()).record(anyLong(), any(), anyLong());
+    }
+
+    @Test
+    void testRevokeAllOtherSessions_KeepsCurrentSessionInOneStatement() {
+        LocalDateTime lastActivity = LocalDateTime.now().minusHours(2);
+        RefreshTokenEntity current = new RefreshTokenEntity();
+        current.setId(7L);
+        user.setEmail("user@hargos.es");
+        when(userRepository.findByEmail("user@hargos.es")).thenReturn(Optional.of(user));
+        when(refreshTokenService.tryResolve("v1.7.99.secret"))
+                .thenReturn(Optional.of(new RefreshTokenService.ResolvedRefreshToken(current, null)));
+        when(userSessionRepository.revokeOpenSessionsExcept(eq(42L), eq(7L), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{5L, "jti-5", (short) 1, Timestamp.valueOf(lastActivity), 1L},
+                        new Object[]{6L, "jti-6", (short) 2, lastActivity, 2L}));
+
+        service.revokeAllOtherSessions("user@hargos.es", "v1.7.99.secret");
+
+        verify(tokenRevocationService).revoke("jti-5");
+        verify(tokenRevocationService).revoke("jti-6");
+        verify(userSessionRepository, never()).save(any());
+        verify(refreshTokenService, never()).revokeToken(any());
+        verify(sessionStatsService, times(2)).sessionRevoked(eq(user), anyString(), any());
+    }
+}
@@ -0,0 +1,119 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.entity.AppEntity;
+import es.hargos.auth.entity.TenantEntity;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserTenantRoleEntity;
+import es.hargos.auth.util.TenantClaimCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SessionStatsService
+ * Tests the counters maintained on session events and the fallback when reconciliation fails
+ */
+@ExtendWith(MockitoExtension.class)
+class SessionStatsServiceTest {
+
+    private static final long REFRESH_TOKEN_TTL_MS = 2_592_000_000L;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TenantClaimCacheService tenantClaimCacheService;
+
+    private SessionStatsService service;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        service = new SessionStatsService(jdbcTemplate, tenantClaimCacheService, REFRESH_TOKEN_TTL_MS);
+
+        user = new UserEntity();
+        user.setId(42L);
+
+        AppEntity app = new AppEntity();
+        app.setId(2L);
+        app.setName("RiTrack");
+
+        TenantEntity tenant = new TenantEntity();
+        tenant.setId(7L);
+        tenant.setName("Arendel");
+        tenant.setApp(app);
+
+        UserTenantRoleEntity role = new UserTenantRoleEntity();
+        role.setUser(user);
+        role.setTenant(tenant);
+        role.setRole("TENANT_ADMIN");
+        lenient().when(tenantClaimCacheService.getFragment(user)).thenReturn(TenantClaimCodec.buildFragment(List.of(role), false));
+    }
+
+    @Test
+    void testCreateAndRevoke_UpdateCountersWithoutQueries() {
+        service.sessionCreated(user, "web");
+        service.sessionCreated(user, "mobile");
+        service.sessionRevoked(user, "mobile", LocalDateTime.now());
+        // Revocar una sesión inactiva no cambia las activas
+        service.sessionRevoked(user, "web", LocalDateTime.now().minusHours(2));
+
+        assertEquals(2, service.getTotalSessions());
+        assertEquals(2, service.getRevokedSessions());
+        assertEquals(1, service.getActiveSessions());
+        assertEquals(Map.of("web", 1L), service.getActiveSessionsByDeviceType());
+        assertEquals(Map.of("RiTrack", 1L), service.getActiveSessionsByApp());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testReconcile_FailureKeepsMaintainedCounters() {
+        service.sessionCreated(user, "web");
+        doThrow(new QueryTimeoutException("timeout"))
+                .when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        service.reconcile();
+
+        assertEquals(1, service.getActiveSessions());
+        assertNull(service.getReconciledAt());
+    }
+
+    @Test
+    void testReconcileActive_ReadsOnlySessionsWithinTheRefreshTokenLifetime() {
+        service.reconcileActive();
+
+        verify(jdbcTemplate).query(contains("created_at > ?"), any(RowCallbackHandler.class),
+                argThat((LocalDateTime createdAfter) ->
+                        createdAfter.isBefore(LocalDateTime.now().minusDays(29))
+                                && createdAfter.isAfter(LocalDateTime.now().minusDays(31))),
+                any(LocalDateTime.class));
+        verify(jdbcTemplate, never()).query(contains("is_revoked AND created_at < ?"), any(RowCallbackHandler.class),
+                any(LocalDateTime.class));
+        assertNotNull(service.getReconciledAt());
+    }
+
+    @Test
+    void testReconcile_RecountsTotalsThenActiveSessions() {
+        service.reconcile();
+
+        verify(jdbcTemplate).query(contains("is_revoked AND created_at < ?"), any(RowCallbackHandler.class),
+                any(LocalDateTime.class));
+        verify(jdbcTemplate).query(contains("last_activity_at > ?"), any(RowCallbackHandler.class),
+                any(LocalDateTime.class), any(LocalDateTime.class));
+    }
+}
@@ -0,0 +1,169 @@
+package es.hargos.auth.service;
+
+import es.hargos.auth.dto.response.RevocationEventResponse;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.repository.RevokedAccessTokenRepository;
+import es.hargos.auth.repository.TokenEpochChangeRepository;
+import es.hargos.auth.repository.UserRepository;
+import es.hargos.auth.repository.UserSessionRepository;
+import es.hargos.auth.util.VerifiedToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TokenRevocationService
+ * Tests that revoked JTIs are persisted, reloaded at startup and synced from other instances
+ */
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationServiceTest {
+
+    private static final long ACCESS_TOKEN_TTL_MS = 900_000L;
+
+    @Mock
+    private UserSessionRepository userSessionRepository;
+
+    @Mock
+    private RevokedAccessTokenRepository revokedAccessTokenRepository;
+
+    @Mock
+    private TokenEpochChangeRepository tokenEpochChangeRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private RevocationFeedService revocationFeedService;
+
+    private TokenRevocationService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new TokenRevocationService(userSessionRepository, revokedAccessTokenRepository,
+                tokenEpochChangeRepository, userRepository, revocationFeedService, ACCESS_TOKEN_TTL_MS, 5000L);
+    }
+
+    @Test
+    void testRevoke_PersistsJtiUntilTheTokenCanNoLongerBeValid() {
+        LocalDateTime before = LocalDateTime.now();
+
+        service.revoke("old-jti");
+        service.revoke(null);
+
+        assertTrue(service.isRevoked("old-jti"));
+        verify(revokedAccessTokenRepository).insertIfAbsent(eq("old-jti"), argThat(expiresAt ->
+                !expiresAt.isBefore(before.plusNanos(ACCESS_TOKEN_TTL_MS * 1_000_000))));
+        verify(revokedAccessTokenRepository, times(1)).insertIfAbsent(any(), any());
+    }
+
+    @Test
+    void testRevoke_InsideTransactionIsAppliedOnlyOnCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.revoke("rolled-back-jti");
+            List<TransactionSynchronization> rolledBack = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+
+            // Rollback: nada en memoria ni en el feed
+            rolledBack.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+            assertFalse(service.isRevoked("rolled-back-jti"));
+
+            TransactionSynchronizationManager.initSynchronization();
+            service.revoke("committed-jti");
+            assertFalse(service.isRevoked("committed-jti"));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertTrue(service.isRevoked("committed-jti"));
+            // El feed la recibe desde el registro compartido, no desde la instancia que revoca
+            verifyNoInteractions(revocationFeedService);
+        } finally {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+    }
+
+    @Test
+    void testBumpTokenEpoch_RecordsTheRaiseForOtherInstances() {
+        UserEntity user = new UserEntity();
+        user.setId(42L);
+        user.setTokenEpoch(2);
+
+        service.bumpTokenEpoch(user);
+
+        assertEquals(3, user.getTokenEpoch());
+        verify(tokenEpochChangeRepository).insert(eq(42L), eq(3), any());
+        assertTrue(service.isRevoked(token(42L, 2)));
+        assertFalse(service.isRevoked(token(42L, 3)));
+    }
+
+    @Test
+    void testBootstrap_ReloadsRevocationLogAndLegacySessionJtis() {
+        when(revokedAccessTokenRepository.findRevocationLogAfter(eq(0L), any(), eq(5.0), anyInt())).thenReturn(List.of(
+                logRow(1L, "superseded-jti", null, null, true),
+                logRow(2L, "session-jti", null, null, true)));
+        when(userSessionRepository.findRevokedJtisWithActivitySince(any())).thenReturn(List.of("session-jti", "legacy-jti"));
+        when(userRepository.findRaisedTokenEpochs()).thenReturn(List.of());
+
+        service.bootstrap();
+
+        assertTrue(service.isRevoked("superseded-jti"));
+        assertTrue(service.isRevoked("session-jti"));
+        assertTrue(service.isRevoked("legacy-jti"));
+        assertFalse(service.isRevoked("live-jti"));
+        assertEquals(3, service.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSync_AppliesRevocationsFromOtherInstancesAndRereadsUnsettledRows() {
+        when(revokedAccessTokenRepository.findRevocationLogAfter(eq(0L), any(), anyDouble(), anyInt())).thenReturn(List.of(
+                logRow(10L, "jti-from-b", null, null, true),
+                logRow(11L, null, 7L, 4, false),
+                logRow(12L, "recent-jti", null, null, true)));
+        when(revokedAccessTokenRepository.findRevocationLogAfter(eq(10L), any(), anyDouble(), anyInt()))
+                .thenReturn(List.of());
+
+        service.sync();
+        service.sync();
+
+        assertTrue(service.isRevoked("jti-from-b"));
+        assertTrue(service.isRevoked("recent-jti"));
+        assertTrue(service.isRevoked(token(7L, 3)));
+        assertFalse(service.isRevoked(token(7L, 4)));
+        // El watermark se queda en la última fila asentada antes de la primera sin asentar
+        verify(revokedAccessTokenRepository).findRevocationLogAfter(eq(10L), any(), anyDouble(), anyInt());
+        // Al feed solo llega el prefijo asentado, una vez
+        ArgumentCaptor<List<RevocationEventResponse>> published = ArgumentCaptor.forClass(List.class);
+        verify(revocationFeedService).publish(published.capture());
+        assertEquals(List.of(10L), published.getValue().stream().map(RevocationEventResponse::getSequence).toList());
+    }
+
+    private static Object[] logRow(long seq, String jti, Long userId, Integer tokenEpoch, boolean settled) {
+        return new Object[]{seq, jti, userId, tokenEpoch, Timestamp.valueOf(LocalDateTime.now()), settled};
+    }
+
+    private static VerifiedToken token(Long userId, int tokenEpoch) {
+        VerifiedToken token = mock(VerifiedToken.class);
+        when(token.getUserId()).thenReturn(userId);
+        when(token.getTokenEpoch()).thenReturn(tokenEpoch);
+        return token;
+    }
+}
@@ -0,0 +1,128 @@
+package es.hargos.auth.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for UserAgentDictionary
+ * Tests that User-Agents are interned once and then served from the local cache, and that purged ids
+ * are evicted from it
+ */
+@ExtendWith(MockitoExtension.class)
+class UserAgentDictionaryTest {
+
+    private static final String CHROME = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) Chrome/120.0.0.0 Safari/537.36";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private UserAgentDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new UserAgentDictionary(jdbcTemplate, 100, 86_400_000L);
+    }
+
+    @Test
+    void testIdOf_InsertsNewUserAgentOnce() {
+        when(jdbcTemplate.queryForList(contains("SELECT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of());
+        when(jdbcTemplate.queryForList(contains("INSERT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of(17));
+
+        assertEquals(17, dictionary.idOf(CHROME));
+        assertEquals(17, dictionary.idOf(CHROME));
+        assertEquals(CHROME, dictionary.userAgent(17));
+
+        verify(jdbcTemplate, times(1)).queryForList(contains("INSERT"), eq(Integer.class), eq(CHROME));
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class), eq(17));
+    }
+
+    @Test
+    void testIdOf_InsertedInsideTransactionIsCachedOnlyOnCommit() {
+        when(jdbcTemplate.queryForList(contains("SELECT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of());
+        when(jdbcTemplate.queryForList(contains("INSERT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of(17), List.of(18));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Rollback: el id 17 no llega a existir y no se cachea
+            assertEquals(17, dictionary.idOf(CHROME));
+            List<TransactionSynchronization> rolledBack = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            rolledBack.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+            TransactionSynchronizationManager.initSynchronization();
+            assertEquals(18, dictionary.idOf(CHROME));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            TransactionSynchronizationManager.clearSynchronization();
+        } finally {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        assertEquals(18, dictionary.idOf(CHROME));
+        verify(jdbcTemplate, times(2)).queryForList(contains("INSERT"), eq(Integer.class), eq(CHROME));
+    }
+
+    @Test
+    void testIdOf_ReadsRowInsertedConcurrentlyByAnotherTransaction() {
+        when(jdbcTemplate.queryForList(contains("SELECT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of(), List.of(5));
+        when(jdbcTemplate.queryForList(contains("INSERT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of());
+
+        assertEquals(5, dictionary.idOf(CHROME));
+        assertEquals(5, dictionary.idOf(CHROME));
+        verify(jdbcTemplate, times(2)).queryForList(contains("SELECT"), eq(Integer.class), eq(CHROME));
+    }
+
+    @Test
+    void testIdOf_ReusesExistingRowAndTruncatesLongUserAgents() {
+        String longUserAgent = "x".repeat(UserAgentDictionary.MAX_LENGTH + 50);
+        String stored = "x".repeat(UserAgentDictionary.MAX_LENGTH);
+        when(jdbcTemplate.queryForList(anyString(), eq(Integer.class), eq(stored))).thenReturn(List.of(3));
+
+        assertEquals(3, dictionary.idOf(longUserAgent));
+        assertNull(dictionary.idOf(null));
+        assertNull(dictionary.userAgent(null));
+        verify(jdbcTemplate, never()).queryForList(contains("INSERT"), eq(Integer.class), anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPurgeUnused_EvictsPurgedIdsFromBothCaches() {
+        when(jdbcTemplate.queryForList(contains("SELECT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of(17), List.of());
+        when(jdbcTemplate.queryForList(contains("INSERT"), eq(Integer.class), eq(CHROME))).thenReturn(List.of(21));
+        when(jdbcTemplate.query(contains("DELETE FROM auth.user_agents"), any(RowMapper.class))).thenAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getInt(1)).thenReturn(17);
+            when(rs.getString(2)).thenReturn(CHROME);
+            return List.of(invocation.getArgument(1, RowMapper.class).mapRow(rs, 0));
+        });
+
+        assertEquals(17, dictionary.idOf(CHROME));
+        assertEquals(CHROME, dictionary.userAgent(17));
+
+        assertEquals(1, dictionary.purgeUnused());
+
+        // Ni el texto ni el id purgados se sirven ya de la caché: se vuelve a dar de alta con un id nuevo
+        assertEquals(21, dictionary.idOf(CHROME));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(17))).thenReturn(List.of());
+        assertNull(dictionary.userAgent(17));
+        verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq(17));
+    }
+}
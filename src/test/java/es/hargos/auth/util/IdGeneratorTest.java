@@ -0,0 +1,63 @@
+package es.hargos.auth.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IdGenerator
+ * Tests UUIDv7 layout, time ordering and uniqueness across threads
+ */
+class IdGeneratorTest {
+
+    @Test
+    void testNewUuid_IsVersion7WithRfcVariant() {
+        long before = System.currentTimeMillis();
+        UUID uuid = IdGenerator.newUuid();
+        long after = System.currentTimeMillis();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+
+        long timestamp = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(timestamp >= before && timestamp <= after);
+    }
+
+    @Test
+    void testNewUuid_OrderedAcrossMilliseconds() throws InterruptedException {
+        UUID first = IdGenerator.newUuid();
+        Thread.sleep(2);
+        UUID second = IdGenerator.newUuid();
+
+        // Orden textual (índices sobre varchar) y orden de la columna uuid coinciden
+        assertTrue(first.toString().compareTo(second.toString()) < 0);
+    }
+
+    @Test
+    void testNewToken_OrderedAndUrlSafe() throws InterruptedException {
+        String first = IdGenerator.newToken();
+        Thread.sleep(2);
+        String second = IdGenerator.newToken();
+
+        assertEquals(34, first.length());
+        assertTrue(first.matches("[0-9a-f]{12}[A-Za-z0-9_-]{22}"));
+        assertTrue(first.compareTo(second) < 0);
+    }
+
+    @Test
+    void testUniqueAcrossThreads() {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        IntStream.range(0, 100_000).parallel().forEach(i -> {
+            ids.add(IdGenerator.newUuid().toString());
+            ids.add(IdGenerator.newToken());
+        });
+
+        assertEquals(200_000, ids.size());
+    }
+}
@@ -0,0 +1,229 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
+import com.nimbusds.jwt.SignedJWT;
+import es.hargos.auth.entity.AppEntity;
+import es.hargos.auth.entity.Role;
+import es.hargos.auth.entity.TenantEntity;
+import es.hargos.auth.entity.UserEntity;
+import es.hargos.auth.entity.UserTenantRoleEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JwtUtil
+ * Tests token minting through the pre-initialized signer and single-pass verification
+ */
+class JwtUtilTest {
+
+    private static final String SECRET = "test-secret-with-at-least-256-bits-of-entropy!!";
+
+    private JwtUtil jwtUtil;
+    private UserEntity user;
+    private List<UserTenantRoleEntity> roles;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 900_000L, "HS256", "", "full");
+
+        user = new UserEntity();
+        user.setId(42L);
+        user.setEmail("rider@hargos.es");
+        user.setFullName("Test Rider");
+
+        AppEntity app = new AppEntity();
+        app.setId(2L);
+        app.setName("RiTrack");
+
+        TenantEntity tenant = new TenantEntity();
+        tenant.setId(7L);
+        tenant.setName("Arendel");
+        tenant.setApp(app);
+
+        UserTenantRoleEntity role = new UserTenantRoleEntity();
+        role.setUser(user);
+        role.setTenant(tenant);
+        role.setRole("TENANT_ADMIN");
+        roles = List.of(role);
+    }
+
+    @Test
+    void testGeneratedTokenVerifiesWithStandardNimbusVerifier() throws Exception {
+        String token = jwtUtil.generateAccessTokenWithJti(user, roles)[0];
+
+        SignedJWT parsed = SignedJWT.parse(token);
+        assertTrue(parsed.verify(new MACVerifier(SECRET.getBytes(StandardCharsets.UTF_8))));
+        assertEquals("rider@hargos.es", parsed.getJWTClaimsSet().getSubject());
+    }
+
+    @Test
+    void testVerify_ReturnsDecodedClaims() {
+        user.setTokenEpoch(3);
+        String[] tokenAndJti = jwtUtil.generateAccessTokenWithJti(user, roles);
+
+        Optional<VerifiedToken> verified = jwtUtil.verify(tokenAndJti[0]);
+
+        assertTrue(verified.isPresent());
+        assertEquals(tokenAndJti[1], verified.get().getJti());
+        assertEquals(42L, verified.get().getUserId());
+        assertEquals("Test Rider", verified.get().getFullName());
+        assertEquals(3, verified.get().getTokenEpoch());
+
+        List<TenantGrant> tenants = verified.get().getTenants();
+        assertEquals(1, tenants.size());
+        assertEquals(new TenantGrant(7L, 0L, Role.TENANT_ADMIN, "Arendel", "RiTrack"), tenants.get(0));
+    }
+
+    @Test
+    void testVerify_RejectsTamperedSignature() {
+        String token = jwtUtil.generateAccessTokenWithJti(user, roles)[0];
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertTrue(jwtUtil.verify(tampered).isEmpty());
+    }
+
+    @Test
+    void testVerify_RejectsTokenSignedWithAnotherSecret() {
+        JwtUtil other = new JwtUtil("another-secret-with-at-least-256-bits-of-entropy", 900_000L, "HS256", "", "full");
+        String token = other.generateAccessTokenWithJti(user, roles)[0];
+
+        assertTrue(jwtUtil.verify(token).isEmpty());
+    }
+
+    @Test
+    void testVerify_RejectsExpiredToken() {
+        JwtUtil expiring = new JwtUtil(SECRET, -1_000L, "HS256", "", "full");
+        String token = expiring.generateAccessTokenWithJti(user, roles)[0];
+
+        assertTrue(jwtUtil.verify(token).isEmpty());
+    }
+
+    @Test
+    void testEs256_TokenVerifiesAgainstPublishedJwks() throws Exception {
+        JwtUtil es256 = new JwtUtil(SECRET, 900_000L, "ES256", "", "full");
+        String token = es256.generateAccessTokenWithJti(user, roles)[0];
+
+        SignedJWT parsed = SignedJWT.parse(token);
+        assertEquals(JWSAlgorithm.ES256, parsed.getHeader().getAlgorithm());
+
+        JWKSet published = JWKSet.parse(es256.getPublicJwkSet().toJSONObject(true));
+        ECKey publicKey = (ECKey) published.getKeyByKeyId(parsed.getHeader().getKeyID());
+        assertFalse(publicKey.isPrivate());
+        assertTrue(parsed.verify(new ECDSAVerifier(publicKey)));
+        assertTrue(es256.verify(token).isPresent());
+    }
+
+    @Test
+    void testEs256_StillAcceptsLegacyHs256Tokens() {
+        JwtUtil es256 = new JwtUtil(SECRET, 900_000L, "ES256", "", "full");
+        String legacyToken = jwtUtil.generateAccessTokenWithJti(user, roles)[0];
+
+        assertTrue(es256.verify(legacyToken).isPresent());
+        assertTrue(jwtUtil.getPublicJwkSet().getKeys().isEmpty());
+    }
+
+    @Test
+    void testKeyRing_RotationKeepsOutstandingTokensValid() throws Exception {
+        SigningKey first = SigningKey.fromJwk(new OctetSequenceKeyGenerator(256).keyIDFromThumbprint(true).generate());
+        SigningKey second = SigningKey.fromJwk(new OctetSequenceKeyGenerator(256).keyIDFromThumbprint(true).generate());
+        String legacyToken = jwtUtil.generateAccessTokenWithJti(user, roles)[0];
+
+        jwtUtil.installKeyRing(first, List.of());
+        String firstToken = jwtUtil.generateAccessTokenWithJti(user, roles)[0];
+        assertEquals(first.getKeyId(), SignedJWT.parse(firstToken).getHeader().getKeyID());
+
+        jwtUtil.installKeyRing(second, List.of(first));
+        String secondToken = jwtUtil.generateAccessTokenWithJti(user, roles)[0];
+        assertEquals(second.getKeyId(), SignedJWT.parse(secondToken).getHeader().getKeyID());
+        assertTrue(jwtUtil.verify(legacyToken).isPresent());
+        assertTrue(jwtUtil.verify(firstToken).isPresent());
+        assertTrue(jwtUtil.verify(secondToken).isPresent());
+
+        // first retirada del anillo: sus tokens dejan de validar
+        jwtUtil.installKeyRing(second, List.of());
+        assertTrue(jwtUtil.verify(firstToken).isEmpty());
+        assertTrue(jwtUtil.verify(secondToken).isPresent());
+    }
+
+    @Test
+    void testCompactTenantClaim_DecodesIdsAndRoles() {
+        JwtUtil compact = new JwtUtil(SECRET, 900_000L, "HS256", "", "compact");
+        String token = compact.generateAccessTokenWithJti(user, roles)[0];
+
+        // Ambos formatos validan en cualquier instancia, independientemente de su configuración
+        List<TenantGrant> tenants = jwtUtil.verify(token).orElseThrow().getTenants();
+        assertEquals(1, tenants.size());
+        assertEquals(new TenantGrant(7L, 2L, Role.TENANT_ADMIN, null, null), tenants.get(0));
+        assertFalse(tenants.get(0).hasNames());
+    }
+
+    @Test
+    void testCompactTenantClaim_ShrinksTokens() {
+        JwtUtil compact = new JwtUtil(SECRET, 900_000L, "HS256", "", "compact");
+
+        for (int tenantCount : new int[]{1, 10, 100}) {
+            List<UserTenantRoleEntity> manyRoles = buildRoles(tenantCount);
+            String fullToken = jwtUtil.generateAccessTokenWithJti(user, manyRoles)[0];
+            String compactToken = compact.generateAccessTokenWithJti(user, manyRoles)[0];
+
+            assertTrue(compactToken.length() < fullToken.length(),
+                    tenantCount + " tenants: full=" + fullToken.length() + " compact=" + compactToken.length());
+            assertEquals(tenantCount, jwtUtil.verify(compactToken).orElseThrow().getTenants().size());
+        }
+
+        // Con 100 tenants el formato completo pasa de 8 KB (límite habitual de cabeceras); el compacto no
+        List<UserTenantRoleEntity> hundred = buildRoles(100);
+        assertTrue(jwtUtil.generateAccessTokenWithJti(user, hundred)[0].length() > 8192);
+        assertTrue(compact.generateAccessTokenWithJti(user, hundred)[0].length() < 4096);
+    }
+
+    @Test
+    void testTenantClaimFragment_ReusedAcrossTokens() {
+        TenantClaimFragment fragment = jwtUtil.buildTenantClaimFragment(roles);
+        assertEquals(List.of(new TenantGrant(7L, 2L, Role.TENANT_ADMIN, "Arendel", "RiTrack")), fragment.getGrants());
+
+        String first = jwtUtil.generateAccessTokenWithJti(user, fragment)[0];
+        String second = jwtUtil.generateAccessTokenWithJti(user, fragment)[0];
+
+        assertEquals(jwtUtil.verify(first).orElseThrow().getTenants(), jwtUtil.verify(second).orElseThrow().getTenants());
+        assertEquals(new TenantGrant(7L, 0L, Role.TENANT_ADMIN, "Arendel", "RiTrack"),
+                jwtUtil.verify(first).orElseThrow().getTenants().get(0));
+    }
+
+    private List<UserTenantRoleEntity> buildRoles(int count) {
+        AppEntity app = new AppEntity();
+        app.setId(2L);
+        app.setName("Warehouse Management");
+
+        List<UserTenantRoleEntity> result = new java.util.ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TenantEntity tenant = new TenantEntity();
+            tenant.setId(1000L + i);
+            tenant.setName("Tenant de pruebas número " + i);
+            tenant.setApp(app);
+
+            UserTenantRoleEntity role = new UserTenantRoleEntity();
+            role.setUser(user);
+            role.setTenant(tenant);
+            role.setRole(i % 2 == 0 ? "USER" : "TENANT_ADMIN");
+            result.add(role);
+        }
+        return result;
+    }
+
+    @Test
+    void testConstructor_RejectsShortSecret() {
+        assertThrows(IllegalStateException.class, () -> new JwtUtil("too-short", 900_000L, "HS256", "", "full"));
+    }
+}
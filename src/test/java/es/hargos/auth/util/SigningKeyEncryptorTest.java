@@ -0,0 +1,54 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SigningKeyEncryptor
+ * Tests that stored signing keys never contain the private part in clear and are bound to their kid
+ */
+class SigningKeyEncryptorTest {
+
+    private static final String KEK = Base64.getEncoder().encodeToString(new byte[32]);
+
+    @Test
+    void testEncrypt_RoundTripsWithoutExposingThePrivateKey() throws Exception {
+        SigningKeyEncryptor encryptor = new SigningKeyEncryptor(KEK);
+        ECKey jwk = new ECKeyGenerator(Curve.P_256).keyIDFromThumbprint(true).generate();
+
+        String stored = encryptor.encrypt(jwk);
+
+        assertFalse(SigningKeyEncryptor.isPlaintext(stored));
+        assertFalse(stored.contains(jwk.getD().toString()));
+        JWK decrypted = encryptor.decrypt(jwk.getKeyID(), stored);
+        assertEquals(jwk.toJSONObject(), decrypted.toJSONObject());
+        assertTrue(SigningKeyEncryptor.isPlaintext(jwk.toJSONString()));
+    }
+
+    @Test
+    void testDecrypt_RejectsOtherKidAndOtherEncryptionKey() throws Exception {
+        ECKey jwk = new ECKeyGenerator(Curve.P_256).keyIDFromThumbprint(true).generate();
+        String stored = new SigningKeyEncryptor(KEK).encrypt(jwk);
+
+        assertThrows(JOSEException.class, () -> new SigningKeyEncryptor(KEK).decrypt("other-kid", stored));
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        SigningKeyEncryptor other = new SigningKeyEncryptor(Base64.getEncoder().encodeToString(otherKey));
+        assertThrows(JOSEException.class, () -> other.decrypt(jwk.getKeyID(), stored));
+    }
+
+    @Test
+    void testConstructor_RejectsKeysThatAreNot256Bits() {
+        assertThrows(IllegalStateException.class, () -> new SigningKeyEncryptor("not base64!"));
+        assertThrows(IllegalStateException.class,
+                () -> new SigningKeyEncryptor(Base64.getEncoder().encodeToString(new byte[16])));
+    }
+}
@@ -0,0 +1,156 @@
+package es.hargos.auth.util;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import es.hargos.auth.entity.Role;
+import es.hargos.auth.entity.UserEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark: per-request garbage of decoding the tenants claim in JwtAuthenticationFilter
+ *
+ *   mapDecode     previous code: TenantClaimCodec.decode returned List<Map<String, Object>> (a HashMap per
+ *                 tenant for compact tokens) and the filter built one SimpleGrantedAuthority per tenant
+ *                 and a tenantId -> role String index
+ *   typedDecode   current code: TenantGrant records, one shared authority per distinct Role and a
+ *                 tenantId -> Role index
+ *
+ * Both start from the same verified JWTClaimsSet: parsing and signature checks are identical and excluded.
+ * The figure to compare is gc.alloc.rate.norm (bytes allocated per operation), reported by -prof gc.
+ *
+ * Run (from the project root):
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) org.openjdk.jmh.Main TenantClaimDecodeBenchmark -prof gc
+ *
+ * Measured with the defaults (JDK 21.0.1, 1 vCPU), bytes/op (gc.alloc.rate.norm):
+ *
+ *   tenants   full: mapDecode   typedDecode   compact: mapDecode   typedDecode
+ *   1                   280           368                   528           368
+ *   10                  928          1352                  3008          1352
+ *   100               10712         13056                 31152         13032
+ *
+ *   Compact tokens allocate 30-58% less: no HashMap per tenant. Full tokens allocate 20-45% more: the
+ *   previous code only cast the maps Nimbus had already parsed, while TenantGrant adds a record per
+ *   tenant (the per-tenant SimpleGrantedAuthority it replaces was smaller). Both formats now produce
+ *   the same garbage, so the reduction comes with jwt.tenant-claim-format=compact.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TenantClaimDecodeBenchmark {
+
+    private static final String SECRET = "benchmark-secret-with-at-least-256-bits-of-entropy!!";
+    private static final List<String> LEGACY_ROLE_CODES = List.of("SUPER_ADMIN", "TENANT_ADMIN", "USER");
+
+    // Como en JwtAuthenticationFilter: una authority inmutable por rol
+    private static final Map<Role, GrantedAuthority> ROLE_AUTHORITIES = new EnumMap<>(Role.class);
+
+    static {
+        for (Role role : Role.values()) {
+            ROLE_AUTHORITIES.put(role, new SimpleGrantedAuthority(role.name()));
+        }
+    }
+
+    @Param({"1", "10", "100"})
+    private int tenants;
+
+    @Param({"full", "compact"})
+    private String format;
+
+    private JWTClaimsSet claims;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 3_600_000L, "HS256", "", format);
+
+        UserEntity user = new UserEntity();
+        user.setId(42L);
+        user.setEmail("rider@hargos.es");
+
+        String token = jwtUtil.generateAccessTokenWithJti(user, TenantClaimBenchmark.buildRoles(user, tenants))[0];
+        claims = jwtUtil.verify(token).orElseThrow().getClaims();
+    }
+
+    @Benchmark
+    public void mapDecode(Blackhole blackhole) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        Map<Long, String> tenantRoles = new HashMap<>();
+        for (Map<String, Object> tenant : legacyDecode(claims)) {
+            String role = (String) tenant.get("role");
+            if (role != null) {
+                authorities.add(new SimpleGrantedAuthority(role));
+                if (tenant.get("tenantId") instanceof Number tenantId) {
+                    tenantRoles.put(tenantId.longValue(), role);
+                }
+            }
+        }
+        blackhole.consume(authorities);
+        blackhole.consume(tenantRoles);
+    }
+
+    @Benchmark
+    public void typedDecode(Blackhole blackhole) {
+        EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+        Map<Long, Role> tenantRoles = new HashMap<>();
+        for (TenantGrant grant : TenantClaimCodec.decode(claims)) {
+            roles.add(grant.role());
+            tenantRoles.put(grant.tenantId(), grant.role());
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.size());
+        for (Role role : roles) {
+            authorities.add(ROLE_AUTHORITIES.get(role));
+        }
+        blackhole.consume(authorities);
+        blackhole.consume(tenantRoles);
+    }
+
+    /**
+     * TenantClaimCodec.decode antes de los TenantGrant
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> legacyDecode(JWTClaimsSet claims) {
+        Object version = claims.getClaim(TenantClaimCodec.VERSION_CLAIM);
+        if (!(version instanceof Number number && number.intValue() == TenantClaimCodec.COMPACT_VERSION)) {
+            Object tenants = claims.getClaim(TenantClaimCodec.FULL_CLAIM);
+            return tenants instanceof List<?> ? (List<Map<String, Object>>) tenants : Collections.emptyList();
+        }
+        List<?> packed = (List<?>) claims.getClaim(TenantClaimCodec.COMPACT_CLAIM);
+        List<Map<String, Object>> tenants = new ArrayList<>(packed.size() / 3);
+        for (int i = 0; i < packed.size(); i += 3) {
+            int roleCode = ((Number) packed.get(i + 2)).intValue();
+            if (roleCode < 0 || roleCode >= LEGACY_ROLE_CODES.size()) {
+                continue;
+            }
+            Map<String, Object> tenant = new HashMap<>(4);
+            tenant.put("tenantId", ((Number) packed.get(i)).longValue());
+            tenant.put("appId", ((Number) packed.get(i + 1)).longValue());
+            tenant.put("role", LEGACY_ROLE_CODES.get(roleCode));
+            tenants.add(tenant);
+        }
+        return tenants;
+    }
+}
@@ -0,0 +1,61 @@
+package es.hargos.auth.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for UserAgentClassifier
+ */
+class UserAgentClassifierTest {
+
+    private final UserAgentClassifier classifier = new UserAgentClassifier(100);
+
+    @Test
+    void testClassify_DesktopBrowsers() {
+        UserAgentInfo edge = classifier.classify("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
+                + "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36 Edg/120.0.2210.91");
+        assertEquals(new UserAgentInfo("web", "browser", "Windows", "Edge", false), edge);
+
+        UserAgentInfo safari = classifier.classify("Mozilla/5.0 (Macintosh; Intel Mac OS X 14_2) AppleWebKit/605.1.15 "
+                + "(KHTML, like Gecko) Version/17.2 Safari/605.1.15");
+        assertEquals(new UserAgentInfo("web", "browser", "macOS", "Safari", false), safari);
+    }
+
+    @Test
+    void testClassify_MobileTabletAndDesktopApp() {
+        UserAgentInfo iphone = classifier.classify("Mozilla/5.0 (iPhone; CPU iPhone OS 17_2 like Mac OS X) "
+                + "AppleWebKit/605.1.15 (KHTML, like Gecko) CriOS/120.0.6099.119 Mobile/15E148 Safari/604.1");
+        assertEquals(new UserAgentInfo("mobile", "mobile", "iOS", "Chrome", false), iphone);
+
+        UserAgentInfo tablet = classifier.classify("Mozilla/5.0 (Linux; Android 13; SM-X700) AppleWebKit/537.36 "
+                + "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        assertEquals(new UserAgentInfo("mobile", "tablet", "Android", "Chrome", false), tablet);
+
+        UserAgentInfo electron = classifier.classify("Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 "
+                + "(KHTML, like Gecko) HargosDesktop/1.4.0 Chrome/118.0.5993.159 Electron/27.1.3 Safari/537.36");
+        assertEquals(new UserAgentInfo("desktop", "desktop-app", "Linux", "Electron", false), electron);
+    }
+
+    @Test
+    void testClassify_BotsAndMissingUserAgent() {
+        UserAgentInfo googlebot = classifier.classify("Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)");
+        assertTrue(googlebot.bot());
+        assertEquals("bot", googlebot.deviceClass());
+        assertEquals("web", googlebot.deviceType());
+
+        assertTrue(classifier.classify("curl/8.4.0").bot());
+        assertEquals(UserAgentInfo.UNKNOWN, classifier.classify(null));
+        assertEquals("unknown", classifier.deviceType(""));
+    }
+
+    @Test
+    void testClassify_CachesByRawUserAgent() {
+        String userAgent = "Mozilla/5.0 (X11; CrOS x86_64 14541.0.0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+
+        UserAgentInfo first = classifier.classify(userAgent);
+
+        assertSame(first, classifier.classify(userAgent));
+        assertEquals("ChromeOS", first.osFamily());
+    }
+}
@@ -0,0 +1,63 @@
+-- ==============================================
+-- Benchmark: random UUIDv4 vs time-ordered identifiers (IdGenerator)
+-- ==============================================
+-- Compares insert time and btree index size for columns shaped like
+-- user_sessions.access_token_jti (VARCHAR(100)) and users.password_reset_token.
+--
+-- Run against a scratch database (uses temporary tables only):
+--   psql -d hargos_bench -f src/test/resources/benchmarks/identifier-index-benchmark.sql
+--
+-- Change :rows to test other volumes (default: 1,000,000).
+
+\set rows 1000000
+\timing on
+
+-- UUIDv7 with the same layout as IdGenerator.newUuid() (48-bit ms timestamp, version 7, random rest)
+CREATE OR REPLACE FUNCTION pg_temp.uuid_v7() RETURNS uuid AS $$
+    SELECT encode(
+        set_bit(set_bit(
+            overlay(uuid_send(gen_random_uuid())
+                    PLACING substring(int8send(floor(extract(epoch FROM clock_timestamp()) * 1000)::bigint) FROM 3)
+                    FROM 1 FOR 6),
+            52, 1), 53, 1),
+        'hex')::uuid;
+$$ LANGUAGE sql VOLATILE;
+
+-- Same layout as IdGenerator.newToken(): 12 hex chars of ms timestamp + 128 random bits (base64url)
+CREATE OR REPLACE FUNCTION pg_temp.ordered_token() RETURNS text AS $$
+    SELECT lpad(to_hex(floor(extract(epoch FROM clock_timestamp()) * 1000)::bigint), 12, '0')
+        || translate(rtrim(encode(uuid_send(gen_random_uuid()), 'base64'), '='), '+/', '-_');
+$$ LANGUAGE sql VOLATILE;
+
+CREATE TEMP TABLE bench_jti_random  (id BIGSERIAL PRIMARY KEY, jti VARCHAR(100) NOT NULL);
+CREATE TEMP TABLE bench_jti_ordered (id BIGSERIAL PRIMARY KEY, jti VARCHAR(100) NOT NULL);
+CREATE INDEX ON bench_jti_random (jti);
+CREATE INDEX ON bench_jti_ordered (jti);
+
+CREATE TEMP TABLE bench_token_random  (id BIGSERIAL PRIMARY KEY, token VARCHAR(500) NOT NULL UNIQUE);
+CREATE TEMP TABLE bench_token_ordered (id BIGSERIAL PRIMARY KEY, token VARCHAR(500) NOT NULL UNIQUE);
+
+-- Insert throughput (one row per statement would exaggerate client overhead; a set insert
+-- keeps the measurement on index maintenance)
+\echo 'JTI: UUID.randomUUID()'
+INSERT INTO bench_jti_random (jti) SELECT gen_random_uuid()::text FROM generate_series(1, :rows);
+\echo 'JTI: IdGenerator.newUuid() (UUIDv7)'
+INSERT INTO bench_jti_ordered (jti) SELECT pg_temp.uuid_v7()::text FROM generate_series(1, :rows);
+
+\echo 'Token: UUID.randomUUID()'
+INSERT INTO bench_token_random (token) SELECT gen_random_uuid()::text FROM generate_series(1, :rows);
+\echo 'Token: IdGenerator.newToken()'
+INSERT INTO bench_token_ordered (token) SELECT pg_temp.ordered_token() FROM generate_series(1, :rows);
+
+\timing off
+
+-- Index size after the inserts
+SELECT c.relname                                  AS index_name,
+       pg_size_pretty(pg_relation_size(c.oid))    AS index_size,
+       pg_relation_size(c.oid) / 8192             AS pages
+FROM pg_class c
+WHERE c.relname IN (
+    'bench_jti_random_jti_idx', 'bench_jti_ordered_jti_idx',
+    'bench_token_random_token_key', 'bench_token_ordered_token_key'
+)
+ORDER BY c.relname;
@@ -0,0 +1,118 @@
+-- ==============================================
+-- Benchmark: delete-based vs partition-drop retention for user_sessions
+-- ==============================================
+-- Builds two copies of a user_sessions-shaped table with the same rows spread over 10 months:
+--   bench_sessions_plain        plain table, retention = DELETE of the oldest month
+--   bench_sessions_partitioned  monthly range partitions, retention = DROP TABLE of the oldest partition
+-- and times the retention of one month on each, plus a hot lookup afterwards.
+--
+-- Run against a scratch database (creates and drops the schema bench_retention):
+--   psql -d hargos_bench -f src/test/resources/benchmarks/session-retention-benchmark.sql
+--
+-- Change :rows to test other volumes (default: 10,000,000).
+
+\set rows 10000000
+
+DROP SCHEMA IF EXISTS bench_retention CASCADE;
+CREATE SCHEMA bench_retention;
+SET search_path TO bench_retention;
+
+CREATE TABLE bench_sessions_plain (
+    id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    refresh_token_id BIGINT NOT NULL,
+    device_type VARCHAR(20),
+    access_token_jti VARCHAR(100),
+    last_activity_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    is_revoked BOOLEAN NOT NULL DEFAULT FALSE,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE bench_sessions_partitioned (LIKE bench_sessions_plain INCLUDING DEFAULTS)
+    PARTITION BY RANGE (created_at);
+ALTER TABLE bench_sessions_partitioned ADD PRIMARY KEY (id, created_at);
+
+-- Same partition layout as auth.create_user_sessions_partitions
+DO $$
+DECLARE
+    month_start DATE := date_trunc('month', CURRENT_DATE - INTERVAL '9 months')::date;
+BEGIN
+    FOR i IN 0..10 LOOP
+        EXECUTE format('CREATE TABLE bench_retention.%I PARTITION OF bench_retention.bench_sessions_partitioned '
+                       'FOR VALUES FROM (%L) TO (%L)',
+                       'bench_sessions_' || to_char(month_start, 'YYYY_MM'),
+                       month_start, (month_start + INTERVAL '1 month')::date);
+        month_start := (month_start + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+-- Rows in id order = created_at order, as with the BIGSERIAL id
+INSERT INTO bench_sessions_plain (id, user_id, refresh_token_id, device_type, access_token_jti,
+                                  last_activity_at, created_at, is_revoked)
+SELECT g,
+       (random() * 100000)::bigint,
+       g,
+       (ARRAY['web', 'mobile', 'desktop', 'unknown'])[1 + (g % 4)],
+       gen_random_uuid()::text,
+       ts + INTERVAL '10 minutes',
+       ts,
+       random() < 0.8
+FROM (
+    SELECT g, date_trunc('month', CURRENT_DATE - INTERVAL '9 months')
+              + (g::double precision / :rows) * (LOCALTIMESTAMP - date_trunc('month', CURRENT_DATE - INTERVAL '9 months')) AS ts
+    FROM generate_series(1, :rows) AS g
+) spread;
+
+INSERT INTO bench_sessions_partitioned SELECT * FROM bench_sessions_plain;
+
+-- Same secondary indexes as auth.user_sessions (SECTION 8 of init-db.sql)
+CREATE INDEX ON bench_sessions_plain (user_id);
+CREATE INDEX ON bench_sessions_plain (refresh_token_id);
+CREATE INDEX ON bench_sessions_plain (last_activity_at);
+CREATE INDEX ON bench_sessions_plain (access_token_jti);
+CREATE INDEX ON bench_sessions_partitioned (user_id);
+CREATE INDEX ON bench_sessions_partitioned (refresh_token_id);
+CREATE INDEX ON bench_sessions_partitioned (last_activity_at);
+CREATE INDEX ON bench_sessions_partitioned (access_token_jti);
+
+VACUUM ANALYZE bench_sessions_plain;
+VACUUM ANALYZE bench_sessions_partitioned;
+
+SELECT 'bench_sessions_' || to_char(date_trunc('month', CURRENT_DATE - INTERVAL '9 months'), 'YYYY_MM') AS oldest_partition,
+       date_trunc('month', CURRENT_DATE - INTERVAL '8 months') AS oldest_month_end
+\gset
+
+\echo 'Rows in the oldest month:'
+SELECT COUNT(*) FROM bench_sessions_plain WHERE created_at < :'oldest_month_end';
+
+\timing on
+
+\echo 'Retention by DELETE (plain table):'
+DELETE FROM bench_sessions_plain WHERE created_at < :'oldest_month_end';
+
+\echo 'Retention by DROP (partitioned table):'
+DROP TABLE :"oldest_partition";
+
+\echo 'Follow-up VACUUM needed by the DELETE (the DROP leaves nothing behind):'
+VACUUM bench_sessions_plain;
+
+\echo 'Hot query after retention: open sessions of one user created in the last 7 days'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT id FROM bench_sessions_plain
+WHERE user_id = 4242 AND is_revoked = false AND created_at > LOCALTIMESTAMP - INTERVAL '7 days';
+
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT id FROM bench_sessions_partitioned
+WHERE user_id = 4242 AND is_revoked = false AND created_at > LOCALTIMESTAMP - INTERVAL '7 days';
+
+\timing off
+
+-- Size after retention (the plain table keeps its size until VACUUM FULL; the partitioned one shrinks)
+SELECT 'plain' AS layout, pg_size_pretty(pg_total_relation_size('bench_sessions_plain')) AS total_size
+UNION ALL
+SELECT 'partitioned', pg_size_pretty(SUM(pg_total_relation_size(inhrelid)))
+FROM pg_inherits WHERE inhparent = 'bench_sessions_partitioned'::regclass;
+
+RESET search_path;
+DROP SCHEMA bench_retention CASCADE;
@@ -0,0 +1,165 @@
+-- ==============================================
+-- Benchmark: text vs compact storage for user_sessions rows
+-- ==============================================
+-- Builds two copies of user_sessions with the same rows:
+--   bench_sessions_text     previous layout: ip_address VARCHAR(45), user_agent VARCHAR(500), device_type VARCHAR(20)
+--   bench_sessions_compact  current layout: ip_address INET, user_agent_id INTEGER (bench_user_agents),
+--                           device_type SMALLINT, fixed-width columns first
+-- with the indexes of SECTION 8 of init-db.sql on each, and reports heap, index and total sizes,
+-- the average row width and a subnet lookup on both.
+--
+-- Run against a scratch database (creates and drops the schema bench_storage):
+--   psql -d hargos_bench -f src/test/resources/benchmarks/session-storage-benchmark.sql
+--
+-- Change :rows to test other volumes (default: 5,000,000) and :agents for the number of distinct User-Agents.
+--
+-- Measured with the defaults (PostgreSQL 16.4, 1 vCPU, after VACUUM ANALYZE):
+--
+--   layout    heap (pg_relation_size)   indexes (pg_indexes_size)   total (pg_total_relation_size)   avg row
+--   text      1302 MB                    859 MB                     2161 MB                          257 bytes
+--   compact    601 MB                   1035 MB                     1637 MB (with user_agents)       116 bytes
+--
+--   The compact indexes include the new GiST index on ip_address (176 MB); the eight indexes both layouts
+--   share take 859 MB in each. Heap -54%, total -24% (-32% without the GiST index).
+--   Subnet lookup (10.42.0.0/16, 1905 rows): text, parallel seq scan with LIKE, 1568 ms;
+--   compact, index-only scan on the GiST index, 0.7 ms.
+
+\set rows 5000000
+\set agents 300
+
+DROP SCHEMA IF EXISTS bench_storage CASCADE;
+CREATE SCHEMA bench_storage;
+SET search_path TO bench_storage;
+
+-- Realistic User-Agents (100-160 characters): a few browsers/apps in many versions
+CREATE TABLE bench_user_agents (
+    id SERIAL PRIMARY KEY,
+    user_agent VARCHAR(500) NOT NULL UNIQUE
+);
+
+INSERT INTO bench_user_agents (user_agent)
+SELECT format((ARRAY[
+           'Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%s.0.0.0 Safari/537.36',
+           'Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.%s Safari/605.1.15',
+           'Mozilla/5.0 (iPhone; CPU iPhone OS 17_%s like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.0 Mobile/15E148 Safari/604.1',
+           'Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%s.0.6099.144 Mobile Safari/537.36',
+           'Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) HargosDesktop/1.%s.0 Chrome/118.0.5993.159 Electron/27.1.3 Safari/537.36'
+       ])[1 + (g % 5)], g)
+FROM generate_series(1, :agents) AS g;
+
+CREATE TABLE bench_sessions_text (
+    id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    refresh_token_id BIGINT NOT NULL,
+    ip_address VARCHAR(45),
+    user_agent VARCHAR(500),
+    device_type VARCHAR(20),
+    access_token_jti VARCHAR(100),
+    last_activity_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    is_revoked BOOLEAN NOT NULL DEFAULT FALSE,
+    PRIMARY KEY (id, created_at)
+);
+
+CREATE TABLE bench_sessions_compact (
+    id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    refresh_token_id BIGINT NOT NULL,
+    last_activity_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    user_agent_id INTEGER REFERENCES bench_user_agents(id),
+    device_type SMALLINT NOT NULL DEFAULT 0,
+    is_revoked BOOLEAN NOT NULL DEFAULT FALSE,
+    ip_address INET,
+    access_token_jti VARCHAR(100),
+    PRIMARY KEY (id, created_at)
+);
+
+-- 90% IPv4 (private and public ranges), 10% IPv6
+INSERT INTO bench_sessions_text (id, user_id, refresh_token_id, ip_address, user_agent, device_type,
+                                 access_token_jti, last_activity_at, created_at, is_revoked)
+SELECT g,
+       (random() * 100000)::bigint,
+       g,
+       CASE WHEN g % 10 = 0
+            THEN format('2001:db8:%s:%s::%s', to_hex((random() * 65535)::int), to_hex((random() * 65535)::int),
+                        to_hex((random() * 65535)::int))
+            ELSE format('%s.%s.%s.%s', (ARRAY[10, 83, 172, 192, 203])[1 + (g % 5)], (random() * 255)::int,
+                        (random() * 255)::int, (random() * 255)::int)
+       END,
+       ua.user_agent,
+       (ARRAY['web', 'mobile', 'desktop', 'unknown'])[1 + (g % 4)],
+       gen_random_uuid()::text,
+       ts + INTERVAL '10 minutes',
+       ts,
+       random() < 0.8
+FROM (
+    SELECT g, 1 + (g % :agents) AS agent_id,
+           LOCALTIMESTAMP - INTERVAL '60 days' + (g::double precision / :rows) * INTERVAL '60 days' AS ts
+    FROM generate_series(1, :rows) AS g
+) spread
+JOIN bench_user_agents ua ON ua.id = spread.agent_id;
+
+-- Same rows, converted as the migration in SECTION 7.5 of init-db.sql does
+INSERT INTO bench_sessions_compact (id, user_id, refresh_token_id, last_activity_at, created_at, user_agent_id,
+                                    device_type, is_revoked, ip_address, access_token_jti)
+SELECT t.id, t.user_id, t.refresh_token_id, t.last_activity_at, t.created_at, ua.id,
+       (CASE t.device_type WHEN 'web' THEN 1 WHEN 'mobile' THEN 2 WHEN 'desktop' THEN 3 ELSE 0 END)::smallint,
+       t.is_revoked, t.ip_address::inet, t.access_token_jti
+FROM bench_sessions_text t
+LEFT JOIN bench_user_agents ua ON ua.user_agent = t.user_agent;
+
+-- Indexes of SECTION 8 of init-db.sql on both layouts. The text layout had no IP index; the compact one
+-- adds the GiST index for subnet queries (idx_user_sessions_ip_address).
+CREATE INDEX ON bench_sessions_text (user_id);
+CREATE INDEX ON bench_sessions_text (refresh_token_id);
+CREATE INDEX ON bench_sessions_text (last_activity_at);
+CREATE INDEX ON bench_sessions_text (is_revoked);
+CREATE INDEX ON bench_sessions_text (access_token_jti);
+CREATE INDEX ON bench_sessions_text (user_id, created_at DESC) WHERE is_revoked = false;
+CREATE INDEX ON bench_sessions_text (created_at) WHERE is_revoked = true;
+CREATE INDEX ON bench_sessions_text (created_at DESC, id DESC) WHERE is_revoked = false;
+
+CREATE INDEX ON bench_sessions_compact (user_id);
+CREATE INDEX ON bench_sessions_compact (refresh_token_id);
+CREATE INDEX ON bench_sessions_compact (last_activity_at);
+CREATE INDEX ON bench_sessions_compact (is_revoked);
+CREATE INDEX ON bench_sessions_compact (access_token_jti);
+CREATE INDEX ON bench_sessions_compact (user_id, created_at DESC) WHERE is_revoked = false;
+CREATE INDEX ON bench_sessions_compact (created_at) WHERE is_revoked = true;
+CREATE INDEX ON bench_sessions_compact (created_at DESC, id DESC) WHERE is_revoked = false;
+CREATE INDEX bench_sessions_compact_ip ON bench_sessions_compact USING gist (ip_address inet_ops);
+
+VACUUM ANALYZE bench_sessions_text;
+VACUUM ANALYZE bench_sessions_compact;
+VACUUM ANALYZE bench_user_agents;
+
+\echo 'Sizes (the compact layout includes the user_agents dictionary):'
+SELECT 'text' AS layout,
+       pg_size_pretty(pg_relation_size('bench_sessions_text')) AS heap,
+       pg_size_pretty(pg_indexes_size('bench_sessions_text')) AS indexes,
+       pg_size_pretty(pg_total_relation_size('bench_sessions_text')) AS total,
+       (SELECT round(avg(pg_column_size(t.*))) FROM bench_sessions_text t) AS avg_row_bytes
+UNION ALL
+SELECT 'compact',
+       pg_size_pretty(pg_relation_size('bench_sessions_compact')),
+       pg_size_pretty(pg_indexes_size('bench_sessions_compact')),
+       pg_size_pretty(pg_total_relation_size('bench_sessions_compact') + pg_total_relation_size('bench_user_agents')),
+       (SELECT round(avg(pg_column_size(c.*))) FROM bench_sessions_compact c);
+
+\echo 'Of which the GiST subnet index:'
+SELECT pg_size_pretty(pg_relation_size('bench_sessions_compact_ip')) AS inet_gist;
+
+\timing on
+
+\echo 'Subnet lookup: the text layout can only scan with a prefix LIKE (no CIDR semantics, no index)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT COUNT(*) FROM bench_sessions_text WHERE ip_address LIKE '10.42.%';
+
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT COUNT(*) FROM bench_sessions_compact WHERE ip_address <<= '10.42.0.0/16';
+
+\timing off
+
+RESET search_path;
+DROP SCHEMA bench_storage CASCADE;